@@ -117,6 +117,12 @@ neoForge {
             sourceSet(sourceSets.main.get())
         }
     }
+
+    // 基准测试依赖方块注册表，在 FML 引导后的单元测试环境中运行
+    unitTest {
+        enable()
+        testedMod = mods[project.property("mod_id") as String]
+    }
 }
 
 // Include resources generated by data generators.
@@ -124,6 +130,18 @@ sourceSets.main.configure {
     resources.srcDir("src/generated/resources")
 }
 
+// JMH 基准测试：src/test/java 的 bench 包，由 BenchmarkLauncher 在 FML 引导后的测试 JVM 中运行
+// 运行 ./gradlew test -Pbenchmark，可用 -Pbenchmark=<正则> 只运行部分基准，结果写入 build/results/jmh
+// 不带该属性时跳过测试任务，普通构建不会引导游戏
+val benchmarkInclude = (project.findProperty("benchmark") as String?)
+tasks.named<Test>("test") {
+    useJUnitPlatform()
+    onlyIf { benchmarkInclude != null }
+    outputs.upToDateWhen { false }
+    systemProperty("piayn.benchmark.include", benchmarkInclude ?: "")
+    systemProperty("piayn.benchmark.result", layout.buildDirectory.file("results/jmh/results.json").get().asFile.absolutePath)
+}
+
 configurations {
     runtimeClasspath.get().extendsFrom(create("localRuntime"))
     // 使用NeoForge提供的additionalRuntimeClasspath配置
@@ -154,6 +172,12 @@ dependencies {
     jarJar("cn.hutool:hutool-core:${project.property("hutool_version")}")
 
     implementation("net.createmod.ponder:Ponder-NeoForge-${project.property("minecraft_version")}:${project.property("ponder_version")}")?.let { jarJar(it) }
+
+    // 基准测试：JUnit 只用作 FML 引导的入口，测量由 JMH 完成
+    testImplementation("org.junit.jupiter:junit-jupiter:${project.property("junit_version")}")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+    testImplementation("org.openjdk.jmh:jmh-core:${project.property("jmh_version")}")
+    testAnnotationProcessor("org.openjdk.jmh:jmh-generator-annprocess:${project.property("jmh_version")}")
     
 }
 
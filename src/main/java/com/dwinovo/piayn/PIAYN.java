@@ -1,6 +1,7 @@
 package com.dwinovo.piayn;
 
 import org.slf4j.Logger;
+import com.dwinovo.piayn.config.PIAYNConfig;
 import com.dwinovo.piayn.init.InitEntity;
 import com.dwinovo.piayn.init.InitItem;
 import com.dwinovo.piayn.init.InitMenuTypes;
@@ -9,6 +10,7 @@ import com.mojang.logging.LogUtils;
 import net.neoforged.bus.api.IEventBus;
 import net.neoforged.fml.common.Mod;
 import net.neoforged.fml.ModContainer;
+import net.neoforged.fml.config.ModConfig;
 
 
 @Mod(PIAYN.MOD_ID)
@@ -20,6 +22,7 @@ public class PIAYN {
 
     public PIAYN(IEventBus modEventBus, ModContainer modContainer) {
         initRegister(modEventBus);
+        modContainer.registerConfig(ModConfig.Type.COMMON, PIAYNConfig.SPEC);
     }
     private static void initRegister(IEventBus modEventBus) {
         InitEntity.ENTITY_TYPES.register(modEventBus);
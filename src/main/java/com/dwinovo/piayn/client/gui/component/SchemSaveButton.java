@@ -2,6 +2,7 @@ package com.dwinovo.piayn.client.gui.component;
 
 import org.jetbrains.annotations.NotNull;
 import com.dwinovo.piayn.PIAYN;
+import com.dwinovo.piayn.packet.SchemCaptureRequestPacket;
 import com.dwinovo.piayn.schem.SchemSerializer;
 import com.dwinovo.piayn.schem.pojo.StructureData;
 
@@ -10,6 +11,7 @@ import net.minecraft.client.gui.components.Button;
 import net.minecraft.client.gui.screens.Screen;
 import net.minecraft.network.chat.Component;
 import net.minecraft.resources.ResourceLocation;
+import net.neoforged.neoforge.network.PacketDistributor;
 import java.util.function.Supplier;
 
 public class SchemSaveButton extends Button{
@@ -20,8 +22,10 @@ public class SchemSaveButton extends Button{
         super(x, y, BUTTON_WIDTH, BUTTON_HEIGHT, Component.empty(), 
                 button -> {
                     StructureData data = dataSupplier != null ? dataSupplier.get() : null;
-                    if (data != null) {
-                        SchemSerializer.serialize(data);
+                    if (SchemSerializer.validate(data)) {
+                        // 交给服务端在权威世界中截取，客户端不再承担截取开销
+                        PacketDistributor.sendToServer(new SchemCaptureRequestPacket(
+                            data.getStartPos(), data.getEndPos(), SchemSerializer.resolveSchemName(data.getSchemName())));
                     }
                     currentScreen.onClose();
                 }, DEFAULT_NARRATION);
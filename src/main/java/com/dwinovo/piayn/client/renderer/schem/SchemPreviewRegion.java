@@ -0,0 +1,100 @@
+package com.dwinovo.piayn.client.renderer.schem;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.dwinovo.piayn.schem.data.DecodedSchematic;
+
+import net.minecraft.client.multiplayer.ClientLevel;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.world.level.BlockAndTintGetter;
+import net.minecraft.world.level.ColorResolver;
+import net.minecraft.world.level.LightLayer;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.lighting.LevelLightEngine;
+import net.minecraft.world.level.material.FluidState;
+
+/**
+ * 以蓝图本地坐标访问方块的只读视图，供烘焙预览网格时剔除相邻面、计算环境光遮蔽与染色
+ * 区域外与缺失的位置视为空气；光照固定为全亮，染色固定使用预览创建时原点所在的生物群系
+ * 只读取不可变数据，可以在工作线程使用
+ */
+public class SchemPreviewRegion implements BlockAndTintGetter {
+
+    private static final BlockState AIR = Blocks.AIR.defaultBlockState();
+
+    private final DecodedSchematic schematic;
+    private final ClientLevel level;
+    private final Biome biome;
+
+    public SchemPreviewRegion(@Nonnull DecodedSchematic schematic, @Nonnull ClientLevel level, @Nonnull Biome biome) {
+        this.schematic = schematic;
+        this.level = level;
+        this.biome = biome;
+    }
+
+    @Nonnull
+    @Override
+    public BlockState getBlockState(@Nonnull BlockPos pos) {
+        int x = pos.getX();
+        int y = pos.getY();
+        int z = pos.getZ();
+        if (x < 0 || y < 0 || z < 0 || x >= schematic.getWidth() || y >= schematic.getHeight() || z >= schematic.getLength()) {
+            return AIR;
+        }
+        BlockState blockState = schematic.getBlockState(x, y, z);
+        return blockState == null ? AIR : blockState;
+    }
+
+    @Nonnull
+    @Override
+    public FluidState getFluidState(@Nonnull BlockPos pos) {
+        return getBlockState(pos).getFluidState();
+    }
+
+    @Nullable
+    @Override
+    public BlockEntity getBlockEntity(@Nonnull BlockPos pos) {
+        return null;
+    }
+
+    @Override
+    public float getShade(@Nonnull Direction direction, boolean shade) {
+        return level.getShade(direction, shade);
+    }
+
+    @Nonnull
+    @Override
+    public LevelLightEngine getLightEngine() {
+        return level.getLightEngine();
+    }
+
+    @Override
+    public int getBrightness(@Nonnull LightLayer lightLayer, @Nonnull BlockPos pos) {
+        return 15;
+    }
+
+    @Override
+    public int getRawBrightness(@Nonnull BlockPos pos, int amount) {
+        return 15;
+    }
+
+    @Override
+    public int getBlockTint(@Nonnull BlockPos pos, @Nonnull ColorResolver colorResolver) {
+        return colorResolver.getColor(biome, pos.getX(), pos.getZ());
+    }
+
+    @Override
+    public int getHeight() {
+        return schematic.getHeight();
+    }
+
+    @Override
+    public int getMinBuildHeight() {
+        return 0;
+    }
+}
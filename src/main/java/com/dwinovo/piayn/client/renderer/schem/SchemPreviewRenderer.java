@@ -0,0 +1,363 @@
+package com.dwinovo.piayn.client.renderer.schem;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+
+import com.dwinovo.piayn.schem.data.DecodedSchematic;
+import com.mojang.blaze3d.shaders.Uniform;
+import com.mojang.blaze3d.systems.RenderSystem;
+import com.mojang.blaze3d.vertex.BufferBuilder;
+import com.mojang.blaze3d.vertex.ByteBufferBuilder;
+import com.mojang.blaze3d.vertex.DefaultVertexFormat;
+import com.mojang.blaze3d.vertex.MeshData;
+import com.mojang.blaze3d.vertex.PoseStack;
+import com.mojang.blaze3d.vertex.VertexBuffer;
+import com.mojang.blaze3d.vertex.VertexConsumer;
+import com.mojang.blaze3d.vertex.VertexFormat;
+import com.mojang.logging.LogUtils;
+
+import net.minecraft.Util;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.multiplayer.ClientLevel;
+import net.minecraft.client.renderer.RenderType;
+import net.minecraft.client.renderer.ShaderInstance;
+import net.minecraft.client.renderer.block.BlockRenderDispatcher;
+import net.minecraft.client.renderer.culling.Frustum;
+import net.minecraft.client.resources.model.BakedModel;
+import net.minecraft.core.BlockPos;
+import net.minecraft.util.RandomSource;
+import net.minecraft.world.level.block.RenderShape;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.material.FluidState;
+import net.minecraft.world.phys.AABB;
+import net.minecraft.world.phys.Vec3;
+import net.neoforged.neoforge.client.event.RenderLevelStageEvent;
+import net.neoforged.neoforge.client.model.data.ModelData;
+
+/**
+ * 蓝图的半透明预览
+ * 1. 工作线程：按 16³ 的区块段把已解码蓝图烘焙为顶点数据，顶点坐标相对区块段原点，与原版区块编译相同
+ * 2. 渲染线程：每帧最多上传 {@link #UPLOADS_PER_FRAME} 个区块段到顶点缓冲，之后每帧只做视锥剔除与绘制
+ * 绘制时通过着色器的 ChunkOffset 给出区块段相对相机的位置，移动预览只改变原点，不重新烘焙
+ * 所有层都以半透明方式绘制；带特殊渲染器的方块实体（箱子等）不显示
+ * 除烘焙外的方法都只应在渲染线程调用
+ */
+public class SchemPreviewRenderer {
+
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    public static final SchemPreviewRenderer INSTANCE = new SchemPreviewRenderer();
+
+    // 预览顶点的不透明度（0-255）
+    private static final int GHOST_ALPHA = 150;
+    // 每帧最多上传的区块段数，避免大蓝图烘焙完成时卡一帧
+    private static final int UPLOADS_PER_FRAME = 16;
+    // 每个区块段顶点缓冲的初始大小，不够时自动扩容
+    private static final int SECTION_BUFFER_SIZE = 1 << 16;
+
+    @Nullable
+    private Preview preview;
+
+    /**
+     * 一个预览：烘焙结果先进入队列，在渲染线程上传后移入 sections
+     */
+    private static final class Preview {
+        private final String name;
+        private final DecodedSchematic schematic;
+        private final ConcurrentLinkedQueue<BakedSection> baked = new ConcurrentLinkedQueue<>();
+        private final List<UploadedSection> sections = new ArrayList<>();
+        private volatile boolean cancelled;
+        private BlockPos origin;
+
+        private Preview(@Nonnull String name, @Nonnull DecodedSchematic schematic, @Nonnull BlockPos origin) {
+            this.name = name;
+            this.schematic = schematic;
+            this.origin = origin;
+        }
+    }
+
+    /**
+     * 工作线程烘焙完成、尚未上传的区块段；x、y、z 为蓝图本地的区块段原点
+     */
+    private record BakedSection(int x, int y, int z, ByteBufferBuilder memory, MeshData mesh) {
+        private void close() {
+            mesh.close();
+            memory.close();
+        }
+    }
+
+    private record UploadedSection(int x, int y, int z, VertexBuffer buffer) {
+    }
+
+    /**
+     * 显示蓝图预览，替换当前预览，烘焙在工作线程进行
+     * @param origin 蓝图最小角所在的世界坐标
+     */
+    public void show(@Nonnull String name, @Nonnull DecodedSchematic schematic, @Nonnull BlockPos origin) {
+        hide();
+        ClientLevel level = Minecraft.getInstance().level;
+        if (level == null) {
+            return;
+        }
+        Preview current = new Preview(name, schematic, origin.immutable());
+        SchemPreviewRegion region = new SchemPreviewRegion(schematic, level, level.getBiome(origin).value());
+        BlockRenderDispatcher dispatcher = Minecraft.getInstance().getBlockRenderer();
+        preview = current;
+        CompletableFuture.runAsync(() -> bake(current, region, dispatcher), Util.backgroundExecutor())
+            .exceptionally(error -> {
+                LOGGER.error("Failed to bake preview of {}", name, error);
+                return null;
+            });
+    }
+
+    /**
+     * 移动预览，只改变原点
+     */
+    public void move(@Nonnull BlockPos origin) {
+        if (preview != null) {
+            preview.origin = origin.immutable();
+        }
+    }
+
+    /**
+     * 移除预览并释放顶点缓冲，仍在进行的烘焙会在下一个区块段停止
+     */
+    public void hide() {
+        Preview current = preview;
+        if (current == null) {
+            return;
+        }
+        preview = null;
+        current.cancelled = true;
+        closeBaked(current);
+        for (UploadedSection section : current.sections) {
+            section.buffer().close();
+        }
+        current.sections.clear();
+    }
+
+    public boolean isShown() {
+        return preview != null;
+    }
+
+    @Nullable
+    public String getName() {
+        return preview == null ? null : preview.name;
+    }
+
+    @Nullable
+    public BlockPos getOrigin() {
+        return preview == null ? null : preview.origin;
+    }
+
+    // === 烘焙 ===
+
+    private static void bake(@Nonnull Preview preview, @Nonnull SchemPreviewRegion region,
+                             @Nonnull BlockRenderDispatcher dispatcher) {
+        DecodedSchematic schematic = preview.schematic;
+        RandomSource random = RandomSource.create();
+        PoseStack poseStack = new PoseStack();
+        BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+        int sectionCount = 0;
+        for (int sectionY = 0; sectionY < schematic.getHeight(); sectionY += 16) {
+            for (int sectionZ = 0; sectionZ < schematic.getLength(); sectionZ += 16) {
+                for (int sectionX = 0; sectionX < schematic.getWidth(); sectionX += 16) {
+                    if (preview.cancelled) {
+                        closeBaked(preview);
+                        return;
+                    }
+                    BakedSection section = bakeSection(schematic, region, dispatcher, random, poseStack, pos,
+                        sectionX, sectionY, sectionZ);
+                    if (section != null) {
+                        preview.baked.add(section);
+                        sectionCount++;
+                    }
+                }
+            }
+        }
+        // 烘焙期间被移除时，渲染线程可能已经清空过队列
+        if (preview.cancelled) {
+            closeBaked(preview);
+            return;
+        }
+        LOGGER.debug("Baked preview of {}: {} sections", preview.name, sectionCount);
+    }
+
+    @Nullable
+    private static BakedSection bakeSection(@Nonnull DecodedSchematic schematic, @Nonnull SchemPreviewRegion region,
+                                            @Nonnull BlockRenderDispatcher dispatcher, @Nonnull RandomSource random,
+                                            @Nonnull PoseStack poseStack, @Nonnull BlockPos.MutableBlockPos pos,
+                                            int sectionX, int sectionY, int sectionZ) {
+        ByteBufferBuilder memory = new ByteBufferBuilder(SECTION_BUFFER_SIZE);
+        BufferBuilder builder = new BufferBuilder(memory, VertexFormat.Mode.QUADS, DefaultVertexFormat.BLOCK);
+        VertexConsumer consumer = new GhostVertexConsumer(builder);
+        final int maxX = Math.min(sectionX + 16, schematic.getWidth());
+        final int maxY = Math.min(sectionY + 16, schematic.getHeight());
+        final int maxZ = Math.min(sectionZ + 16, schematic.getLength());
+        for (int y = sectionY; y < maxY; y++) {
+            for (int z = sectionZ; z < maxZ; z++) {
+                for (int x = sectionX; x < maxX; x++) {
+                    BlockState blockState = schematic.getBlockState(x, y, z);
+                    if (blockState == null || blockState.isAir()) {
+                        continue;
+                    }
+                    pos.set(x, y, z);
+                    // 流体渲染器自行按 pos & 15 计算区块段内坐标
+                    FluidState fluidState = blockState.getFluidState();
+                    if (!fluidState.isEmpty()) {
+                        dispatcher.renderLiquid(pos, region, consumer, blockState, fluidState);
+                    }
+                    if (blockState.getRenderShape() != RenderShape.MODEL) {
+                        continue;
+                    }
+                    BakedModel model = dispatcher.getBlockModel(blockState);
+                    random.setSeed(blockState.getSeed(pos));
+                    poseStack.pushPose();
+                    poseStack.translate(x & 15, y & 15, z & 15);
+                    for (RenderType renderType : model.getRenderTypes(blockState, random, ModelData.EMPTY)) {
+                        dispatcher.renderBatched(blockState, pos, region, poseStack, consumer, true, random, ModelData.EMPTY, renderType);
+                    }
+                    poseStack.popPose();
+                }
+            }
+        }
+        MeshData mesh = builder.build();
+        if (mesh == null) {
+            memory.close();
+            return null;
+        }
+        return new BakedSection(sectionX, sectionY, sectionZ, memory, mesh);
+    }
+
+    private static void closeBaked(@Nonnull Preview preview) {
+        BakedSection section;
+        while ((section = preview.baked.poll()) != null) {
+            section.close();
+        }
+    }
+
+    // === 绘制 ===
+
+    /**
+     * 在半透明方块之后绘制预览
+     */
+    public void render(@Nonnull RenderLevelStageEvent event) {
+        Preview current = preview;
+        if (current == null) {
+            return;
+        }
+        upload(current);
+        if (current.sections.isEmpty()) {
+            return;
+        }
+
+        Vec3 camera = event.getCamera().getPosition();
+        Frustum frustum = event.getFrustum();
+        final BlockPos origin = current.origin;
+
+        RenderType renderType = RenderType.translucent();
+        renderType.setupRenderState();
+        ShaderInstance shader = RenderSystem.getShader();
+        if (shader == null) {
+            renderType.clearRenderState();
+            return;
+        }
+        shader.setDefaultUniforms(VertexFormat.Mode.QUADS, event.getModelViewMatrix(), event.getProjectionMatrix(),
+            Minecraft.getInstance().getWindow());
+        shader.apply();
+        Uniform chunkOffset = shader.CHUNK_OFFSET;
+        for (UploadedSection section : current.sections) {
+            final int minX = origin.getX() + section.x();
+            final int minY = origin.getY() + section.y();
+            final int minZ = origin.getZ() + section.z();
+            if (frustum != null && !frustum.isVisible(new AABB(minX, minY, minZ, minX + 16, minY + 16, minZ + 16))) {
+                continue;
+            }
+            if (chunkOffset != null) {
+                chunkOffset.set((float) (minX - camera.x), (float) (minY - camera.y), (float) (minZ - camera.z));
+                chunkOffset.upload();
+            }
+            section.buffer().bind();
+            section.buffer().draw();
+        }
+        if (chunkOffset != null) {
+            chunkOffset.set(0.0f, 0.0f, 0.0f);
+        }
+        shader.clear();
+        VertexBuffer.unbind();
+        renderType.clearRenderState();
+    }
+
+    /**
+     * 上传一部分已烘焙的区块段
+     */
+    private static void upload(@Nonnull Preview preview) {
+        for (int i = 0; i < UPLOADS_PER_FRAME; i++) {
+            BakedSection section = preview.baked.poll();
+            if (section == null) {
+                return;
+            }
+            VertexBuffer buffer = new VertexBuffer(VertexBuffer.Usage.STATIC);
+            buffer.bind();
+            // upload 会关闭网格数据
+            buffer.upload(section.mesh());
+            VertexBuffer.unbind();
+            section.memory().close();
+            preview.sections.add(new UploadedSection(section.x(), section.y(), section.z(), buffer));
+        }
+    }
+
+    /**
+     * 把所有顶点的不透明度乘以 {@link #GHOST_ALPHA}
+     */
+    private record GhostVertexConsumer(VertexConsumer delegate) implements VertexConsumer {
+
+        @Nonnull
+        @Override
+        public VertexConsumer addVertex(float x, float y, float z) {
+            delegate.addVertex(x, y, z);
+            return this;
+        }
+
+        @Nonnull
+        @Override
+        public VertexConsumer setColor(int red, int green, int blue, int alpha) {
+            delegate.setColor(red, green, blue, alpha * GHOST_ALPHA / 255);
+            return this;
+        }
+
+        @Nonnull
+        @Override
+        public VertexConsumer setUv(float u, float v) {
+            delegate.setUv(u, v);
+            return this;
+        }
+
+        @Nonnull
+        @Override
+        public VertexConsumer setUv1(int u, int v) {
+            delegate.setUv1(u, v);
+            return this;
+        }
+
+        @Nonnull
+        @Override
+        public VertexConsumer setUv2(int u, int v) {
+            delegate.setUv2(u, v);
+            return this;
+        }
+
+        @Nonnull
+        @Override
+        public VertexConsumer setNormal(float normalX, float normalY, float normalZ) {
+            delegate.setNormal(normalX, normalY, normalZ);
+            return this;
+        }
+    }
+}
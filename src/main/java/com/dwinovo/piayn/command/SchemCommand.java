@@ -0,0 +1,439 @@
+package com.dwinovo.piayn.command;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import com.dwinovo.piayn.PIAYN;
+import com.dwinovo.piayn.config.PIAYNConfig;
+import com.dwinovo.piayn.schem.SchemSerializer;
+import com.dwinovo.piayn.schem.data.SchematicCache;
+import com.dwinovo.piayn.schem.job.SchemJob;
+import com.dwinovo.piayn.schem.job.SchemJobScheduler;
+import com.dwinovo.piayn.schem.job.SchemPasteJob;
+import com.dwinovo.piayn.schem.job.SchemSaveJob;
+import com.dwinovo.piayn.schem.library.SchemLibrary;
+import com.dwinovo.piayn.schem.pojo.PasteOptions;
+import com.dwinovo.piayn.schem.pojo.SchemIndexEntry;
+import com.dwinovo.piayn.schem.pojo.StructureData;
+import com.dwinovo.piayn.schem.snapshot.SchemSnapshot;
+import com.dwinovo.piayn.schem.store.SectionStore;
+import com.dwinovo.piayn.schem.undo.PasteHistory;
+import com.dwinovo.piayn.schem.undo.PasteJournal;
+import com.google.common.cache.CacheStats;
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.StringArgumentType;
+import com.mojang.brigadier.context.CommandContext;
+import com.mojang.brigadier.exceptions.CommandSyntaxException;
+import com.mojang.brigadier.suggestion.SuggestionProvider;
+import com.mojang.brigadier.builder.ArgumentBuilder;
+import net.minecraft.Util;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.commands.Commands;
+import net.minecraft.commands.SharedSuggestionProvider;
+import net.minecraft.commands.arguments.TemplateMirrorArgument;
+import net.minecraft.commands.arguments.TemplateRotationArgument;
+import net.minecraft.commands.arguments.coordinates.BlockPosArgument;
+import net.minecraft.core.BlockPos;
+import net.minecraft.network.chat.Component;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.level.block.Mirror;
+import net.minecraft.world.level.block.Rotation;
+
+/**
+ * 蓝图指令
+ * /piayn schem paste <file> [pos] [rotation] [mirror]  分帧粘贴蓝图，可旋转与镜像
+ * /piayn schem repair <file> [pos]  差异粘贴，只放置与世界不同的方块，不粘贴实体
+ * /piayn schem undo                撤销自己最近一次粘贴的方块与方块实体
+ * /piayn schem jobs                查看正在执行的粘贴任务
+ * /piayn schem cancel              取消所有粘贴任务
+ * /piayn schem cache               查看已解码蓝图缓存的命中情况
+ * /piayn schem list [query]        列出或搜索蓝图库
+ * /piayn schem snapshot <from> <to> <name> [parent]  保存差量快照
+ * /piayn schem restore <snapshot> <file>             把快照链还原为蓝图
+ * /piayn schem store <file>        把蓝图转存到区块段仓库
+ */
+public class SchemCommand {
+
+    // 每次列出的最大条数
+    private static final int LIST_LIMIT = 20;
+
+    // 列出蓝图目录中的 .schem 文件作为补全，索引就绪后直接使用索引
+    private static final SuggestionProvider<CommandSourceStack> SCHEM_SUGGESTIONS = (context, builder) -> {
+        if (SchemLibrary.INSTANCE.isReady()) {
+            return SharedSuggestionProvider.suggest(SchemLibrary.INSTANCE.getFileNames().stream()
+                .map(StringArgumentType::escapeIfRequired), builder);
+        }
+        if (Files.isDirectory(SchemSerializer.DEFAULT_DIR)) {
+            try (Stream<Path> files = Files.list(SchemSerializer.DEFAULT_DIR)) {
+                return SharedSuggestionProvider.suggest(files
+                    .map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(".schem") || name.endsWith(SectionStore.MANIFEST_SUFFIX))
+                    .map(StringArgumentType::escapeIfRequired), builder);
+            } catch (IOException e) {
+                PIAYN.LOGGER.warn("Failed to list schematics", e);
+            }
+        }
+        return builder.buildFuture();
+    };
+
+    /**
+     * 注册蓝图指令
+     *
+     * @param dispatcher 指令调度器
+     */
+    public static void register(CommandDispatcher<CommandSourceStack> dispatcher) {
+        dispatcher.register(
+            Commands.literal("piayn")
+                .requires(source -> source.hasPermission(2)) // 需要OP权限
+                .then(Commands.literal("schem")
+                    .then(pasteCommand())
+                    .then(repairCommand())
+                    .then(Commands.literal("undo")
+                        .executes(SchemCommand::executeUndo)
+                    )
+                    .then(Commands.literal("jobs")
+                        .executes(SchemCommand::executeJobs)
+                    )
+                    .then(Commands.literal("cancel")
+                        .executes(SchemCommand::executeCancel)
+                    )
+                    .then(Commands.literal("cache")
+                        .executes(SchemCommand::executeCache)
+                    )
+                    .then(snapshotCommand())
+                    .then(Commands.literal("restore")
+                        .then(Commands.argument("snapshot", StringArgumentType.string())
+                            .then(Commands.argument("file", StringArgumentType.string())
+                                .executes(SchemCommand::executeRestore)))
+                    )
+                    .then(Commands.literal("store")
+                        .then(Commands.argument("file", StringArgumentType.string())
+                            .suggests(SCHEM_SUGGESTIONS)
+                            .executes(SchemCommand::executeStore))
+                    )
+                    .then(Commands.literal("list")
+                        .executes(context -> executeList(context, ""))
+                        .then(Commands.argument("query", StringArgumentType.greedyString())
+                            .executes(context -> executeList(context, StringArgumentType.getString(context, "query"))))
+                    )
+                )
+        );
+    }
+
+    private static ArgumentBuilder<CommandSourceStack, ?> pasteCommand() {
+        return Commands.literal("paste")
+            .then(Commands.argument("file", StringArgumentType.string())
+                .suggests(SCHEM_SUGGESTIONS)
+                .executes(context -> executePaste(context,
+                    BlockPos.containing(context.getSource().getPosition()), new PasteOptions()))
+                .then(Commands.argument("pos", BlockPosArgument.blockPos())
+                    .executes(context -> executePaste(context,
+                        BlockPosArgument.getLoadedBlockPos(context, "pos"), new PasteOptions()))
+                    .then(Commands.argument("rotation", TemplateRotationArgument.templateRotation())
+                        .executes(context -> executePaste(context,
+                            BlockPosArgument.getLoadedBlockPos(context, "pos"),
+                            transformOptions(TemplateRotationArgument.getRotation(context, "rotation"), Mirror.NONE)))
+                        .then(Commands.argument("mirror", TemplateMirrorArgument.templateMirror())
+                            .executes(context -> executePaste(context,
+                                BlockPosArgument.getLoadedBlockPos(context, "pos"),
+                                transformOptions(TemplateRotationArgument.getRotation(context, "rotation"),
+                                    TemplateMirrorArgument.getMirror(context, "mirror")))))))
+            );
+    }
+
+    private static ArgumentBuilder<CommandSourceStack, ?> repairCommand() {
+        return Commands.literal("repair")
+            .then(Commands.argument("file", StringArgumentType.string())
+                .suggests(SCHEM_SUGGESTIONS)
+                .executes(context -> executePaste(context,
+                    BlockPos.containing(context.getSource().getPosition()), repairOptions()))
+                .then(Commands.argument("pos", BlockPosArgument.blockPos())
+                    .executes(context -> executePaste(context,
+                        BlockPosArgument.getLoadedBlockPos(context, "pos"), repairOptions())))
+            );
+    }
+
+    private static PasteOptions repairOptions() {
+        PasteOptions options = new PasteOptions();
+        options.setDiff(true);
+        // 修复时实体多半仍在原处，重复粘贴会产生副本
+        options.setPasteEntities(false);
+        return options;
+    }
+
+    private static PasteOptions transformOptions(Rotation rotation, Mirror mirror) {
+        PasteOptions options = new PasteOptions();
+        options.setRotation(rotation);
+        options.setMirror(mirror);
+        return options;
+    }
+
+    private static ArgumentBuilder<CommandSourceStack, ?> snapshotCommand() {
+        return Commands.literal("snapshot")
+            .then(Commands.argument("from", BlockPosArgument.blockPos())
+                .then(Commands.argument("to", BlockPosArgument.blockPos())
+                    .then(Commands.argument("name", StringArgumentType.string())
+                        .executes(context -> executeSnapshot(context, null))
+                        .then(Commands.argument("parent", StringArgumentType.string())
+                            .executes(context -> executeSnapshot(context, StringArgumentType.getString(context, "parent")))))));
+    }
+
+    /**
+     * 提交差量快照任务
+     */
+    private static int executeSnapshot(CommandContext<CommandSourceStack> context, String parent) throws CommandSyntaxException {
+        CommandSourceStack source = context.getSource();
+        String name = StringArgumentType.getString(context, "name");
+        // 已有快照可能是其他快照的父快照，不允许覆盖；写出时还会再检查一次
+        Path snapshotPath = SchemSnapshot.resolvePath(name);
+        if (snapshotPath == null || Files.exists(snapshotPath)) {
+            source.sendFailure(Component.literal("§c[PIAYN] 快照已存在或名称无效: " + name));
+            return 0;
+        }
+        if (parent != null && snapshotPath.equals(SchemSnapshot.resolvePath(parent))) {
+            source.sendFailure(Component.literal("§c[PIAYN] 快照不能以自己为父快照: " + name));
+            return 0;
+        }
+        StructureData structureData = new StructureData(source.getLevel(),
+            BlockPosArgument.getLoadedBlockPos(context, "from"), BlockPosArgument.getLoadedBlockPos(context, "to"),
+            name, source.getTextName());
+        MinecraftServer server = source.getServer();
+        SchemSaveJob job = new SchemSaveJob(structureData, parent);
+        job.setProgressListener(finished -> {
+            if (!finished.getState().isFinished()) {
+                return;
+            }
+            server.execute(() -> {
+                switch (finished.getState()) {
+                    case DONE -> source.sendSuccess(() -> Component.literal("§a[PIAYN] 快照已保存: " + finished.getName()), true);
+                    case CANCELLED -> source.sendSuccess(() -> Component.literal("§e[PIAYN] 已取消快照: " + finished.getName()), true);
+                    default -> source.sendFailure(Component.literal("§c[PIAYN] 快照保存失败: " + finished.getName()));
+                }
+            });
+        });
+        SchemJobScheduler.SERVER.submit(job);
+        source.sendSuccess(() -> Component.literal("§e[PIAYN] 开始保存快照 " + job.getName()), true);
+        return 1;
+    }
+
+    /**
+     * 在IO线程还原快照链并写成蓝图
+     */
+    private static int executeRestore(CommandContext<CommandSourceStack> context) {
+        CommandSourceStack source = context.getSource();
+        String snapshotName = StringArgumentType.getString(context, "snapshot");
+        String filename = StringArgumentType.getString(context, "file");
+        MinecraftServer server = source.getServer();
+        CompletableFuture.supplyAsync(() -> SchemSerializer.restoreSnapshot(snapshotName, filename), Util.ioPool())
+            .thenAccept(path -> server.execute(() -> {
+                if (path != null) {
+                    source.sendSuccess(() -> Component.literal("§a[PIAYN] 快照已还原为蓝图: " + path.getFileName()), true);
+                } else {
+                    source.sendFailure(Component.literal("§c[PIAYN] 快照还原失败: " + snapshotName));
+                }
+            }));
+        source.sendSuccess(() -> Component.literal("§e[PIAYN] 正在还原快照 " + snapshotName), false);
+        return 1;
+    }
+
+    /**
+     * 在IO线程把蓝图转存为区块段仓库清单
+     */
+    private static int executeStore(CommandContext<CommandSourceStack> context) {
+        CommandSourceStack source = context.getSource();
+        String filename = StringArgumentType.getString(context, "file");
+        MinecraftServer server = source.getServer();
+        CompletableFuture.supplyAsync(() -> SchemSerializer.storeSchem(filename), Util.ioPool())
+            .thenAccept(path -> server.execute(() -> {
+                if (path != null) {
+                    source.sendSuccess(() -> Component.literal("§a[PIAYN] 已转存为清单: " + path.getFileName()), true);
+                } else {
+                    source.sendFailure(Component.literal("§c[PIAYN] 转存失败: " + filename));
+                }
+            }));
+        return 1;
+    }
+
+    /**
+     * 提交粘贴任务
+     */
+    private static int executePaste(CommandContext<CommandSourceStack> context, BlockPos targetPos, PasteOptions options) {
+        CommandSourceStack source = context.getSource();
+        String filename = StringArgumentType.getString(context, "file");
+        Path filePath = SchemSerializer.resolveSchemPath(filename);
+        if (filePath == null) {
+            source.sendFailure(Component.literal("§c[PIAYN] 找不到蓝图: " + filename));
+            return 0;
+        }
+
+        MinecraftServer server = source.getServer();
+        SchemPasteJob job = new SchemPasteJob(source.getLevel(), filePath, targetPos, options);
+        if (PIAYNConfig.SCHEM_UNDO_HISTORY.get() > 0) {
+            job.recordUndo(undoOwner(source));
+        }
+        job.setProgressListener(finished -> {
+            if (!finished.getState().isFinished()) {
+                return;
+            }
+            // 结束回调可能来自后台线程
+            server.execute(() -> {
+                switch (finished.getState()) {
+                    case DONE -> source.sendSuccess(() -> Component.literal("§a[PIAYN] 蓝图粘贴完成: " + finished.getName()), true);
+                    case CANCELLED -> source.sendSuccess(() -> Component.literal("§e[PIAYN] 已取消粘贴: " + finished.getName()), true);
+                    default -> source.sendFailure(Component.literal("§c[PIAYN] 蓝图粘贴失败: " + finished.getName()));
+                }
+            });
+        });
+        SchemJobScheduler.SERVER.submit(job);
+
+        source.sendSuccess(() -> Component.literal("§e[PIAYN] 开始粘贴 " + job.getName() + " 到 "
+            + targetPos.toShortString()), true);
+        return 1;
+    }
+
+    /**
+     * 撤销最近一次粘贴：在IO线程解压日志，再作为普通粘贴任务写回被覆盖前的方块
+     * 记录在撤销任务完成后才移除，解压失败、任务失败或被取消时保留
+     */
+    private static int executeUndo(CommandContext<CommandSourceStack> context) {
+        CommandSourceStack source = context.getSource();
+        UUID owner = undoOwner(source);
+        PasteHistory.Entry entry = PasteHistory.INSTANCE.beginUndo(owner);
+        if (entry == null) {
+            source.sendFailure(Component.literal(PasteHistory.INSTANCE.isUndoing(owner)
+                ? "§c[PIAYN] 上一次撤销仍在进行中" : "§c[PIAYN] 没有可撤销的粘贴"));
+            return 0;
+        }
+        MinecraftServer server = source.getServer();
+        ServerLevel level = server.getLevel(entry.dimension());
+        if (level == null) {
+            PasteHistory.INSTANCE.finishUndo(owner, entry, false);
+            source.sendFailure(Component.literal("§c[PIAYN] 找不到粘贴所在的维度: " + entry.dimension().location()));
+            return 0;
+        }
+
+        PasteOptions options = new PasteOptions();
+        // 日志中的空气是被覆盖前的原状，必须写回；实体不在日志中
+        options.setPasteAir(true);
+        options.setPasteEntities(false);
+        entry.data().thenApplyAsync(data -> {
+                try {
+                    return PasteJournal.decode(data);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Failed to decode undo journal for " + entry.name(), e);
+                }
+            }, Util.ioPool())
+            .whenComplete((image, error) -> server.execute(() -> {
+                if (error != null) {
+                    PasteHistory.INSTANCE.finishUndo(owner, entry, false);
+                    PIAYN.LOGGER.warn("Failed to undo paste {}", entry.name(), error);
+                    source.sendFailure(Component.literal("§c[PIAYN] 撤销失败: " + entry.name()));
+                    return;
+                }
+                SchemPasteJob job = new SchemPasteJob(level, "undo " + entry.name(), image::schematic, image.origin(), options);
+                job.setProgressListener(finished -> {
+                    if (!finished.getState().isFinished()) {
+                        return;
+                    }
+                    server.execute(() -> {
+                        PasteHistory.INSTANCE.finishUndo(owner, entry, finished.getState() == SchemJob.State.DONE);
+                        switch (finished.getState()) {
+                            case DONE -> source.sendSuccess(() -> Component.literal("§a[PIAYN] 已撤销粘贴: " + entry.name()), true);
+                            case CANCELLED -> source.sendSuccess(() -> Component.literal("§e[PIAYN] 已取消撤销: " + entry.name()), true);
+                            default -> source.sendFailure(Component.literal("§c[PIAYN] 撤销失败: " + entry.name()));
+                        }
+                    });
+                });
+                SchemJobScheduler.SERVER.submit(job);
+            }));
+        source.sendSuccess(() -> Component.literal("§e[PIAYN] 正在撤销 " + entry.name() + "，共 "
+            + entry.blockCount() + " 个方块"), true);
+        return 1;
+    }
+
+    /**
+     * 撤销记录的归属者，控制台等非玩家来源共用一份记录
+     */
+    private static UUID undoOwner(CommandSourceStack source) {
+        ServerPlayer player = source.getPlayer();
+        return player != null ? player.getUUID() : Util.NIL_UUID;
+    }
+
+    /**
+     * 列出粘贴任务及进度
+     */
+    private static int executeJobs(CommandContext<CommandSourceStack> context) {
+        CommandSourceStack source = context.getSource();
+        List<SchemJob> jobs = SchemJobScheduler.SERVER.getActiveJobs().stream()
+            .filter(job -> job instanceof SchemPasteJob)
+            .toList();
+        if (jobs.isEmpty()) {
+            source.sendSuccess(() -> Component.literal("§e[PIAYN] 没有正在执行的粘贴任务"), false);
+            return 0;
+        }
+        for (SchemJob job : jobs) {
+            int percent = (int) (job.getProgress() * 100);
+            source.sendSuccess(() -> Component.literal("§e[PIAYN] " + job.getName() + " " + percent + "%"), false);
+        }
+        return jobs.size();
+    }
+
+    /**
+     * 取消所有粘贴任务，已粘贴的部分保留
+     */
+    private static int executeCancel(CommandContext<CommandSourceStack> context) {
+        int cancelled = 0;
+        for (SchemJob job : SchemJobScheduler.SERVER.getActiveJobs()) {
+            if (job instanceof SchemPasteJob) {
+                job.cancel();
+                cancelled++;
+            }
+        }
+        int count = cancelled;
+        context.getSource().sendSuccess(() -> Component.literal("§e[PIAYN] 已取消 " + count + " 个粘贴任务"), true);
+        return count;
+    }
+
+    /**
+     * 输出已解码蓝图缓存的统计
+     */
+    private static int executeCache(CommandContext<CommandSourceStack> context) {
+        CacheStats stats = SchematicCache.getStats();
+        long size = SchematicCache.size();
+        context.getSource().sendSuccess(() -> Component.literal(String.format(
+            "§e[PIAYN] 蓝图缓存: %d 个, 命中 %d, 未命中 %d, 淘汰 %d, 命中率 %.1f%%",
+            size, stats.hitCount(), stats.missCount(), stats.evictionCount(), stats.hitRate() * 100)), false);
+        return (int) size;
+    }
+
+    /**
+     * 从蓝图库索引列出或搜索蓝图，不读取蓝图文件
+     */
+    private static int executeList(CommandContext<CommandSourceStack> context, String query) {
+        CommandSourceStack source = context.getSource();
+        if (!SchemLibrary.INSTANCE.isReady()) {
+            source.sendFailure(Component.literal("§c[PIAYN] 蓝图库索引尚未就绪"));
+            return 0;
+        }
+        List<SchemIndexEntry> entries = query.isEmpty() ? SchemLibrary.INSTANCE.list() : SchemLibrary.INSTANCE.search(query);
+        if (entries.isEmpty()) {
+            source.sendSuccess(() -> Component.literal("§e[PIAYN] 没有找到蓝图"), false);
+            return 0;
+        }
+        source.sendSuccess(() -> Component.literal("§e[PIAYN] 共 " + entries.size() + " 个蓝图"), false);
+        for (SchemIndexEntry entry : entries.subList(0, Math.min(LIST_LIMIT, entries.size()))) {
+            String author = entry.getAuthorName() == null ? "" : " §7by " + entry.getAuthorName();
+            source.sendSuccess(() -> Component.literal("§a" + entry.getFileName() + author + " §7"
+                + entry.getWidth() + "x" + entry.getHeight() + "x" + entry.getLength()
+                + ", " + entry.getBlockCount() + " 方块"), false);
+        }
+        return entries.size();
+    }
+}
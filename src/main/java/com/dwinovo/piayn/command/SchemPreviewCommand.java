@@ -0,0 +1,107 @@
+package com.dwinovo.piayn.command;
+
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+import com.dwinovo.piayn.PIAYN;
+import com.dwinovo.piayn.client.renderer.schem.SchemPreviewRenderer;
+import com.dwinovo.piayn.schem.SchemSerializer;
+import com.dwinovo.piayn.schem.data.DecodedSchematic;
+import com.dwinovo.piayn.schem.data.SchematicCache;
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.StringArgumentType;
+import com.mojang.brigadier.context.CommandContext;
+import net.minecraft.Util;
+import net.minecraft.client.Minecraft;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.commands.Commands;
+import net.minecraft.commands.arguments.coordinates.BlockPosArgument;
+import net.minecraft.core.BlockPos;
+import net.minecraft.network.chat.Component;
+
+/**
+ * 客户端蓝图预览指令，读取本地蓝图目录
+ * /piayn preview show <file> [pos]  在指定位置显示蓝图的半透明预览
+ * /piayn preview move [pos]         移动预览，不重新烘焙
+ * /piayn preview clear              移除预览
+ */
+public class SchemPreviewCommand {
+
+    /**
+     * 注册预览指令，只注册到客户端指令
+     *
+     * @param dispatcher 客户端指令调度器
+     */
+    public static void register(CommandDispatcher<CommandSourceStack> dispatcher) {
+        dispatcher.register(
+            Commands.literal("piayn")
+                .then(Commands.literal("preview")
+                    .then(Commands.literal("show")
+                        .then(Commands.argument("file", StringArgumentType.string())
+                            .executes(context -> executeShow(context, BlockPos.containing(context.getSource().getPosition())))
+                            .then(Commands.argument("pos", BlockPosArgument.blockPos())
+                                .executes(context -> executeShow(context, BlockPosArgument.getBlockPos(context, "pos"))))))
+                    .then(Commands.literal("move")
+                        .executes(context -> executeMove(context, BlockPos.containing(context.getSource().getPosition())))
+                        .then(Commands.argument("pos", BlockPosArgument.blockPos())
+                            .executes(context -> executeMove(context, BlockPosArgument.getBlockPos(context, "pos")))))
+                    .then(Commands.literal("clear")
+                        .executes(SchemPreviewCommand::executeClear))
+                )
+        );
+    }
+
+    /**
+     * 在IO线程读取蓝图，回到渲染线程开始烘焙
+     */
+    private static int executeShow(CommandContext<CommandSourceStack> context, BlockPos origin) {
+        CommandSourceStack source = context.getSource();
+        String filename = StringArgumentType.getString(context, "file");
+        Path filePath = SchemSerializer.resolveSchemPath(filename);
+        if (filePath == null) {
+            source.sendFailure(Component.literal("§c[PIAYN] 找不到蓝图: " + filename));
+            return 0;
+        }
+        String name = filePath.getFileName().toString();
+        CompletableFuture.supplyAsync(() -> {
+                try {
+                    return SchematicCache.get(filePath);
+                } catch (Exception e) {
+                    throw new IllegalStateException("Failed to read schematic " + name, e);
+                }
+            }, Util.ioPool())
+            .whenComplete((schematic, error) -> Minecraft.getInstance().execute(() -> {
+                if (error != null) {
+                    PIAYN.LOGGER.warn("Failed to preview schematic {}", name, error);
+                    source.sendFailure(Component.literal("§c[PIAYN] 蓝图读取失败: " + name));
+                    return;
+                }
+                showPreview(source, name, schematic, origin);
+            }));
+        source.sendSuccess(() -> Component.literal("§e[PIAYN] 正在加载预览 " + name), false);
+        return 1;
+    }
+
+    private static void showPreview(CommandSourceStack source, String name, DecodedSchematic schematic, BlockPos origin) {
+        SchemPreviewRenderer.INSTANCE.show(name, schematic, origin);
+        source.sendSuccess(() -> Component.literal("§a[PIAYN] 已显示预览 " + name + " 于 " + origin.toShortString()
+            + " (" + schematic.getWidth() + "x" + schematic.getHeight() + "x" + schematic.getLength() + ")"), false);
+    }
+
+    private static int executeMove(CommandContext<CommandSourceStack> context, BlockPos origin) {
+        CommandSourceStack source = context.getSource();
+        if (!SchemPreviewRenderer.INSTANCE.isShown()) {
+            source.sendFailure(Component.literal("§c[PIAYN] 当前没有预览"));
+            return 0;
+        }
+        SchemPreviewRenderer.INSTANCE.move(origin);
+        source.sendSuccess(() -> Component.literal("§a[PIAYN] 预览已移动到 " + origin.toShortString()), false);
+        return 1;
+    }
+
+    private static int executeClear(CommandContext<CommandSourceStack> context) {
+        SchemPreviewRenderer.INSTANCE.hide();
+        context.getSource().sendSuccess(() -> Component.literal("§e[PIAYN] 已移除预览"), false);
+        return 1;
+    }
+}
@@ -0,0 +1,140 @@
+package com.dwinovo.piayn.config;
+
+import java.util.List;
+
+import com.dwinovo.piayn.schem.capture.EntityFilter;
+
+import net.minecraft.resources.ResourceLocation;
+import net.neoforged.neoforge.common.ModConfigSpec;
+
+/**
+ * 模组通用配置
+ */
+public class PIAYNConfig {
+
+    private static final ModConfigSpec.Builder BUILDER = new ModConfigSpec.Builder();
+
+    // === 蓝图 ===
+    static {
+        BUILDER.comment("Schematic settings").push("schematic");
+    }
+
+    /**
+     * 蓝图任务每 tick 可占用的主线程时间（毫秒）
+     */
+    public static final ModConfigSpec.IntValue SCHEM_TICK_BUDGET_MS = BUILDER
+        .comment("Milliseconds of game thread time schematic jobs may use per tick")
+        .defineInRange("tickBudgetMs", 5, 1, 50);
+
+    /**
+     * 服务端单次截取允许的最大方块数
+     */
+    public static final ModConfigSpec.IntValue SCHEM_MAX_CAPTURE_VOLUME = BUILDER
+        .comment("Maximum number of blocks a single server-side capture request may cover")
+        .defineInRange("maxCaptureVolume", 256 * 256 * 256, 1, Integer.MAX_VALUE);
+
+    /**
+     * 读取的蓝图文件允许声明的最大方块数，超出的文件拒绝读取
+     */
+    public static final ModConfigSpec.IntValue SCHEM_MAX_FILE_VOLUME = BUILDER
+        .comment("Maximum number of blocks (width x height x length) a schematic file may declare, larger files are rejected when read")
+        .defineInRange("maxSchematicVolume", 512 * 512 * 512, 1, Integer.MAX_VALUE);
+
+    /**
+     * 服务端截取时选区角点与玩家的最大水平距离
+     */
+    public static final ModConfigSpec.IntValue SCHEM_MAX_CAPTURE_DISTANCE = BUILDER
+        .comment("Maximum horizontal distance in blocks between the player and either corner of a server-side capture request")
+        .defineInRange("maxCaptureDistance", 512, 16, 30_000_000);
+
+    /**
+     * 用蓝图笔在服务端保存蓝图所需的权限等级
+     */
+    public static final ModConfigSpec.IntValue SCHEM_CAPTURE_PERMISSION = BUILDER
+        .comment("Permission level a player needs to save blueprint pen captures into the server schematic folder")
+        .defineInRange("capturePermissionLevel", 2, 0, 4);
+
+    /**
+     * 每个玩家通过蓝图笔保存在服务端的蓝图数量上限
+     */
+    public static final ModConfigSpec.IntValue SCHEM_CAPTURE_MAX_FILES = BUILDER
+        .comment("Maximum number of blueprint pen captures each player may keep in the server schematic folder")
+        .defineInRange("maxCapturesPerPlayer", 32, 1, 100_000);
+
+    /**
+     * 每个玩家通过蓝图笔保存在服务端的蓝图总大小上限（MB）
+     */
+    public static final ModConfigSpec.IntValue SCHEM_CAPTURE_MAX_MB = BUILDER
+        .comment("Maximum total size in MB of the blueprint pen captures each player may keep in the server schematic folder")
+        .defineInRange("maxCaptureMbPerPlayer", 256, 1, 1_048_576);
+
+    /**
+     * 截取时是否在后台并行合并调色板与编码
+     */
+    public static final ModConfigSpec.BooleanValue SCHEM_PARALLEL_CAPTURE = BUILDER
+        .comment("Snapshot chunk sections on the game thread and merge palettes / encode block data on a ForkJoin pool")
+        .define("parallelCapture", true);
+
+    /**
+     * 已解码蓝图缓存的内存上限（MB），0 表示不缓存
+     */
+    public static final ModConfigSpec.IntValue SCHEM_CACHE_MEMORY_MB = BUILDER
+        .comment("Memory budget in MB for decoded schematics kept for repeated pastes, 0 disables the cache")
+        .defineInRange("cacheMemoryMb", 256, 0, 65536);
+
+    /**
+     * 粘贴过的蓝图是否生成未压缩的旁路文件，之后通过内存映射加载
+     */
+    public static final ModConfigSpec.BooleanValue SCHEM_SIDECAR = BUILDER
+        .comment("Write an uncompressed .psc sidecar next to pasted schematics and memory-map it on later loads")
+        .define("sidecarFiles", true);
+
+    /**
+     * 服务端截取是否保存为区块段仓库清单，而不是完整的 .schem
+     */
+    public static final ModConfigSpec.BooleanValue SCHEM_SECTION_STORE = BUILDER
+        .comment("Save server-side captures as .pman manifests backed by the shared content-addressed section store")
+        .define("sectionStore", false);
+
+    /**
+     * 截取时包含的实体 ID 或 #标签，为空表示全部
+     */
+    public static final ModConfigSpec.ConfigValue<List<? extends String>> SCHEM_ENTITY_INCLUDE = BUILDER
+        .comment("Entity ids or #tags to capture, empty captures every entity type")
+        .defineListAllowEmpty("entityInclude", List.of(), () -> "", PIAYNConfig::isEntityRule);
+
+    /**
+     * 截取时排除的实体 ID 或 #标签
+     */
+    public static final ModConfigSpec.ConfigValue<List<? extends String>> SCHEM_ENTITY_EXCLUDE = BUILDER
+        .comment("Entity ids or #tags never captured, checked before any entity is serialized")
+        .defineListAllowEmpty("entityExclude", EntityFilter.DEFAULT_EXCLUDE, () -> "", PIAYNConfig::isEntityRule);
+
+    /**
+     * 每个玩家保留的可撤销粘贴次数，0 表示不记录
+     */
+    public static final ModConfigSpec.IntValue SCHEM_UNDO_HISTORY = BUILDER
+        .comment("Number of pastes each player can undo, 0 disables undo journals")
+        .defineInRange("undoHistory", 10, 0, 100);
+
+    /**
+     * 每个玩家撤销记录的压缩后内存上限（MB）
+     */
+    public static final ModConfigSpec.IntValue SCHEM_UNDO_MEMORY_MB = BUILDER
+        .comment("Memory budget in MB for each player's compressed undo journals, oldest entries are dropped first")
+        .defineInRange("undoMemoryMb", 64, 1, 4096);
+
+    static {
+        BUILDER.pop();
+    }
+
+    public static final ModConfigSpec SPEC = BUILDER.build();
+
+    private static boolean isEntityRule(Object value) {
+        return value instanceof String rule && ResourceLocation.tryParse(rule.startsWith("#") ? rule.substring(1) : rule) != null;
+    }
+
+    private PIAYNConfig() {
+        // 配置类，禁止实例化
+    }
+}
@@ -6,6 +6,7 @@ import com.dwinovo.piayn.PIAYN;
 import com.dwinovo.piayn.client.resource.schem.SchemTexture;
 import com.dwinovo.piayn.client.gui.screen.schem.SchematicSaveScreen;
 import com.dwinovo.piayn.item.BlueprintPenItem;
+import com.dwinovo.piayn.packet.SchemCaptureCancelPacket;
 import com.dwinovo.piayn.utils.RaycastHelper;
 
 import com.mojang.logging.LogUtils;
@@ -18,11 +19,10 @@ import net.minecraft.world.item.context.BlockPlaceContext;
 import net.minecraft.world.item.context.UseOnContext;
 
 import net.createmod.catnip.outliner.Outliner;
-import net.createmod.catnip.render.BindableTexture;
-import net.createmod.catnip.animation.AnimationTickHolder;
 import net.minecraft.client.Minecraft;
 import net.minecraft.core.BlockPos;
 import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.level.Level;
 import net.minecraft.world.phys.AABB;
 import net.minecraft.world.phys.HitResult;
 import net.minecraft.core.Direction;
@@ -34,6 +34,7 @@ import net.neoforged.bus.api.SubscribeEvent;
 import net.neoforged.bus.api.EventPriority;
 import net.neoforged.neoforge.client.event.RenderLevelStageEvent;
 import net.neoforged.neoforge.client.event.InputEvent;
+import net.neoforged.neoforge.network.PacketDistributor;
 import org.lwjgl.glfw.GLFW;
 
 @EventBusSubscriber(modid = PIAYN.MOD_ID,value = Dist.CLIENT)
@@ -45,14 +46,59 @@ public class BlueprintPenClientEvent {
     private static BlockPos selectedPos;
     private static Direction selectedFace;
     private static int range = 10;
+    // 服务端是否正在执行本玩家发起的截取
+    private static boolean serverCaptureActive;
 
     // Outliner 渲染用的槽位句柄（同一槽位可被 "追踪" 更新）
     private static final Object OUTLINE_SLOT = new Object();
-    // 当前“指向或投射”的方块位置（非必然写入到物品的 first/second，仅用于渲染辅助）
-    // 注：selectedPos/selectedFace/range 已在上方声明为客户端本地状态
-
-    BindableTexture bindableTexture = () -> ResourceLocation.fromNamespaceAndPath(PIAYN.MOD_ID, "textures/schem/border.png");
+    // 描边样式对象只创建一次，每帧复用
+    private static final SchemTexture BORDER_TEXTURE = new SchemTexture(ResourceLocation.fromNamespaceAndPath(PIAYN.MOD_ID, "textures/schem/border.png"));
+    private static final int OUTLINE_COLOR = 0x6886c5;
+    private static final float OUTLINE_WIDTH = 1 / 16f;
+    private static final double TARGET_RANGE = 75;
+    private static final double FACE_RANGE = 70;
+    // 视角不动时，每隔多少 tick 重新检查一次世界中的命中方块
+    private static final int WORLD_REFRESH_TICKS = 4;
 
+    // === 帧间缓存：只有视角或选择变化时才重新做射线检测 ===
+    // 目标格射线的输入
+    private static double targetEyeX = Double.NaN;
+    private static double targetEyeY;
+    private static double targetEyeZ;
+    private static float targetXRot;
+    private static float targetYRot;
+    private static boolean targetCtrl;
+    private static int targetRange;
+    private static long targetRefresh;
+    private static Level targetLevel;
+    // 选中面射线的输入
+    private static double faceEyeX = Double.NaN;
+    private static double faceEyeY;
+    private static double faceEyeZ;
+    private static float faceXRot;
+    private static float faceYRot;
+    private static double faceCameraX;
+    private static double faceCameraY;
+    private static double faceCameraZ;
+    private static BlockPos faceFirst;
+    private static BlockPos faceSecond;
+    private static AABB faceBox;
+    // 选中面遍历的状态，由复用的回调读写
+    private static boolean faceInside;
+    private static Direction hitFace;
+    private static final RaycastHelper.VoxelVisitor FACE_VISITOR = (x, y, z, face) -> {
+        if (faceInside ^ faceBox.contains(x + 0.5, y + 0.5, z + 0.5)) {
+            hitFace = face;
+            return true;
+        }
+        return false;
+    };
+    // 渲染盒的输入与结果
+    private static BlockPos boxLookingAt;
+    private static BlockPos boxFirst;
+    private static BlockPos boxSecond;
+    private static AABB currentBox;
+    private static final BlockPos.MutableBlockPos scratchPos = new BlockPos.MutableBlockPos();
 
     @SubscribeEvent(priority = EventPriority.NORMAL)
     public static void onRenderLevelStage(RenderLevelStageEvent event) {
@@ -63,64 +109,132 @@ public class BlueprintPenClientEvent {
         if (player == null || mc.level == null) return;
         if (!(player.getMainHandItem().getItem() instanceof BlueprintPenItem)) return;
 
-        // 计算当前目标格：
-        // - Ctrl 按下：使用“视线 * range”的落点作为临时选中格，便于不指向方块时预览尺寸
-        // - 非 Ctrl：使用游戏命中结果中的方块位置
-        BlockPos lookingAt = null;
-        if (isCtrlDown(mc)) {
-            // 与 Create 一致：按下“激活工具”键（此处用Ctrl）时，使用投射点 eye + look * range
-            float pt = AnimationTickHolder.getPartialTicks();
-            Vec3 eye = player.getEyePosition(pt);
-            Vec3 dir = player.getLookAngle();
-            Vec3 target = eye.add(dir.scale(range));
-            selectedPos = BlockPos.containing(target);
-            lookingAt = selectedPos;
-        } else {
-            // 未按下时：用 RaycastHelper.rayTraceRange(75) 命中方块，并对垂直面做“上移一格”判定
-            var trace = RaycastHelper.rayTraceRange(mc.level, player, 75);
-            if (trace != null && trace.getType() == HitResult.Type.BLOCK) {
-                BlockPos hit = trace.getBlockPos();
-                boolean replaceable = mc.level.getBlockState(hit)
-                    .canBeReplaced(new BlockPlaceContext(new UseOnContext(player, InteractionHand.MAIN_HAND, trace)));
-                if (trace.getDirection().getAxis().isVertical() && !replaceable) {
-                    hit = hit.relative(trace.getDirection());
-                }
-                lookingAt = hit;
-                selectedPos = hit;
-            } else {
-                selectedPos = null;
-            }
-        }
+        updateTarget(mc, player);
 
-        // 根据已选 first/second 和 lookingAt 计算当前渲染盒（使用客户端本地状态）
+        // 根据已选 first/second 和目标格计算当前渲染盒（使用客户端本地状态）
         BlockPos first = firstPos;
         BlockPos second = secondPos;
+        updateSelectedFace(mc, player, first, second);
 
-        // 当存在完整区域时计算一个“选中面”，用于滚轮沿面缩放：
-        
-        selectedFace = null;
-        if (first != null && second != null) {
-            AABB bb = makeBox(first, second).expandTowards(1, 1, 1).inflate(.45f);
-            Vec3 projectedView = mc.gameRenderer.getMainCamera().getPosition();
-            boolean inside = bb.contains(projectedView);
-            var result = RaycastHelper.rayTraceUntil(player, 70, pos -> {
-                Vec3 c = new Vec3(pos.getX() + 0.5, pos.getY() + 0.5, pos.getZ() + 0.5);
-                return inside ^ bb.contains(c);
-            });
-            selectedFace = (result == null || result.missed()) ? null : (inside ? result.getFacing().getOpposite() : result.getFacing());
+        BlockPos lookingAt = selectedPos;
+        if (lookingAt != boxLookingAt || first != boxFirst || second != boxSecond) {
+            boxLookingAt = lookingAt;
+            boxFirst = first;
+            boxSecond = second;
+            currentBox = getCurrentSelectionBox(lookingAt, first, second);
         }
-
-        AABB current = getCurrentSelectionBox(lookingAt, first, second);
-        if (current != null) {
-            Outliner.getInstance().chaseAABB(OUTLINE_SLOT, current)
-                .colored(0x6886c5)
-                .lineWidth(1 / 16f)
-                .withFaceTextures(new SchemTexture(ResourceLocation.fromNamespaceAndPath(PIAYN.MOD_ID, "textures/schem/border.png")),
-                        new SchemTexture(ResourceLocation.fromNamespaceAndPath(PIAYN.MOD_ID, "textures/schem/border.png")))
+        if (currentBox != null) {
+            Outliner.getInstance().chaseAABB(OUTLINE_SLOT, currentBox)
+                .colored(OUTLINE_COLOR)
+                .lineWidth(OUTLINE_WIDTH)
+                .withFaceTextures(BORDER_TEXTURE, BORDER_TEXTURE)
                 .highlightFace(selectedFace);
         }
     }
 
+    /**
+     * 计算当前目标格，输入不变时沿用上次结果：
+     * - Ctrl 按下：使用“视线 * range”的落点作为临时选中格，便于不指向方块时预览尺寸
+     * - 非 Ctrl：用 RaycastHelper.rayTraceRange(75) 命中方块，并对垂直面做“上移一格”判定
+     * 射线使用玩家当前 tick 的位置与朝向，转动视角时每帧更新，静止时每 {@link #WORLD_REFRESH_TICKS} tick 复查一次世界
+     */
+    private static void updateTarget(Minecraft mc, Player player) {
+        final double eyeX = player.getX();
+        final double eyeY = player.getY() + player.getEyeHeight();
+        final double eyeZ = player.getZ();
+        final float xRot = player.getXRot();
+        final float yRot = player.getYRot();
+        final boolean ctrl = isCtrlDown(mc);
+        final long refresh = mc.level.getGameTime() / WORLD_REFRESH_TICKS;
+        if (eyeX == targetEyeX && eyeY == targetEyeY && eyeZ == targetEyeZ && xRot == targetXRot && yRot == targetYRot
+            && ctrl == targetCtrl && range == targetRange && mc.level == targetLevel && (ctrl || refresh == targetRefresh)) {
+            return;
+        }
+        targetEyeX = eyeX;
+        targetEyeY = eyeY;
+        targetEyeZ = eyeZ;
+        targetXRot = xRot;
+        targetYRot = yRot;
+        targetCtrl = ctrl;
+        targetRange = range;
+        targetRefresh = refresh;
+        targetLevel = mc.level;
+
+        if (ctrl) {
+            // 与 Create 一致：按下“激活工具”键（此处用Ctrl）时，使用投射点 eye + look * range
+            float xRad = xRot * Mth.DEG_TO_RAD;
+            float yRad = -yRot * Mth.DEG_TO_RAD;
+            float horizontal = Mth.cos(xRad);
+            scratchPos.set(eyeX + Mth.sin(yRad) * horizontal * range, eyeY - Mth.sin(xRad) * range,
+                eyeZ + Mth.cos(yRad) * horizontal * range);
+            setSelectedPos(scratchPos);
+            return;
+        }
+        var trace = RaycastHelper.rayTraceRange(mc.level, player, TARGET_RANGE);
+        if (trace == null || trace.getType() != HitResult.Type.BLOCK) {
+            selectedPos = null;
+            return;
+        }
+        BlockPos hit = trace.getBlockPos();
+        if (trace.getDirection().getAxis().isVertical()) {
+            boolean replaceable = mc.level.getBlockState(hit)
+                .canBeReplaced(new BlockPlaceContext(new UseOnContext(player, InteractionHand.MAIN_HAND, trace)));
+            if (!replaceable) {
+                hit = hit.relative(trace.getDirection());
+            }
+        }
+        setSelectedPos(hit);
+    }
+
+    /**
+     * 只在位置变化时替换 selectedPos，避免每次创建新的不可变坐标
+     */
+    private static void setSelectedPos(BlockPos pos) {
+        if (selectedPos == null || !selectedPos.equals(pos)) {
+            selectedPos = pos.immutable();
+        }
+    }
+
+    /**
+     * 当存在完整区域时计算一个“选中面”，用于滚轮沿面缩放；视角与区域不变时沿用上次结果
+     */
+    private static void updateSelectedFace(Minecraft mc, Player player, BlockPos first, BlockPos second) {
+        if (first == null || second == null) {
+            selectedFace = null;
+            faceFirst = null;
+            faceSecond = null;
+            return;
+        }
+        final double eyeX = player.getX();
+        final double eyeY = player.getY() + player.getEyeHeight();
+        final double eyeZ = player.getZ();
+        final float xRot = player.getXRot();
+        final float yRot = player.getYRot();
+        Vec3 camera = mc.gameRenderer.getMainCamera().getPosition();
+        if (first == faceFirst && second == faceSecond && eyeX == faceEyeX && eyeY == faceEyeY && eyeZ == faceEyeZ
+            && xRot == faceXRot && yRot == faceYRot && camera.x == faceCameraX && camera.y == faceCameraY && camera.z == faceCameraZ) {
+            return;
+        }
+        if (first != faceFirst || second != faceSecond) {
+            faceBox = makeBox(first, second).expandTowards(1, 1, 1).inflate(.45f);
+        }
+        faceFirst = first;
+        faceSecond = second;
+        faceEyeX = eyeX;
+        faceEyeY = eyeY;
+        faceEyeZ = eyeZ;
+        faceXRot = xRot;
+        faceYRot = yRot;
+        faceCameraX = camera.x;
+        faceCameraY = camera.y;
+        faceCameraZ = camera.z;
+
+        faceInside = faceBox.contains(camera);
+        hitFace = null;
+        RaycastHelper.traverse(player, FACE_RANGE, FACE_VISITOR);
+        selectedFace = hitFace == null ? null : (faceInside ? hitFace.getOpposite() : hitFace);
+    }
+
     @SubscribeEvent
     public static void onMouseScroll(InputEvent.MouseScrollingEvent event) {
         Minecraft mc = Minecraft.getInstance();
@@ -179,8 +293,14 @@ public class BlueprintPenClientEvent {
         if (!(player.getMainHandItem().getItem() instanceof BlueprintPenItem))
             return;
 
-        // Shift 清空
+        // Shift 清空；有保存任务进行中时优先取消任务
         if (player.isShiftKeyDown()) {
+            if (serverCaptureActive) {
+                PacketDistributor.sendToServer(SchemCaptureCancelPacket.INSTANCE);
+                player.displayClientMessage(Component.literal("§e[蓝图笔] 正在取消保存任务"), true);
+                event.setCanceled(true);
+                return;
+            }
             firstPos = null;
             secondPos = null;
             player.displayClientMessage(Component.literal("§e[蓝图笔] 已清空选择"), true);
@@ -215,6 +335,13 @@ public class BlueprintPenClientEvent {
         event.setCanceled(true);
     }
 
+    /**
+     * 由服务端截取状态包更新
+     */
+    public static void setServerCaptureActive(boolean active) {
+        serverCaptureActive = active;
+    }
+
     /**
      * 检测是否按下 Ctrl（左右任意）。
      * 使用 GLFW 直接查询窗口键态，避免与键位映射冲突。
@@ -245,7 +372,7 @@ public class BlueprintPenClientEvent {
             Math.max(first.getX(), second.getX()) + 1, Math.max(first.getY(), second.getY()) + 1, Math.max(first.getZ(), second.getZ()) + 1);
     }
 
-    // 无需单独的射线求面方法：已对齐 Create 使用 RaycastHelper.rayTraceUntil 获取朝向
+    // 无需单独的射线求面方法：使用 RaycastHelper.traverse 的体素遍历获取朝向
 
     // 使用原始 BlockPos 角点构造盒，不做 +1 扩展（与 Create 的 AABB(first, second) 语义对齐）
     private static AABB makeBox(BlockPos a, BlockPos b) {
@@ -4,6 +4,7 @@ import net.neoforged.bus.api.SubscribeEvent;
 import net.neoforged.fml.common.EventBusSubscriber;
 import com.dwinovo.piayn.PIAYN;
 import com.dwinovo.piayn.command.ModelDataReloadCommand;
+import com.dwinovo.piayn.command.SchemCommand;
 
 
 @EventBusSubscriber(modid = PIAYN.MOD_ID)
@@ -12,5 +13,6 @@ public class RegisterCommandsEvent {
     @SubscribeEvent
     public static void onRegisterCommands(net.neoforged.neoforge.event.RegisterCommandsEvent event) {
         ModelDataReloadCommand.register(event.getDispatcher());
+        SchemCommand.register(event.getDispatcher());
     }
 }
@@ -2,6 +2,9 @@ package com.dwinovo.piayn.event;
 
 import com.dwinovo.piayn.PIAYN;
 import com.dwinovo.piayn.packet.ModelSwitchPacket;
+import com.dwinovo.piayn.packet.SchemCaptureCancelPacket;
+import com.dwinovo.piayn.packet.SchemCaptureRequestPacket;
+import com.dwinovo.piayn.packet.SchemCaptureStatusPacket;
 import com.dwinovo.piayn.packet.ServerModelDataPacket;
 
 
@@ -27,6 +30,23 @@ public class RegisterPacketEvent {
             ServerModelDataPacket.STREAM_CODEC,
             ServerModelDataPacket::handleClient
         );
+        
+        // 注册蓝图截取包
+        registrar.playToServer(
+            SchemCaptureRequestPacket.TYPE,
+            SchemCaptureRequestPacket.STREAM_CODEC,
+            SchemCaptureRequestPacket::handleServer
+        );
+        registrar.playToServer(
+            SchemCaptureCancelPacket.TYPE,
+            SchemCaptureCancelPacket.STREAM_CODEC,
+            SchemCaptureCancelPacket::handleServer
+        );
+        registrar.playToClient(
+            SchemCaptureStatusPacket.TYPE,
+            SchemCaptureStatusPacket.STREAM_CODEC,
+            SchemCaptureStatusPacket::handleClient
+        );
     
     }
 }
@@ -0,0 +1,37 @@
+package com.dwinovo.piayn.event;
+
+import com.dwinovo.piayn.PIAYN;
+import com.dwinovo.piayn.schem.data.SchematicCache;
+import com.dwinovo.piayn.schem.store.SectionStore;
+import com.dwinovo.piayn.schem.undo.PasteHistory;
+import com.dwinovo.piayn.schem.util.BlockStateCache;
+
+import net.neoforged.bus.api.SubscribeEvent;
+import net.neoforged.fml.common.EventBusSubscriber;
+import net.neoforged.neoforge.event.TagsUpdatedEvent;
+import net.neoforged.neoforge.event.server.ServerStoppedEvent;
+
+/**
+ * 蓝图相关缓存的失效处理
+ */
+@EventBusSubscriber(modid = PIAYN.MOD_ID)
+public class SchemCacheEvent {
+
+    /**
+     * 数据包或注册表同步后清空方块状态字符串缓存与已解码蓝图
+     */
+    @SubscribeEvent
+    public static void onTagsUpdated(TagsUpdatedEvent event) {
+        BlockStateCache.invalidateAll();
+        SchematicCache.invalidateAll();
+        SectionStore.invalidateCache();
+    }
+
+    /**
+     * 撤销记录只对当前存档有效
+     */
+    @SubscribeEvent
+    public static void onServerStopped(ServerStoppedEvent event) {
+        PasteHistory.INSTANCE.clear();
+    }
+}
@@ -0,0 +1,28 @@
+package com.dwinovo.piayn.event;
+
+import com.dwinovo.piayn.PIAYN;
+import com.dwinovo.piayn.schem.job.SchemJobScheduler;
+import com.dwinovo.piayn.schem.job.ServerCaptureService;
+
+import net.neoforged.bus.api.SubscribeEvent;
+import net.neoforged.fml.common.EventBusSubscriber;
+import net.neoforged.neoforge.event.server.ServerStoppingEvent;
+import net.neoforged.neoforge.event.tick.ServerTickEvent;
+
+/**
+ * 服务端蓝图任务调度
+ */
+@EventBusSubscriber(modid = PIAYN.MOD_ID)
+public class SchemJobTickEvent {
+
+    @SubscribeEvent
+    public static void onServerTick(ServerTickEvent.Post event) {
+        SchemJobScheduler.SERVER.tick();
+    }
+
+    @SubscribeEvent
+    public static void onServerStopping(ServerStoppingEvent event) {
+        SchemJobScheduler.SERVER.cancelAll();
+        ServerCaptureService.clear();
+    }
+}
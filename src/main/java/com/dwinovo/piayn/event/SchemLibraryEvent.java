@@ -0,0 +1,26 @@
+package com.dwinovo.piayn.event;
+
+import com.dwinovo.piayn.PIAYN;
+import com.dwinovo.piayn.schem.library.SchemLibrary;
+
+import net.neoforged.bus.api.SubscribeEvent;
+import net.neoforged.fml.common.EventBusSubscriber;
+import net.neoforged.neoforge.event.server.ServerStartingEvent;
+import net.neoforged.neoforge.event.server.ServerStoppedEvent;
+
+/**
+ * 蓝图库索引的启动与停止
+ */
+@EventBusSubscriber(modid = PIAYN.MOD_ID)
+public class SchemLibraryEvent {
+
+    @SubscribeEvent
+    public static void onServerStarting(ServerStartingEvent event) {
+        SchemLibrary.INSTANCE.start();
+    }
+
+    @SubscribeEvent
+    public static void onServerStopped(ServerStoppedEvent event) {
+        SchemLibrary.INSTANCE.stop();
+    }
+}
@@ -0,0 +1,35 @@
+package com.dwinovo.piayn.event;
+
+import com.dwinovo.piayn.PIAYN;
+import com.dwinovo.piayn.client.renderer.schem.SchemPreviewRenderer;
+import com.dwinovo.piayn.command.SchemPreviewCommand;
+
+import net.neoforged.api.distmarker.Dist;
+import net.neoforged.bus.api.SubscribeEvent;
+import net.neoforged.fml.common.EventBusSubscriber;
+import net.neoforged.neoforge.client.event.ClientPlayerNetworkEvent;
+import net.neoforged.neoforge.client.event.RegisterClientCommandsEvent;
+import net.neoforged.neoforge.client.event.RenderLevelStageEvent;
+
+/**
+ * 蓝图预览的绘制、清理与客户端指令
+ */
+@EventBusSubscriber(modid = PIAYN.MOD_ID, value = Dist.CLIENT)
+public class SchemPreviewClientEvent {
+
+    @SubscribeEvent
+    public static void onRenderLevelStage(RenderLevelStageEvent event) {
+        if (event.getStage() != RenderLevelStageEvent.Stage.AFTER_TRANSLUCENT_BLOCKS) return;
+        SchemPreviewRenderer.INSTANCE.render(event);
+    }
+
+    @SubscribeEvent
+    public static void onRegisterClientCommands(RegisterClientCommandsEvent event) {
+        SchemPreviewCommand.register(event.getDispatcher());
+    }
+
+    @SubscribeEvent
+    public static void onLoggingOut(ClientPlayerNetworkEvent.LoggingOut event) {
+        SchemPreviewRenderer.INSTANCE.hide();
+    }
+}
@@ -0,0 +1,43 @@
+package com.dwinovo.piayn.packet;
+
+import io.netty.buffer.ByteBuf;
+import net.minecraft.network.codec.StreamCodec;
+import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.level.ServerPlayer;
+import net.neoforged.neoforge.network.handling.IPayloadContext;
+import com.dwinovo.piayn.PIAYN;
+import com.dwinovo.piayn.schem.job.ServerCaptureService;
+
+/**
+ * 取消蓝图截取网络包
+ * 用于客户端取消自己正在服务端执行的截取任务
+ */
+public record SchemCaptureCancelPacket() implements CustomPacketPayload {
+
+    public static final SchemCaptureCancelPacket INSTANCE = new SchemCaptureCancelPacket();
+
+    public static final Type<SchemCaptureCancelPacket> TYPE = new Type<>(
+        ResourceLocation.fromNamespaceAndPath(PIAYN.MOD_ID, "schem_capture_cancel")
+    );
+
+    public static final StreamCodec<ByteBuf, SchemCaptureCancelPacket> STREAM_CODEC = StreamCodec.unit(INSTANCE);
+
+    @Override
+    public Type<? extends CustomPacketPayload> type() {
+        return TYPE;
+    }
+
+    /**
+     * 服务端处理取消请求
+     * @param packet 收到的包数据
+     * @param context 网络上下文
+     */
+    public static void handleServer(SchemCaptureCancelPacket packet, IPayloadContext context) {
+        context.enqueueWork(() -> {
+            if (context.player() instanceof ServerPlayer player) {
+                ServerCaptureService.cancel(player);
+            }
+        });
+    }
+}
@@ -0,0 +1,60 @@
+package com.dwinovo.piayn.packet;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.network.codec.ByteBufCodecs;
+import net.minecraft.network.codec.StreamCodec;
+import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.level.ServerPlayer;
+import net.neoforged.neoforge.network.handling.IPayloadContext;
+import com.dwinovo.piayn.PIAYN;
+import com.dwinovo.piayn.item.BlueprintPenItem;
+import com.dwinovo.piayn.schem.job.ServerCaptureService;
+
+/**
+ * 蓝图截取请求网络包
+ * 客户端只发送选区与文件名，由服务端在权威世界中分帧截取并保存
+ */
+public record SchemCaptureRequestPacket(BlockPos startPos, BlockPos endPos, String schemName) implements CustomPacketPayload {
+
+    public static final Type<SchemCaptureRequestPacket> TYPE = new Type<>(
+        ResourceLocation.fromNamespaceAndPath(PIAYN.MOD_ID, "schem_capture_request")
+    );
+
+    public static final StreamCodec<FriendlyByteBuf, SchemCaptureRequestPacket> STREAM_CODEC =
+        StreamCodec.composite(
+            BlockPos.STREAM_CODEC, SchemCaptureRequestPacket::startPos,
+            BlockPos.STREAM_CODEC, SchemCaptureRequestPacket::endPos,
+            ByteBufCodecs.stringUtf8(128), SchemCaptureRequestPacket::schemName,
+            SchemCaptureRequestPacket::new
+        );
+
+    @Override
+    public Type<? extends CustomPacketPayload> type() {
+        return TYPE;
+    }
+
+    /**
+     * 服务端处理截取请求
+     * @param packet 收到的包数据
+     * @param context 网络上下文
+     */
+    public static void handleServer(SchemCaptureRequestPacket packet, IPayloadContext context) {
+        context.enqueueWork(() -> {
+            ServerPlayer player = (ServerPlayer) context.player();
+            if (player == null) {
+                PIAYN.LOGGER.warn("Received SchemCaptureRequestPacket but player is null");
+                return;
+            }
+
+            // 只接受手持蓝图笔的玩家发起的请求
+            if (!(player.getMainHandItem().getItem() instanceof BlueprintPenItem)) {
+                PIAYN.LOGGER.warn("Player {} sent a capture request without holding a blueprint pen", player.getName().getString());
+                return;
+            }
+
+            ServerCaptureService.start(player, packet.startPos(), packet.endPos(), packet.schemName());
+        });
+    }
+}
@@ -0,0 +1,72 @@
+package com.dwinovo.piayn.packet;
+
+import net.minecraft.client.Minecraft;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.network.chat.Component;
+import net.minecraft.network.codec.ByteBufCodecs;
+import net.minecraft.network.codec.StreamCodec;
+import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
+import net.minecraft.resources.ResourceLocation;
+import net.neoforged.neoforge.network.handling.IPayloadContext;
+import com.dwinovo.piayn.PIAYN;
+import com.dwinovo.piayn.event.BlueprintPenClientEvent;
+import com.dwinovo.piayn.schem.job.SchemJob;
+
+/**
+ * 蓝图截取状态网络包
+ * 服务端向发起截取的玩家汇报进度与结果
+ */
+public record SchemCaptureStatusPacket(String schemName, int state, float progress) implements CustomPacketPayload {
+
+    public static final Type<SchemCaptureStatusPacket> TYPE = new Type<>(
+        ResourceLocation.fromNamespaceAndPath(PIAYN.MOD_ID, "schem_capture_status")
+    );
+
+    public static final StreamCodec<FriendlyByteBuf, SchemCaptureStatusPacket> STREAM_CODEC =
+        StreamCodec.composite(
+            ByteBufCodecs.STRING_UTF8, SchemCaptureStatusPacket::schemName,
+            ByteBufCodecs.VAR_INT, SchemCaptureStatusPacket::state,
+            ByteBufCodecs.FLOAT, SchemCaptureStatusPacket::progress,
+            SchemCaptureStatusPacket::new
+        );
+
+    /**
+     * 从任务当前状态创建网络包
+     */
+    public static SchemCaptureStatusPacket fromJob(SchemJob job) {
+        return new SchemCaptureStatusPacket(job.getName(), job.getState().ordinal(), job.getProgress());
+    }
+
+    public SchemJob.State getJobState() {
+        SchemJob.State[] states = SchemJob.State.values();
+        return state >= 0 && state < states.length ? states[state] : SchemJob.State.FAILED;
+    }
+
+    @Override
+    public Type<? extends CustomPacketPayload> type() {
+        return TYPE;
+    }
+
+    /**
+     * 客户端处理截取状态包
+     * @param packet 接收到的数据包
+     * @param context 网络上下文
+     */
+    public static void handleClient(SchemCaptureStatusPacket packet, IPayloadContext context) {
+        context.enqueueWork(() -> {
+            Minecraft mc = Minecraft.getInstance();
+            SchemJob.State jobState = packet.getJobState();
+            BlueprintPenClientEvent.setServerCaptureActive(!jobState.isFinished());
+            if (mc.player == null) {
+                return;
+            }
+            Component message = switch (jobState) {
+                case DONE -> Component.literal("§a[蓝图笔] 蓝图已保存: " + packet.schemName());
+                case FAILED -> Component.literal("§c[蓝图笔] 蓝图保存失败: " + packet.schemName());
+                case CANCELLED -> Component.literal("§e[蓝图笔] 已取消保存: " + packet.schemName());
+                default -> Component.literal("§e[蓝图笔] 正在保存 " + packet.schemName() + " " + (int) (packet.progress() * 100) + "%");
+            };
+            mc.player.displayClientMessage(message, true);
+        });
+    }
+}
@@ -8,14 +8,30 @@ import net.minecraft.nbt.NbtIo;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.level.Level;
 
+import com.dwinovo.piayn.config.PIAYNConfig;
+import com.dwinovo.piayn.schem.capture.RegionCapture;
+import com.dwinovo.piayn.schem.data.DecodedSchematic;
+import com.dwinovo.piayn.schem.data.SchematicCache;
+import com.dwinovo.piayn.schem.data.SectionCodec;
+import com.dwinovo.piayn.schem.io.SchemStreamReader;
+import com.dwinovo.piayn.schem.io.SchemStreamWriter;
 import com.dwinovo.piayn.schem.pojo.StructureData;
+import com.dwinovo.piayn.schem.snapshot.SchemSnapshot;
+import com.dwinovo.piayn.schem.store.SectionStore;
 import com.dwinovo.piayn.schem.util.EntityUtil;
 import com.dwinovo.piayn.schem.util.BlockUtil;
 import com.dwinovo.piayn.schem.util.BlockContainerUtil;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
 import org.slf4j.Logger;
 import com.mojang.logging.LogUtils;
 
@@ -26,8 +42,13 @@ public class SchemSerializer {
 
     private static final Logger LOGGER = LogUtils.getLogger();
     
+    // 配置未加载时（如客户端预览）允许的最大方块数
+    private static final int DEFAULT_MAX_FILE_VOLUME = 512 * 512 * 512;
+
     // === 格式常量 ===
     public static final int SCHEMATIC_VERSION = 3;
+    // Minecraft 1.21.1 data version
+    public static final int DATA_VERSION = 3953;
     public static final String SCHEMATIC_KEY = "Schematic";
     
     // === 字段名常量 ===
@@ -57,40 +78,153 @@ public class SchemSerializer {
 
     /**
      * 把地图结构序列化保存并且返回CompoundTag
+     * 同步执行，大区域请使用 {@link com.dwinovo.piayn.schem.job.SchemSaveJob}
      */
     public static CompoundTag serialize(StructureData structureInfo) {
+        if (!validate(structureInfo)) {
+            return null;
+        }
+        final String schematicName = resolveSchemName(structureInfo.getSchemName());
+        final Level level = structureInfo.getLevel();
+        final BlockPos originPos = structureInfo.getOriginPos();
+        
+        // 截取方块
+        RegionCapture capture = new RegionCapture(level, originPos,
+            structureInfo.getWidth(), structureInfo.getHeight(), structureInfo.getLength());
+        capture.captureAll();
+        
+        // 构建实体列表
+        ListTag entitiesList = EntityUtil.buildEntitiesList(level, originPos, capture.getWidth(), capture.getHeight(), capture.getLength());
+        
+        CompoundTag rootContent = buildSchematic(capture, entitiesList, schematicName, structureInfo.getAuthorName());
+
+        // 写入文件
+        SchemSerializer.writeSchem(rootContent, schematicName);
+        
+        return rootContent;
+    }
+
+    /**
+     * 把快照链还原为完整的.schem文件
+     * @return 蓝图文件路径，失败时返回 null
+     */
+    public static Path restoreSnapshot(String snapshotName, String filename) {
+        try {
+            CompoundTag rootContent = SchemSnapshot.rebuild(snapshotName);
+            return writeSchemBytes(compress(rootContent), resolveSchemName(filename));
+        } catch (IOException e) {
+            LOGGER.error("Failed to restore snapshot: {}", snapshotName, e);
+            return null;
+        }
+    }
+
+    /**
+     * 把.schem文件转存为区块段仓库清单，与仓库中已有蓝图相同的区块段不再重复保存
+     * 涉及磁盘IO，应在IO线程调用
+     * @return 清单文件路径，失败时返回 null
+     */
+    public static Path storeSchem(String filename) {
+        Path filePath = resolveSchemPath(filename);
+        if (filePath == null || SectionStore.isManifest(filePath)) {
+            LOGGER.error("Schematic file does not exist: {}", filename);
+            return null;
+        }
+        try {
+            CompoundTag metadata;
+            try (SchemStreamReader reader = SchemStreamReader.open(filePath)) {
+                metadata = reader.getMetadata();
+            }
+            DecodedSchematic schematic = SchematicCache.get(filePath);
+            ListTag entitiesList = new ListTag();
+            entitiesList.addAll(schematic.getEntityTags());
+            return SectionStore.writeManifest(schematic.getWidth(), schematic.getHeight(), schematic.getLength(),
+                SectionCodec.paletteNames(schematic.getPalette()), schematic.getBlocks(), schematic.getBlockEntityTags(),
+                entitiesList, metadata, filePath.getFileName().toString());
+        } catch (IOException e) {
+            LOGGER.error("Failed to store schematic: {}", filename, e);
+            return null;
+        }
+    }
+
+    /**
+     * 检查结构数据是否完整
+     */
+    public static boolean validate(StructureData structureInfo) {
         if (structureInfo == null) {
             LOGGER.error("serialize: structureInfo is null");
-            return null;
+            return false;
         }
         final Level level = structureInfo.getLevel();
         final BlockPos start = structureInfo.getStartPos();
         final BlockPos end = structureInfo.getEndPos();
         if (level == null || start == null || end == null) {
             LOGGER.error("serialize: missing required fields. level={}, startPos={}, endPos={}", level, start, end);
-            return null;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 规范化蓝图文件名，空名使用时间戳，并补全 .schem 后缀
+     */
+    public static String resolveSchemName(String schematicName) {
+        if (schematicName != null) {
+            // 文件名可能来自客户端，去掉路径分隔符等非法字符，防止写出蓝图目录
+            schematicName = schematicName.replaceAll("[\\\\/:*?\"<>|\\p{Cntrl}]", "_").replaceAll("^\\.+", "").trim();
         }
-        final String authorName = structureInfo.getAuthorName();
-        String schematicName = structureInfo.getSchemName();
         if (schematicName == null || schematicName.isBlank()) {
-            schematicName = "schem_" + System.currentTimeMillis() + ".schem";
+            return "schem_" + System.currentTimeMillis() + ".schem";
         } else if (!schematicName.endsWith(".schem")) {
-            schematicName = schematicName + ".schem";
+            return schematicName + ".schem";
         }
-        final int width = structureInfo.getWidth();
-        final int height = structureInfo.getHeight();
-        final int length = structureInfo.getLength();
-        final BlockPos originPos = structureInfo.getOriginPos();
-        
+        return schematicName;
+    }
+
+    /**
+     * 检查文件中声明的尺寸：一层与整体的方块数都不能溢出，也不能超过 maxSchematicVolume
+     * @return 方块总数
+     * @throws IllegalArgumentException 尺寸不合法时
+     */
+    public static int checkVolume(int width, int height, int length) {
+        long layerSize = (long) width * length;
+        long volume = layerSize * height;
+        int maxVolume = PIAYNConfig.SPEC.isLoaded() ? PIAYNConfig.SCHEM_MAX_FILE_VOLUME.get() : DEFAULT_MAX_FILE_VOLUME;
+        if (width < 0 || height < 0 || length < 0 || layerSize > maxVolume || volume > maxVolume) {
+            throw new IllegalArgumentException("Schematic size " + width + "x" + height + "x" + length
+                + " exceeds the limit of " + maxVolume + " blocks");
+        }
+        return (int) volume;
+    }
+
+    /**
+     * 解析蓝图目录中的文件路径，文件名按 {@link #resolveSchemName(String)} 规范化，.pman 清单按原后缀解析
+     * @return 文件不存在时返回 null
+     */
+    public static Path resolveSchemPath(String filename) {
+        if (filename != null && filename.endsWith(SectionStore.MANIFEST_SUFFIX)) {
+            return SectionStore.resolveManifestPath(filename);
+        }
+        Path filePath = DEFAULT_DIR.resolve(resolveSchemName(filename)).normalize();
+        if (!filePath.startsWith(DEFAULT_DIR) || !Files.isRegularFile(filePath)) {
+            return null;
+        }
+        return filePath;
+    }
+
+    /**
+     * 由截取结果构建完整的 Sponge V3 NBT 结构
+     * 不访问世界，可在后台线程调用
+     */
+    public static CompoundTag buildSchematic(RegionCapture capture, ListTag entitiesList, String schematicName, String authorName) {
         // 构建schematic NBT结构
         CompoundTag schematicTag = new CompoundTag();
         
         // 基本信息
         schematicTag.putInt(VERSION_KEY, SCHEMATIC_VERSION);
-        schematicTag.putInt(DATA_VERSION_KEY, 3953); // Minecraft 1.21.1 data version
-        schematicTag.putShort(WIDTH_KEY, (short) width);
-        schematicTag.putShort(HEIGHT_KEY, (short) height);
-        schematicTag.putShort(LENGTH_KEY, (short) length);
+        schematicTag.putInt(DATA_VERSION_KEY, DATA_VERSION);
+        schematicTag.putShort(WIDTH_KEY, (short) capture.getWidth());
+        schematicTag.putShort(HEIGHT_KEY, (short) capture.getHeight());
+        schematicTag.putShort(LENGTH_KEY, (short) capture.getLength());
         schematicTag.put(OFFSET_KEY, new IntArrayTag(new int[]{0, 0, 0}));
         
         // 元数据
@@ -106,22 +240,16 @@ public class SchemSerializer {
             schematicTag.put(METADATA_KEY, metadataTag);
         }
         
-        // 构建方块容器 - 暂时使用 SchemNbt 常量
-        CompoundTag blocksContainer = BlockContainerUtil.buildBlockContainer(level, originPos, width, height, length);
+        // 构建方块容器
+        CompoundTag blocksContainer = BlockContainerUtil.buildBlockContainer(capture);
         schematicTag.put(BLOCKS_KEY, blocksContainer);
         
-        // 构建实体列表
-        ListTag entitiesList = EntityUtil.buildEntitiesList(level, originPos, width, height, length);
-        if (!entitiesList.isEmpty()) {
+        if (entitiesList != null && !entitiesList.isEmpty()) {
             schematicTag.put(ENTITIES_KEY, entitiesList);
         }
         // 按照Sponge规范构建正确的NBT结构
         CompoundTag rootContent = new CompoundTag();
         rootContent.put(SCHEMATIC_KEY, schematicTag);
-
-        // 写入文件
-        SchemSerializer.writeSchem(rootContent, schematicName);
-        
         return rootContent;
     }
 
@@ -145,30 +273,88 @@ public class SchemSerializer {
     }
 
 
-    
     /**
      * 把一个CompoundTag保存成.schem文件
      * 使用GZip压缩的NBT格式，符合Sponge Schematic V3规范
      */
     private static void writeSchem(CompoundTag schemCompoundTag, String filename) {
         try {
-            // 确保默认目录存在
-            if (!Files.exists(DEFAULT_DIR)) {
-                Files.createDirectories(DEFAULT_DIR);
-            }
-            
-            Path filePath = DEFAULT_DIR.resolve(filename);
-            
-            // 使用GZip压缩写入NBT文件
-            NbtIo.writeCompressed(schemCompoundTag, filePath);
-            
-
+            writeSchemBytes(compress(schemCompoundTag), filename);
         } catch (IOException e) {
             LOGGER.error("Failed to write schematic file: {}", filename, e);
         } catch (Exception e) {
             LOGGER.error("Unexpected error while writing schematic: {}", filename, e);
         }
     }
+
+    /**
+     * 把CompoundTag压缩为GZip NBT字节，不涉及文件与世界，可在后台线程调用
+     */
+    public static byte[] compress(CompoundTag schemCompoundTag) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        NbtIo.writeCompressed(schemCompoundTag, outputStream);
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * 原子地写入已压缩的.schem文件：先写临时文件再替换，避免中途失败留下半个文件
+     * 涉及磁盘IO，应在IO线程调用
+     */
+    public static Path writeSchemBytes(byte[] compressed, String filename) throws IOException {
+        return writeAtomically(filename, true, () -> false, outputStream -> outputStream.write(compressed));
+    }
+
+    /**
+     * 流式写入.schem文件，不构建完整的 CompoundTag，内存占用与区域大小基本无关
+     * 不访问世界，应在后台或IO线程调用
+     * @param replaceExisting 为 false 时目标文件已存在则抛出 {@link FileAlreadyExistsException}
+     * @param cancelled 替换文件前检查，为 true 时删除临时文件并抛出 {@link CancellationException}
+     */
+    public static Path writeSchemStreaming(RegionCapture capture, ListTag entitiesList, String filename, String authorName,
+                                           boolean replaceExisting, BooleanSupplier cancelled) throws IOException {
+        return writeAtomically(filename, replaceExisting, cancelled, outputStream -> {
+            try (SchemStreamWriter writer = new SchemStreamWriter(outputStream)) {
+                writer.writeSchematic(capture, entitiesList, filename, authorName);
+            }
+        });
+    }
+
+    @FunctionalInterface
+    private interface SchemWriter {
+        void write(OutputStream outputStream) throws IOException;
+    }
+
+    private static Path writeAtomically(String filename, boolean replaceExisting, BooleanSupplier cancelled,
+                                        SchemWriter schemWriter) throws IOException {
+        // 确保默认目录存在
+        if (!Files.exists(DEFAULT_DIR)) {
+            Files.createDirectories(DEFAULT_DIR);
+        }
+        
+        Path filePath = DEFAULT_DIR.resolve(filename);
+        Path tempPath = Files.createTempFile(DEFAULT_DIR, filename, ".tmp");
+        try {
+            try (OutputStream outputStream = Files.newOutputStream(tempPath)) {
+                schemWriter.write(outputStream);
+            }
+            if (cancelled.getAsBoolean()) {
+                throw new CancellationException("Schematic write cancelled: " + filename);
+            }
+            if (!replaceExisting) {
+                // 不带 REPLACE_EXISTING 的移动在目标已存在时抛出 FileAlreadyExistsException
+                Files.move(tempPath, filePath);
+            } else {
+                try {
+                    Files.move(tempPath, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tempPath, filePath, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+        return filePath;
+    }
     
     /**
      * 把一个.schem文件读取成CompoundTag
@@ -176,11 +362,12 @@ public class SchemSerializer {
      */
     public static CompoundTag readSchem(String filename) {
         try {
-            Path filePath = DEFAULT_DIR.resolve(filename);
+            // 与命令相同地解析，文件名不能指向蓝图目录之外
+            Path filePath = resolveSchemPath(filename);
             
             // 检查文件是否存在
-            if (!Files.exists(filePath)) {
-                LOGGER.error("Schematic file does not exist: {}", filePath);
+            if (filePath == null || SectionStore.isManifest(filePath)) {
+                LOGGER.error("Schematic file does not exist: {}", filename);
                 return null;
             }
             
@@ -0,0 +1,154 @@
+package com.dwinovo.piayn.schem.capture;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nonnull;
+
+import com.dwinovo.piayn.schem.util.EntityUtil;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.entity.EntityTypeTest;
+import net.minecraft.world.phys.AABB;
+import net.neoforged.neoforge.entity.PartEntity;
+
+/**
+ * 按区块列截取区域内的实体
+ * 每次调用 {@link #captureNextChunk()} 只查询一个区块列与区域的交集，未加载的区块直接跳过，
+ * 过滤在保存 NBT 之前完成，查询结果列表跨区块复用
+ * 实体按所在位置归属区块列，跨区块边界的实体只会被截取一次；
+ * 乘客随载具一起保存，多部件实体的子部件不单独保存
+ */
+public class EntityCapture {
+
+    private static final EntityTypeTest<Entity, Entity> ANY_ENTITY = EntityTypeTest.forClass(Entity.class);
+
+    private final Level level;
+    private final BlockPos originPos;
+    private final EntityFilter filter;
+
+    // 区域的世界坐标边界（最大值不包含）
+    private final int minX;
+    private final int minY;
+    private final int minZ;
+    private final int maxX;
+    private final int maxY;
+    private final int maxZ;
+
+    // 区域覆盖的区块范围（包含）
+    private final int minChunkX;
+    private final int maxChunkX;
+    private final int maxChunkZ;
+
+    // 游标：下一个要处理的区块列
+    private int chunkX;
+    private int chunkZ;
+
+    private final int totalChunks;
+    private int capturedChunks;
+
+    private final List<Entity> found = new ArrayList<>();
+    private final ListTag entitiesList = new ListTag();
+
+    public EntityCapture(@Nonnull Level level, @Nonnull BlockPos originPos, int width, int height, int length,
+                         @Nonnull EntityFilter filter) {
+        this.level = level;
+        this.originPos = originPos.immutable();
+        this.filter = filter;
+
+        this.minX = originPos.getX();
+        this.minY = originPos.getY();
+        this.minZ = originPos.getZ();
+        this.maxX = minX + width;
+        this.maxY = minY + height;
+        this.maxZ = minZ + length;
+
+        this.minChunkX = SectionPos.blockToSectionCoord(minX);
+        int minChunkZ = SectionPos.blockToSectionCoord(minZ);
+        this.maxChunkX = SectionPos.blockToSectionCoord(maxX - 1);
+        this.maxChunkZ = SectionPos.blockToSectionCoord(maxZ - 1);
+        this.totalChunks = (maxChunkX - minChunkX + 1) * (maxChunkZ - minChunkZ + 1);
+
+        this.chunkX = minChunkX;
+        this.chunkZ = minChunkZ;
+    }
+
+    /**
+     * 一次性截取整个区域
+     */
+    public void captureAll() {
+        while (!isDone()) {
+            captureNextChunk();
+        }
+    }
+
+    /**
+     * 截取下一个区块列内的实体
+     * @return 是否还有剩余的区块列
+     */
+    public boolean captureNextChunk() {
+        if (isDone()) {
+            return false;
+        }
+
+        if (level.hasChunk(chunkX, chunkZ)) {
+            captureChunk();
+        }
+        capturedChunks++;
+
+        // 游标顺序：区块 X -> 区块 Z
+        if (++chunkX > maxChunkX) {
+            chunkX = minChunkX;
+            chunkZ++;
+        }
+        return !isDone();
+    }
+
+    private void captureChunk() {
+        // 区块列与区域的交集
+        final int x0 = Math.max(minX, SectionPos.sectionToBlockCoord(chunkX));
+        final int x1 = Math.min(maxX, SectionPos.sectionToBlockCoord(chunkX + 1));
+        final int z0 = Math.max(minZ, SectionPos.sectionToBlockCoord(chunkZ));
+        final int z1 = Math.min(maxZ, SectionPos.sectionToBlockCoord(chunkZ + 1));
+
+        found.clear();
+        level.getEntities(ANY_ENTITY, new AABB(x0, minY, z0, x1, maxY, z1), entity ->
+            entity.getX() >= x0 && entity.getX() < x1
+                && entity.getY() >= minY && entity.getY() < maxY
+                && entity.getZ() >= z0 && entity.getZ() < z1
+                && !entity.isPassenger()
+                && !(entity instanceof PartEntity<?>)
+                && filter.test(entity), found);
+
+        for (Entity entity : found) {
+            CompoundTag entityTag = EntityUtil.createEntityTag(entity, originPos);
+            if (entityTag != null) {
+                entitiesList.add(entityTag);
+            }
+        }
+        found.clear();
+    }
+
+    public boolean isDone() {
+        return chunkZ > maxChunkZ;
+    }
+
+    /**
+     * 截取进度，范围 [0, 1]
+     */
+    public float getProgress() {
+        return totalChunks == 0 ? 1.0f : (float) capturedChunks / totalChunks;
+    }
+
+    /**
+     * 已截取的实体，Pos 为相对区域原点的坐标
+     */
+    @Nonnull
+    public ListTag getEntitiesList() {
+        return entitiesList;
+    }
+}
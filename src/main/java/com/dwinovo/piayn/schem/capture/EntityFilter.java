@@ -0,0 +1,114 @@
+package com.dwinovo.piayn.schem.capture;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+
+import com.dwinovo.piayn.config.PIAYNConfig;
+import com.mojang.logging.LogUtils;
+
+import it.unimi.dsi.fastutil.objects.Reference2BooleanMap;
+import it.unimi.dsi.fastutil.objects.Reference2BooleanOpenHashMap;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.tags.TagKey;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.entity.EntityType;
+
+/**
+ * 截取实体时的类型过滤器
+ * 规则写法为实体 ID（minecraft:item_frame）或实体类型标签（#minecraft:arrows）
+ * 包含列表为空时接受所有类型，排除列表优先；无法保存的类型（如玩家）总是跳过
+ * 判断结果按实体类型缓存，同一次截取内每种类型只匹配一次
+ * 只应在主线程使用
+ */
+public class EntityFilter {
+
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    private static final String TAG_PREFIX = "#";
+
+    /** 默认排除掉落物、经验球与弹射物 */
+    public static final List<String> DEFAULT_EXCLUDE = List.of(
+        "minecraft:item", "minecraft:experience_orb", "#minecraft:arrows", "#minecraft:impact_projectiles");
+
+    private final List<EntityType<?>> includeTypes = new ArrayList<>();
+    private final List<TagKey<EntityType<?>>> includeTags = new ArrayList<>();
+    private final List<EntityType<?>> excludeTypes = new ArrayList<>();
+    private final List<TagKey<EntityType<?>>> excludeTags = new ArrayList<>();
+    private final Reference2BooleanMap<EntityType<?>> decisions = new Reference2BooleanOpenHashMap<>();
+
+    /**
+     * @param include 包含规则，为空时接受所有类型
+     * @param exclude 排除规则
+     */
+    public EntityFilter(@Nonnull List<? extends String> include, @Nonnull List<? extends String> exclude) {
+        parseRules(include, includeTypes, includeTags);
+        parseRules(exclude, excludeTypes, excludeTags);
+    }
+
+    /**
+     * 按配置构建过滤器，配置未加载时使用默认排除规则
+     */
+    @Nonnull
+    public static EntityFilter fromConfig() {
+        if (!PIAYNConfig.SPEC.isLoaded()) {
+            return new EntityFilter(List.of(), DEFAULT_EXCLUDE);
+        }
+        return new EntityFilter(PIAYNConfig.SCHEM_ENTITY_INCLUDE.get(), PIAYNConfig.SCHEM_ENTITY_EXCLUDE.get());
+    }
+
+    /**
+     * 是否截取该实体，在保存 NBT 之前调用
+     */
+    public boolean test(@Nonnull Entity entity) {
+        EntityType<?> type = entity.getType();
+        if (decisions.containsKey(type)) {
+            return decisions.getBoolean(type);
+        }
+        boolean accepted = type.canSerialize()
+            && (includeTypes.isEmpty() && includeTags.isEmpty() || matches(type, includeTypes, includeTags))
+            && !matches(type, excludeTypes, excludeTags);
+        decisions.put(type, accepted);
+        return accepted;
+    }
+
+    private static boolean matches(@Nonnull EntityType<?> type, @Nonnull List<EntityType<?>> types,
+                                   @Nonnull List<TagKey<EntityType<?>>> tags) {
+        if (types.contains(type)) {
+            return true;
+        }
+        for (TagKey<EntityType<?>> tag : tags) {
+            if (type.is(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void parseRules(@Nonnull List<? extends String> rules, @Nonnull List<EntityType<?>> types,
+                                   @Nonnull List<TagKey<EntityType<?>>> tags) {
+        for (String rule : rules) {
+            boolean isTag = rule.startsWith(TAG_PREFIX);
+            ResourceLocation id = ResourceLocation.tryParse(isTag ? rule.substring(TAG_PREFIX.length()) : rule);
+            if (id == null) {
+                LOGGER.warn("Invalid entity filter rule: {}", rule);
+                continue;
+            }
+            if (isTag) {
+                tags.add(TagKey.create(Registries.ENTITY_TYPE, id));
+                continue;
+            }
+            Optional<EntityType<?>> type = BuiltInRegistries.ENTITY_TYPE.getOptional(id);
+            if (type.isPresent()) {
+                types.add(type.get());
+            } else {
+                LOGGER.warn("Unknown entity type in filter rule: {}", rule);
+            }
+        }
+    }
+}
@@ -0,0 +1,614 @@
+package com.dwinovo.piayn.schem.capture;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.dwinovo.piayn.schem.util.BlockEntityUtil;
+import com.dwinovo.piayn.schem.util.PaletteUtil;
+import com.dwinovo.piayn.schem.util.VarIntUtil;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.util.BitStorage;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.chunk.Palette;
+import net.minecraft.world.level.chunk.PalettedContainer;
+
+/**
+ * 以区块段（16x16x16）为单位截取区域方块
+ * 直接读取区块段的 PalettedContainer，把段内调色板一次性映射为蓝图调色板索引，
+ * 方块实体从区块的方块实体表中取出，而不是逐格探测
+ * 每次调用 {@link #captureNextSection()} 只处理一个区块段，便于分帧执行
+ * 快照模式下主线程只复制区块段的 PalettedContainer，调色板合并与索引翻译
+ * 在首次读取结果时于 ForkJoin 线程池中并行完成，varint 编码在写出时分块并行进行
+ * {@link #writeEncoded} 按固定大小分块编码写出，不构建完整的 Data 字节数组
+ * 区块段通过 {@link ColumnSource} 取得，默认读取世界中的区块，也可以直接提供不属于任何世界的区块段
+ */
+public class RegionCapture {
+
+    // 每块编码的索引数，分块写出时同一时间最多保留一批块的编码结果
+    private static final int ENCODE_CHUNK = 65536;
+
+    /**
+     * 接收 varint 编码结果的一段字节
+     */
+    @FunctionalInterface
+    public interface EncodedSink {
+        void write(@Nonnull byte[] bytes, int offset, int length) throws IOException;
+    }
+
+    /**
+     * 区块列来源
+     */
+    @FunctionalInterface
+    public interface ColumnSource {
+        /**
+         * 进入新的区块列时调用一次
+         * @return 按区块段 Y 取状态容器的函数，超出建筑高度时返回 null
+         */
+        @Nonnull
+        IntFunction<PalettedContainer<BlockState>> openColumn(int chunkX, int chunkZ);
+    }
+
+    // 为 null 时区块段由 source 提供，不收集方块实体
+    @Nullable
+    private final Level level;
+    private final ColumnSource source;
+    private final BlockPos originPos;
+    private final int width;
+    private final int height;
+    private final int length;
+
+    // 区域的世界坐标边界（包含）
+    private final int minX;
+    private final int minY;
+    private final int minZ;
+    private final int maxX;
+    private final int maxY;
+    private final int maxZ;
+
+    // 区域覆盖的区块/区块段范围（包含）
+    private final int minChunkX;
+    private final int minChunkZ;
+    private final int maxChunkX;
+    private final int maxChunkZ;
+    private final int minSectionY;
+    private final int maxSectionY;
+
+    private final PaletteUtil.PaletteMap paletteMap = new PaletteUtil.PaletteMap();
+    private final int[] blockData;
+    private final List<CompoundTag> blockEntityTags = new ArrayList<>();
+
+    // 游标：下一个要处理的区块段
+    private int chunkX;
+    private int chunkZ;
+    private int sectionY;
+    @Nullable
+    private IntFunction<PalettedContainer<BlockState>> currentColumn;
+
+    private final int totalSections;
+    private int capturedSections;
+
+    // 段内调色板索引 -> 蓝图调色板索引，跨段复用
+    private int[] localToSchem = new int[16];
+
+    // 快照模式：按游标顺序保存的区块段快照，解析后释放
+    private final boolean snapshotMode;
+    @Nullable
+    private List<SectionSnapshot> snapshots;
+    @Nullable
+    private byte[] encodedData;
+
+    public RegionCapture(@Nonnull Level level, @Nonnull BlockPos originPos, int width, int height, int length) {
+        this(level, originPos, width, height, length, false);
+    }
+
+    /**
+     * @param snapshotMode 为 true 时主线程只做区块段快照，其余工作延后到并行阶段
+     */
+    public RegionCapture(@Nonnull Level level, @Nonnull BlockPos originPos, int width, int height, int length, boolean snapshotMode) {
+        this(level, null, originPos, width, height, length, snapshotMode);
+    }
+
+    /**
+     * 从给定的区块段截取，不访问世界，也不收集方块实体
+     */
+    public RegionCapture(@Nonnull ColumnSource source, @Nonnull BlockPos originPos, int width, int height, int length, boolean snapshotMode) {
+        this(null, source, originPos, width, height, length, snapshotMode);
+    }
+
+    private RegionCapture(@Nullable Level level, @Nullable ColumnSource source, @Nonnull BlockPos originPos,
+                          int width, int height, int length, boolean snapshotMode) {
+        if (width <= 0 || height <= 0 || length <= 0) {
+            throw new IllegalArgumentException("Invalid region size: " + width + "x" + height + "x" + length);
+        }
+        long volume = (long) width * height * length;
+        if (volume > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Region too large: " + volume + " blocks");
+        }
+        this.level = level;
+        this.source = source != null ? source : this::openLevelColumn;
+        this.originPos = originPos.immutable();
+        this.width = width;
+        this.height = height;
+        this.length = length;
+
+        this.minX = originPos.getX();
+        this.minY = originPos.getY();
+        this.minZ = originPos.getZ();
+        this.maxX = minX + width - 1;
+        this.maxY = minY + height - 1;
+        this.maxZ = minZ + length - 1;
+
+        this.minChunkX = SectionPos.blockToSectionCoord(minX);
+        this.minChunkZ = SectionPos.blockToSectionCoord(minZ);
+        this.maxChunkX = SectionPos.blockToSectionCoord(maxX);
+        this.maxChunkZ = SectionPos.blockToSectionCoord(maxZ);
+        this.minSectionY = SectionPos.blockToSectionCoord(minY);
+        this.maxSectionY = SectionPos.blockToSectionCoord(maxY);
+
+        this.blockData = new int[(int) volume];
+        this.totalSections = (maxChunkX - minChunkX + 1) * (maxChunkZ - minChunkZ + 1) * (maxSectionY - minSectionY + 1);
+
+        this.chunkX = minChunkX;
+        this.chunkZ = minChunkZ;
+        this.sectionY = minSectionY;
+
+        this.snapshotMode = snapshotMode;
+        this.snapshots = snapshotMode ? new ArrayList<>(totalSections) : null;
+    }
+
+    /**
+     * 一次性截取整个区域
+     */
+    public void captureAll() {
+        while (!isDone()) {
+            captureNextSection();
+        }
+    }
+
+    /**
+     * 截取下一个区块段
+     * @return 是否还有剩余的区块段
+     */
+    public boolean captureNextSection() {
+        if (isDone()) {
+            return false;
+        }
+
+        // 进入新的区块列时打开一次，世界中的区块在此收集方块实体
+        if (currentColumn == null) {
+            currentColumn = source.openColumn(chunkX, chunkZ);
+        }
+
+        captureSection(currentColumn.apply(sectionY), sectionY);
+        capturedSections++;
+
+        // 游标顺序：段 Y -> 区块 X -> 区块 Z
+        if (++sectionY > maxSectionY) {
+            sectionY = minSectionY;
+            currentColumn = null;
+            if (++chunkX > maxChunkX) {
+                chunkX = minChunkX;
+                chunkZ++;
+            }
+        }
+        return !isDone();
+    }
+
+    /**
+     * 取世界中的区块并收集方块实体
+     */
+    @Nonnull
+    private IntFunction<PalettedContainer<BlockState>> openLevelColumn(int chunkX, int chunkZ) {
+        LevelChunk chunk = level.getChunk(chunkX, chunkZ);
+        collectBlockEntities(chunk);
+        LevelChunkSection[] sections = chunk.getSections();
+        return sectionY -> {
+            int sectionIndex = chunk.getSectionIndexFromSectionY(sectionY);
+            return sectionIndex >= 0 && sectionIndex < sections.length ? sections[sectionIndex].getStates() : null;
+        };
+    }
+
+    /**
+     * @param states 区块段的状态容器，为 null 时视为超出建筑高度
+     */
+    private void captureSection(@Nullable PalettedContainer<BlockState> states, int sectionY) {
+        // 区块段与区域的交集
+        final int x0 = Math.max(minX, SectionPos.sectionToBlockCoord(chunkX));
+        final int x1 = Math.min(maxX, SectionPos.sectionToBlockCoord(chunkX, 15));
+        final int y0 = Math.max(minY, SectionPos.sectionToBlockCoord(sectionY));
+        final int y1 = Math.min(maxY, SectionPos.sectionToBlockCoord(sectionY, 15));
+        final int z0 = Math.max(minZ, SectionPos.sectionToBlockCoord(chunkZ));
+        final int z1 = Math.min(maxZ, SectionPos.sectionToBlockCoord(chunkZ, 15));
+
+        if (states == null) {
+            // 超出建筑高度，与 Level#getBlockState 的行为保持一致
+            if (snapshots != null) {
+                snapshots.add(new SectionSnapshot(x0, x1, y0, y1, z0, z1, null, Blocks.VOID_AIR.defaultBlockState()));
+            } else {
+                fill(x0, x1, y0, y1, z0, z1, paletteMap.getId(Blocks.VOID_AIR.defaultBlockState()));
+            }
+            return;
+        }
+
+        if (snapshots != null) {
+            Palette<BlockState> palette = states.data.palette();
+            if (palette.getSize() == 1) {
+                snapshots.add(new SectionSnapshot(x0, x1, y0, y1, z0, z1, null, palette.valueFor(0)));
+            } else {
+                // 复制只涉及调色板与 long[]，代价很低
+                snapshots.add(new SectionSnapshot(x0, x1, y0, y1, z0, z1, states.copy(), null));
+            }
+            return;
+        }
+
+        PalettedContainer.Data<BlockState> data = states.data;
+        Palette<BlockState> palette = data.palette();
+        BitStorage storage = data.storage();
+
+        // 单值段（包括全空气段）直接整块填充
+        if (palette.getSize() == 1) {
+            fill(x0, x1, y0, y1, z0, z1, paletteMap.getId(palette.valueFor(0)));
+            return;
+        }
+
+        int paletteSize = palette.getSize();
+        if (localToSchem.length < paletteSize) {
+            localToSchem = new int[paletteSize];
+        }
+        Arrays.fill(localToSchem, 0, paletteSize, -1);
+
+        for (int y = y0; y <= y1; y++) {
+            final int rowY = (y - minY) * length;
+            final int storageY = (y & 15) << 8;
+            for (int z = z0; z <= z1; z++) {
+                final int rowBase = (rowY + (z - minZ)) * width - minX;
+                final int storageBase = storageY | ((z & 15) << 4);
+                for (int x = x0; x <= x1; x++) {
+                    int localId = storage.get(storageBase | (x & 15));
+                    int schemId = localToSchem[localId];
+                    if (schemId < 0) {
+                        schemId = paletteMap.getId(palette.valueFor(localId));
+                        localToSchem[localId] = schemId;
+                    }
+                    blockData[rowBase + x] = schemId;
+                }
+            }
+        }
+    }
+
+    /**
+     * 解析快照：并行读取段内索引，按游标顺序合并调色板，再并行翻译索引
+     * 合并顺序与逐段截取一致，因此结果与非快照模式完全相同
+     * 不访问世界，可在后台线程调用
+     */
+    private synchronized void resolveSnapshots() {
+        List<SectionSnapshot> pending = snapshots;
+        if (pending == null) {
+            return;
+        }
+        if (!isDone()) {
+            throw new IllegalStateException("Region capture is not finished");
+        }
+        final SectionSnapshot[] sectionArray = pending.toArray(new SectionSnapshot[0]);
+
+        // 1. 并行：把段内索引写入 blockData，并记录段内首次出现顺序
+        parallelFor(sectionArray.length, i -> sectionArray[i].readLocalIds());
+
+        // 2. 串行：按游标顺序合并进蓝图调色板
+        for (SectionSnapshot snapshot : sectionArray) {
+            snapshot.mergePalette();
+        }
+
+        // 3. 并行：各段互不重叠，原地翻译为蓝图调色板索引
+        parallelFor(sectionArray.length, i -> sectionArray[i].translate());
+
+        snapshots = null;
+    }
+
+    private static void parallelFor(int count, @Nonnull IntConsumer body) {
+        RangeAction action = new RangeAction(0, count, body);
+        if (ForkJoinTask.inForkJoinPool()) {
+            // 已在 ForkJoin 线程中（例如后台工作线程），直接在当前池中分治
+            action.invoke();
+        } else {
+            ForkJoinPool.commonPool().invoke(action);
+        }
+    }
+
+    /**
+     * 二分拆分区间的 ForkJoin 任务
+     */
+    private static final class RangeAction extends RecursiveAction {
+        private static final int THRESHOLD = 4;
+
+        private final int from;
+        private final int to;
+        private final IntConsumer body;
+
+        RangeAction(int from, int to, IntConsumer body) {
+            this.from = from;
+            this.to = to;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    body.accept(i);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new RangeAction(from, mid, body), new RangeAction(mid, to, body));
+        }
+    }
+
+    /**
+     * 区块段快照及其与区域的交集
+     */
+    private final class SectionSnapshot {
+        private final int x0, x1, y0, y1, z0, z1;
+        // 为 null 时整段为 singleState
+        @Nullable
+        private final PalettedContainer<BlockState> states;
+        @Nullable
+        private final BlockState singleState;
+
+        // 段内索引按首次出现顺序排列
+        private int[] firstSeen;
+        private int firstSeenCount;
+        private int[] localToSchem;
+        private int singleId;
+
+        SectionSnapshot(int x0, int x1, int y0, int y1, int z0, int z1,
+                        @Nullable PalettedContainer<BlockState> states, @Nullable BlockState singleState) {
+            this.x0 = x0;
+            this.x1 = x1;
+            this.y0 = y0;
+            this.y1 = y1;
+            this.z0 = z0;
+            this.z1 = z1;
+            this.states = states;
+            this.singleState = singleState;
+        }
+
+        void readLocalIds() {
+            if (states == null) {
+                return;
+            }
+            BitStorage storage = states.data.storage();
+            int paletteSize = states.data.palette().getSize();
+            boolean[] seen = new boolean[paletteSize];
+            firstSeen = new int[paletteSize];
+            for (int y = y0; y <= y1; y++) {
+                final int rowY = (y - minY) * length;
+                final int storageY = (y & 15) << 8;
+                for (int z = z0; z <= z1; z++) {
+                    final int rowBase = (rowY + (z - minZ)) * width - minX;
+                    final int storageBase = storageY | ((z & 15) << 4);
+                    for (int x = x0; x <= x1; x++) {
+                        int localId = storage.get(storageBase | (x & 15));
+                        blockData[rowBase + x] = localId;
+                        if (!seen[localId]) {
+                            seen[localId] = true;
+                            firstSeen[firstSeenCount++] = localId;
+                        }
+                    }
+                }
+            }
+        }
+
+        void mergePalette() {
+            if (states == null) {
+                singleId = paletteMap.getId(singleState);
+                return;
+            }
+            Palette<BlockState> palette = states.data.palette();
+            localToSchem = new int[palette.getSize()];
+            for (int i = 0; i < firstSeenCount; i++) {
+                int localId = firstSeen[i];
+                localToSchem[localId] = paletteMap.getId(palette.valueFor(localId));
+            }
+        }
+
+        void translate() {
+            if (states == null) {
+                fill(x0, x1, y0, y1, z0, z1, singleId);
+                return;
+            }
+            final int[] mapping = localToSchem;
+            for (int y = y0; y <= y1; y++) {
+                final int rowY = (y - minY) * length;
+                for (int z = z0; z <= z1; z++) {
+                    final int rowBase = (rowY + (z - minZ)) * width - minX;
+                    for (int i = rowBase + x0, end = rowBase + x1; i <= end; i++) {
+                        blockData[i] = mapping[blockData[i]];
+                    }
+                }
+            }
+        }
+    }
+
+    private void fill(int x0, int x1, int y0, int y1, int z0, int z1, int schemId) {
+        for (int y = y0; y <= y1; y++) {
+            final int rowY = (y - minY) * length;
+            for (int z = z0; z <= z1; z++) {
+                final int rowBase = (rowY + (z - minZ)) * width - minX;
+                Arrays.fill(blockData, rowBase + x0, rowBase + x1 + 1, schemId);
+            }
+        }
+    }
+
+    private void collectBlockEntities(@Nonnull LevelChunk chunk) {
+        for (Map.Entry<BlockPos, BlockEntity> entry : chunk.getBlockEntities().entrySet()) {
+            BlockPos pos = entry.getKey();
+            if (pos.getX() < minX || pos.getX() > maxX
+                || pos.getY() < minY || pos.getY() > maxY
+                || pos.getZ() < minZ || pos.getZ() > maxZ) {
+                continue;
+            }
+            CompoundTag blockEntityTag = BlockEntityUtil.createBlockEntityTag(level, entry.getValue(),
+                pos.getX() - minX, pos.getY() - minY, pos.getZ() - minZ);
+            if (blockEntityTag != null) {
+                blockEntityTags.add(blockEntityTag);
+            }
+        }
+    }
+
+    public boolean isDone() {
+        return chunkZ > maxChunkZ;
+    }
+
+    /**
+     * 截取进度，范围 [0, 1]
+     */
+    public float getProgress() {
+        return totalSections == 0 ? 1.0f : (float) capturedSections / totalSections;
+    }
+
+    public int getTotalSections() {
+        return totalSections;
+    }
+
+    public int getCapturedSections() {
+        return capturedSections;
+    }
+
+    public boolean isSnapshotMode() {
+        return snapshotMode;
+    }
+
+    /**
+     * 快照模式下首次调用会触发并行解析，应在后台线程调用
+     */
+    @Nonnull
+    public PaletteUtil.PaletteMap getPaletteMap() {
+        resolveSnapshots();
+        return paletteMap;
+    }
+
+    /**
+     * 按 x + z * width + y * width * length 排列的调色板索引
+     */
+    @Nonnull
+    public int[] getBlockData() {
+        resolveSnapshots();
+        return blockData;
+    }
+
+    /**
+     * varint 编码后的 Data 字节，结果会被缓存
+     * 会构建完整的字节数组，写出文件时应使用 {@link #writeEncoded}
+     */
+    @Nonnull
+    public synchronized byte[] getEncodedData() {
+        resolveSnapshots();
+        if (encodedData == null) {
+            long size = getEncodedSize();
+            if (size > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("Block data too large: " + size + " bytes");
+            }
+            VarIntUtil.VarIntBuffer buffer = new VarIntUtil.VarIntBuffer((int) size);
+            try {
+                writeEncoded(buffer::write);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            encodedData = buffer.toByteArray();
+        }
+        return encodedData;
+    }
+
+    /**
+     * varint 编码后 Data 的字节数，写出数组长度前缀时使用
+     */
+    public synchronized long getEncodedSize() {
+        if (encodedData != null) {
+            return encodedData.length;
+        }
+        final int[] data = getBlockData();
+        long size = 0;
+        for (int value : data) {
+            size += VarIntUtil.varintSize(value);
+        }
+        return size;
+    }
+
+    /**
+     * 按数据顺序分块编码并交给 sink，不构建完整的字节数组
+     * 快照模式下每批块在 ForkJoin 池中并行编码，同一时间只保留一批块的结果；否则在当前线程逐块编码
+     * 不访问世界，可在后台线程调用
+     */
+    public synchronized void writeEncoded(@Nonnull EncodedSink sink) throws IOException {
+        if (encodedData != null) {
+            sink.write(encodedData, 0, encodedData.length);
+            return;
+        }
+        final int[] data = getBlockData();
+        final int chunks = (data.length + ENCODE_CHUNK - 1) / ENCODE_CHUNK;
+        final int batch = snapshotMode ? Math.min(chunks, Math.max(1, ForkJoinPool.getCommonPoolParallelism() * 2)) : 1;
+        final VarIntUtil.VarIntBuffer[] buffers = new VarIntUtil.VarIntBuffer[Math.max(1, batch)];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = new VarIntUtil.VarIntBuffer(ENCODE_CHUNK + (ENCODE_CHUNK >> 3));
+        }
+        for (int first = 0; first < chunks; first += buffers.length) {
+            final int start = first;
+            final int count = Math.min(buffers.length, chunks - first);
+            IntConsumer encode = i -> {
+                int offset = (start + i) * ENCODE_CHUNK;
+                buffers[i].reset();
+                buffers[i].writeVarints(data, offset, Math.min(ENCODE_CHUNK, data.length - offset));
+            };
+            if (count == 1) {
+                encode.accept(0);
+            } else {
+                parallelFor(count, encode);
+            }
+            for (int i = 0; i < count; i++) {
+                sink.write(buffers[i].array(), 0, buffers[i].size());
+            }
+        }
+    }
+
+    @Nonnull
+    public List<CompoundTag> getBlockEntityTags() {
+        return blockEntityTags;
+    }
+
+    @Nonnull
+    public BlockPos getOriginPos() {
+        return originPos;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getLength() {
+        return length;
+    }
+}
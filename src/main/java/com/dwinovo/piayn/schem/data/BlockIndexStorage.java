@@ -0,0 +1,45 @@
+package com.dwinovo.piayn.schem.data;
+
+/**
+ * 按数据下标（x + z * width + y * width * length）随机访问调色板索引
+ * 实现可以是堆内数组，也可以直接读取映射文件，不要求拷贝
+ */
+public interface BlockIndexStorage {
+
+    /**
+     * 位置总数
+     */
+    int size();
+
+    /**
+     * 某个下标的调色板索引，缺失时为负数
+     */
+    int get(int index);
+
+    /**
+     * 占用的堆内存（字节），映射文件等堆外存储只计算对象本身
+     */
+    long heapBytes();
+
+    /**
+     * 直接包装 int[] 的实现
+     */
+    static BlockIndexStorage ofArray(int[] data) {
+        return new BlockIndexStorage() {
+            @Override
+            public int size() {
+                return data.length;
+            }
+
+            @Override
+            public int get(int index) {
+                return data[index];
+            }
+
+            @Override
+            public long heapBytes() {
+                return 16L + (long) data.length * Integer.BYTES;
+            }
+        };
+    }
+}
@@ -0,0 +1,266 @@
+package com.dwinovo.piayn.schem.data;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.dwinovo.piayn.schem.SchemSerializer;
+import com.dwinovo.piayn.schem.io.SchemStreamReader;
+import com.dwinovo.piayn.schem.util.PaletteUtil;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.world.level.block.state.BlockState;
+
+/**
+ * 解码后的蓝图
+ * 调色板为稠密的 BlockState[]，每个条目的属性（空气、方块实体、需要后处理）只计算一次；
+ * 另外预先计算需要放置的位置集合，粘贴时用 {@link BitSet#nextSetBit(int)} 整段跳过空气
+ * 方块索引默认以 {@link PackedBlockStorage} 按位压缩保存
+ */
+public class DecodedSchematic {
+
+    /** 空气（包括虚空空气、洞穴空气） */
+    public static final byte FLAG_AIR = 1;
+    /** 放置后需要方块实体 */
+    public static final byte FLAG_BLOCK_ENTITY = 1 << 1;
+    /** 放置后需要后处理，目前指含流体的状态需要安排流体刻 */
+    public static final byte FLAG_POST_PROCESS = 1 << 2;
+    /** 调色板条目无法解析或索引越界 */
+    public static final byte FLAG_INVALID = 1 << 3;
+
+    // 流式解码时每批读取的数量
+    private static final int READ_BUFFER = 65536;
+
+    private final int width;
+    private final int height;
+    private final int length;
+    private final BlockState[] palette;
+    private final byte[] paletteFlags;
+    private final BlockIndexStorage blocks;
+    private final List<CompoundTag> blockEntityTags;
+    private final List<CompoundTag> entityTags;
+
+    // 需要放置的位置（非空气且有效），按数据下标
+    private final BitSet solidMask;
+    // 包括空气在内的有效位置，粘贴空气时使用，按需计算
+    @Nullable
+    private BitSet validMask;
+
+    /**
+     * @param blockData 按 x + z * width + y * width * length 排列的调色板索引，负数视为缺失，会被压缩保存
+     */
+    public DecodedSchematic(int width, int height, int length,
+                            @Nonnull BlockState[] palette, @Nonnull int[] blockData,
+                            @Nonnull List<CompoundTag> blockEntityTags, @Nonnull List<CompoundTag> entityTags) {
+        this(width, height, length, palette, PackedBlockStorage.pack(blockData, palette.length), blockEntityTags, entityTags);
+    }
+
+    public DecodedSchematic(int width, int height, int length,
+                            @Nonnull BlockState[] palette, @Nonnull BlockIndexStorage blocks,
+                            @Nonnull List<CompoundTag> blockEntityTags, @Nonnull List<CompoundTag> entityTags) {
+        this.width = width;
+        this.height = height;
+        this.length = length;
+        this.palette = palette;
+        this.paletteFlags = computeFlags(palette);
+        this.blocks = blocks;
+        this.blockEntityTags = blockEntityTags;
+        this.entityTags = entityTags;
+        this.solidMask = buildMask(false);
+    }
+
+    /**
+     * 从读取器解码全部方块与方块实体，可选读取实体
+     */
+    @Nonnull
+    public static DecodedSchematic read(@Nonnull SchemStreamReader reader, boolean readEntities) throws IOException {
+        int width = reader.getWidth();
+        int height = reader.getHeight();
+        int length = reader.getLength();
+        BlockState[] palette = reader.getPalette();
+        // 分批解码直接写入压缩存储，数据不足的部分保持缺失
+        PackedBlockStorage blocks = new PackedBlockStorage(width * height * length, palette.length);
+        int[] buffer = new int[Math.min(READ_BUFFER, blocks.size())];
+        int decoded = 0;
+        int count;
+        while (decoded < blocks.size() && (count = reader.readBlocks(buffer, 0, Math.min(buffer.length, blocks.size() - decoded))) > 0) {
+            blocks.set(decoded, buffer, 0, count);
+            decoded += count;
+        }
+
+        List<CompoundTag> blockEntityTags = new ArrayList<>();
+        CompoundTag tag;
+        while ((tag = reader.nextBlockEntity()) != null) {
+            blockEntityTags.add(tag);
+        }
+        List<CompoundTag> entityTags = new ArrayList<>();
+        if (readEntities) {
+            while ((tag = reader.nextEntity()) != null) {
+                entityTags.add(tag);
+            }
+        }
+        return new DecodedSchematic(width, height, length, palette, blocks, blockEntityTags, entityTags);
+    }
+
+    /**
+     * 从内存中的 Schematic 标签解码
+     * @throws IllegalArgumentException 尺寸超出上限或调色板索引越界时
+     */
+    @Nonnull
+    public static DecodedSchematic fromTag(@Nonnull CompoundTag schematicTag) {
+        int width = schematicTag.getShort(SchemSerializer.WIDTH_KEY) & 0xFFFF;
+        int height = schematicTag.getShort(SchemSerializer.HEIGHT_KEY) & 0xFFFF;
+        int length = schematicTag.getShort(SchemSerializer.LENGTH_KEY) & 0xFFFF;
+        int volume = SchemSerializer.checkVolume(width, height, length);
+        CompoundTag blocksContainer = schematicTag.getCompound(SchemSerializer.BLOCKS_KEY);
+        BlockState[] palette = PaletteUtil.parsePaletteArray(blocksContainer.getCompound(SchemSerializer.PALETTE_KEY));
+
+        PackedBlockStorage blocks = PackedBlockStorage.fromVarints(
+            blocksContainer.getByteArray(SchemSerializer.DATA_KEY), volume, palette.length);
+        return new DecodedSchematic(width, height, length, palette, blocks,
+            toCompoundList(blocksContainer.getList(SchemSerializer.BLOCK_ENTITIES_KEY, Tag.TAG_COMPOUND)),
+            toCompoundList(schematicTag.getList(SchemSerializer.ENTITIES_KEY, Tag.TAG_COMPOUND)));
+    }
+
+    private static List<CompoundTag> toCompoundList(@Nonnull ListTag listTag) {
+        List<CompoundTag> tags = new ArrayList<>(listTag.size());
+        for (int i = 0; i < listTag.size(); i++) {
+            tags.add(listTag.getCompound(i));
+        }
+        return tags;
+    }
+
+    /**
+     * 为调色板的每个条目计算一次属性
+     */
+    @Nonnull
+    public static byte[] computeFlags(@Nonnull BlockState[] palette) {
+        byte[] flags = new byte[palette.length];
+        for (int i = 0; i < palette.length; i++) {
+            BlockState blockState = palette[i];
+            if (blockState == null) {
+                flags[i] = FLAG_INVALID;
+                continue;
+            }
+            byte flag = 0;
+            if (blockState.isAir()) {
+                flag |= FLAG_AIR;
+            }
+            if (blockState.hasBlockEntity()) {
+                flag |= FLAG_BLOCK_ENTITY;
+            }
+            if (!blockState.getFluidState().isEmpty()) {
+                flag |= FLAG_POST_PROCESS;
+            }
+            flags[i] = flag;
+        }
+        return flags;
+    }
+
+    private BitSet buildMask(boolean includeAir) {
+        // 先按调色板算出每个索引是否需要放置，循环中只查一次 boolean[]
+        boolean[] place = new boolean[palette.length];
+        byte skipFlags = includeAir ? FLAG_INVALID : (byte) (FLAG_INVALID | FLAG_AIR);
+        for (int i = 0; i < palette.length; i++) {
+            place[i] = (paletteFlags[i] & skipFlags) == 0;
+        }
+        int size = blocks.size();
+        BitSet mask = new BitSet(size);
+        for (int i = 0; i < size; i++) {
+            int paletteIndex = blocks.get(i);
+            if (paletteIndex >= 0 && paletteIndex < place.length && place[paletteIndex]) {
+                mask.set(i);
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * 需要放置的位置集合
+     * @param includeAir 是否包括空气
+     */
+    @Nonnull
+    public synchronized BitSet getPlaceMask(boolean includeAir) {
+        if (!includeAir) {
+            return solidMask;
+        }
+        if (validMask == null) {
+            validMask = buildMask(true);
+        }
+        return validMask;
+    }
+
+    /**
+     * 估算占用的堆内存（字节），用于缓存按内存计重
+     */
+    public long estimateMemory() {
+        long bytes = 64L + blocks.heapBytes() + palette.length * 9L;
+        // 两个位置位集，每个位置各一比特
+        bytes += blocks.size() / 4;
+        for (CompoundTag tag : blockEntityTags) {
+            bytes += tag.sizeInBytes();
+        }
+        for (CompoundTag tag : entityTags) {
+            bytes += tag.sizeInBytes();
+        }
+        return bytes;
+    }
+
+    public int index(int x, int y, int z) {
+        return x + (z + y * length) * width;
+    }
+
+    /**
+     * 某个位置的方块状态，缺失时返回 null
+     */
+    @Nullable
+    public BlockState getBlockState(int x, int y, int z) {
+        int paletteIndex = blocks.get(index(x, y, z));
+        return paletteIndex >= 0 && paletteIndex < palette.length ? palette[paletteIndex] : null;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    @Nonnull
+    public BlockState[] getPalette() {
+        return palette;
+    }
+
+    @Nonnull
+    public byte[] getPaletteFlags() {
+        return paletteFlags;
+    }
+
+    /**
+     * 按 x + z * width + y * width * length 排列的调色板索引
+     */
+    @Nonnull
+    public BlockIndexStorage getBlocks() {
+        return blocks;
+    }
+
+    @Nonnull
+    public List<CompoundTag> getBlockEntityTags() {
+        return blockEntityTags;
+    }
+
+    @Nonnull
+    public List<CompoundTag> getEntityTags() {
+        return entityTags;
+    }
+}
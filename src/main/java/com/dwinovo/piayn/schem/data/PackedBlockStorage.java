@@ -0,0 +1,107 @@
+package com.dwinovo.piayn.schem.data;
+
+import javax.annotation.Nonnull;
+
+import net.minecraft.util.SimpleBitStorage;
+
+/**
+ * 按位压缩的调色板索引，已解码蓝图在内存中的标准格式
+ * 底层是原版的 {@link SimpleBitStorage}：每个 long 存放 64 / bits 个值，值不跨 long，下标除法用乘法代替
+ * 存储值为调色板索引 + 1，0 表示缺失，因此新建的存储全部为缺失；
+ * 每格占 ceil(log2(paletteSize + 1)) 位：512³ 的蓝图用 int[] 需要 512 MB，63 种方块以内（6 位）约 107 MB
+ * 超出调色板的索引按缺失保存
+ */
+public class PackedBlockStorage implements BlockIndexStorage {
+
+    private final int paletteSize;
+    private final SimpleBitStorage storage;
+
+    public PackedBlockStorage(int size, int paletteSize) {
+        this.paletteSize = paletteSize;
+        this.storage = new SimpleBitStorage(bitsFor(paletteSize), size);
+    }
+
+    /**
+     * 压缩已有的索引数组，负数视为缺失
+     */
+    @Nonnull
+    public static PackedBlockStorage pack(@Nonnull int[] blockData, int paletteSize) {
+        PackedBlockStorage packed = new PackedBlockStorage(blockData.length, paletteSize);
+        for (int i = 0; i < blockData.length; i++) {
+            packed.set(i, blockData[i]);
+        }
+        return packed;
+    }
+
+    /**
+     * 直接从 varint 字节解码，不经过中间的 int[]
+     * 数据不足的部分保持缺失
+     */
+    @Nonnull
+    public static PackedBlockStorage fromVarints(@Nonnull byte[] data, int size, int paletteSize) {
+        PackedBlockStorage packed = new PackedBlockStorage(size, paletteSize);
+        int pos = 0;
+        int index = 0;
+        while (pos < data.length && index < size) {
+            int b = data[pos++];
+            int value = b & 0x7F;
+            int shift = 7;
+            while (b < 0) {
+                if (pos >= data.length || shift > 28) {
+                    throw new IllegalArgumentException("Malformed varint array at byte " + pos);
+                }
+                b = data[pos++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            }
+            packed.set(index++, value);
+        }
+        return packed;
+    }
+
+    /**
+     * 表示 [0, paletteSize] 所需的位数，至少 1 位
+     */
+    public static int bitsFor(int paletteSize) {
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(paletteSize));
+    }
+
+    /**
+     * 写入一个调色板索引，负数或超出调色板的索引写为缺失
+     */
+    public void set(int index, int paletteIndex) {
+        storage.set(index, paletteIndex >= 0 && paletteIndex < paletteSize ? paletteIndex + 1 : 0);
+    }
+
+    /**
+     * 连续写入 values[offset, offset + count) 到 [start, start + count)
+     */
+    public void set(int start, @Nonnull int[] values, int offset, int count) {
+        for (int i = 0; i < count; i++) {
+            set(start + i, values[offset + i]);
+        }
+    }
+
+    @Override
+    public int size() {
+        return storage.getSize();
+    }
+
+    @Override
+    public int get(int index) {
+        return storage.get(index) - 1;
+    }
+
+    @Override
+    public long heapBytes() {
+        return 64L + (long) storage.getRaw().length * Long.BYTES;
+    }
+
+    public int getBits() {
+        return storage.getBits();
+    }
+
+    public int getPaletteSize() {
+        return paletteSize;
+    }
+}
@@ -0,0 +1,150 @@
+package com.dwinovo.piayn.schem.data;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+
+import com.dwinovo.piayn.config.PIAYNConfig;
+import com.dwinovo.piayn.schem.io.SchemSidecar;
+import com.dwinovo.piayn.schem.io.SchemStreamReader;
+import com.dwinovo.piayn.schem.store.SectionStore;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalNotification;
+import com.mojang.logging.LogUtils;
+
+/**
+ * 已解码蓝图的缓存
+ * 以文件路径、修改时间和大小为键，文件变化后自动重新解码；
+ * 启用旁路文件时优先映射 .psc，未命中时解码 .schem 并生成旁路文件；
+ * 按估算的内存占用计重，总量受配置 cacheMemoryMb 限制，超出时淘汰最久未使用的蓝图
+ * 缓存中的 {@link DecodedSchematic} 会被多个粘贴共享，使用方不得修改其中的数组与标签
+ */
+public class SchematicCache {
+
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    private record Key(Path path, long lastModified, long size) {
+    }
+
+    // 每个文件最近一次读取时的键，用于找出旧版本，条目随缓存淘汰移除
+    private static final Map<Path, Key> CURRENT_KEYS = new ConcurrentHashMap<>();
+
+    @Nullable
+    private static Cache<Key, DecodedSchematic> cache;
+    // 构建当前缓存时的内存上限，配置变化后重建
+    private static int cacheMemoryMb = -1;
+
+    /**
+     * 读取并解码蓝图，命中缓存时直接返回
+     * 涉及磁盘IO，应在IO线程调用
+     */
+    @Nonnull
+    public static DecodedSchematic get(@Nonnull Path path) throws IOException {
+        Path normalized = path.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(normalized, BasicFileAttributes.class);
+        Key key = new Key(normalized, attributes.lastModifiedTime().toMillis(), attributes.size());
+
+        Cache<Key, DecodedSchematic> current = getCache();
+        if (current == null) {
+            return decode(normalized);
+        }
+        // 同一文件的旧版本不会再命中，直接移除
+        Key previous = CURRENT_KEYS.put(normalized, key);
+        if (previous != null && !previous.equals(key)) {
+            current.invalidate(previous);
+        }
+        try {
+            return current.get(key, () -> decode(normalized));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException("Failed to decode schematic " + normalized, e.getCause());
+        }
+    }
+
+    private static DecodedSchematic decode(@Nonnull Path path) throws IOException {
+        if (SectionStore.isManifest(path)) {
+            return SectionStore.load(path);
+        }
+        boolean sidecar = PIAYNConfig.SCHEM_SIDECAR.get();
+        if (sidecar) {
+            DecodedSchematic mapped = SchemSidecar.load(path);
+            if (mapped != null) {
+                return mapped;
+            }
+        }
+        // 缓存的蓝图会被不同选项的粘贴复用，始终读取实体
+        DecodedSchematic decoded;
+        try (SchemStreamReader reader = SchemStreamReader.open(path)) {
+            decoded = DecodedSchematic.read(reader, true);
+        }
+        if (sidecar) {
+            SchemSidecar.writeQuietly(path, decoded);
+        }
+        return decoded;
+    }
+
+    @Nullable
+    private static synchronized Cache<Key, DecodedSchematic> getCache() {
+        int budget = PIAYNConfig.SCHEM_CACHE_MEMORY_MB.get();
+        if (budget != cacheMemoryMb) {
+            if (cache != null) {
+                cache.invalidateAll();
+            }
+            cache = budget == 0 ? null : CacheBuilder.newBuilder()
+                // 以 KB 计重，避免大蓝图超出 int 范围
+                .maximumWeight(budget * 1024L)
+                .<Key, DecodedSchematic>weigher((key, schematic) -> (int) Math.min(Integer.MAX_VALUE, schematic.estimateMemory() / 1024 + 1))
+                .removalListener((RemovalNotification<Key, DecodedSchematic> notification) -> {
+                    Key removed = notification.getKey();
+                    if (removed != null) {
+                        CURRENT_KEYS.remove(removed.path(), removed);
+                    }
+                })
+                .recordStats()
+                .build();
+            cacheMemoryMb = budget;
+            LOGGER.debug("Schematic cache budget set to {} MB", budget);
+        }
+        return cache;
+    }
+
+    /**
+     * 命中、未命中与淘汰统计，缓存关闭时为空统计
+     */
+    @Nonnull
+    public static synchronized CacheStats getStats() {
+        return cache == null ? new CacheStats(0, 0, 0, 0, 0, 0) : cache.stats();
+    }
+
+    /**
+     * 当前缓存的蓝图数量
+     */
+    public static synchronized long size() {
+        return cache == null ? 0 : cache.size();
+    }
+
+    /**
+     * 清空缓存，注册表重载后调色板中的方块状态可能失效
+     */
+    public static synchronized void invalidateAll() {
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    private SchematicCache() {
+        // 工具类，禁止实例化
+    }
+}
@@ -0,0 +1,251 @@
+package com.dwinovo.piayn.schem.data;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nonnull;
+
+import com.dwinovo.piayn.schem.util.BlockUtil;
+import com.dwinovo.piayn.schem.util.PaletteUtil;
+import com.dwinovo.piayn.schem.util.VarIntUtil;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.StringTag;
+import net.minecraft.world.level.block.state.BlockState;
+
+/**
+ * 按 16x16x16 区块段切分蓝图并计算内容哈希
+ * 区块段以区域原点对齐，边缘区块段按区域大小裁剪；
+ * 哈希覆盖区块段尺寸、局部调色板字符串、局部索引与方块实体，与所在位置无关，
+ * 因此同样内容的区块段在不同蓝图、不同位置得到相同的哈希
+ * 区块段内的方块实体 Pos 为相对区块段原点的坐标
+ */
+public class SectionCodec {
+
+    public static final int SECTION_SIZE = 16;
+    /** 无法解析的调色板条目的名称 */
+    public static final String INVALID_NAME = "";
+
+    private static final HashFunction SECTION_HASH = Hashing.murmur3_128();
+
+    /**
+     * 一个已切分的区块段
+     * 只有 {@link Visitor#wants} 返回 true 时才会编码 data，否则为 null
+     */
+    public record Section(int index, int sizeX, int sizeY, int sizeZ, long hashHigh, long hashLow,
+                          ListTag palette, byte[] data, List<CompoundTag> blockEntities) {
+
+        /**
+         * 十六进制的 128 位哈希
+         */
+        @Nonnull
+        public String hashString() {
+            return toHashString(hashHigh, hashLow);
+        }
+    }
+
+    public interface Visitor {
+        /**
+         * 是否需要该区块段的编码数据，已存储的区块段返回 false 可以省去编码
+         */
+        boolean wants(int index, long hashHigh, long hashLow);
+
+        /**
+         * 每个区块段都会调用，按 x -> z -> y 的区块段顺序
+         */
+        void accept(@Nonnull Section section);
+    }
+
+    private final int width;
+    private final int height;
+    private final int length;
+    private final int sectionsX;
+    private final int sectionsY;
+    private final int sectionsZ;
+
+    public SectionCodec(int width, int height, int length) {
+        this.width = width;
+        this.height = height;
+        this.length = length;
+        this.sectionsX = Math.ceilDiv(width, SECTION_SIZE);
+        this.sectionsY = Math.ceilDiv(height, SECTION_SIZE);
+        this.sectionsZ = Math.ceilDiv(length, SECTION_SIZE);
+    }
+
+    /**
+     * 调色板映射转为按索引排列的字符串
+     */
+    @Nonnull
+    public static String[] paletteNames(@Nonnull PaletteUtil.PaletteMap paletteMap) {
+        String[] names = new String[paletteMap.size()];
+        for (Map.Entry<BlockState, Integer> entry : paletteMap.entries()) {
+            names[entry.getValue()] = BlockUtil.blockStateToString(entry.getKey());
+        }
+        return names;
+    }
+
+    /**
+     * 方块状态数组转为字符串，null 条目使用 {@link #INVALID_NAME}
+     */
+    @Nonnull
+    public static String[] paletteNames(@Nonnull BlockState[] palette) {
+        String[] names = new String[palette.length];
+        for (int i = 0; i < palette.length; i++) {
+            names[i] = palette[i] == null ? INVALID_NAME : BlockUtil.blockStateToString(palette[i]);
+        }
+        return names;
+    }
+
+    /**
+     * 切分整个区域
+     * @param names 全局调色板字符串
+     * @param blocks 全局调色板索引，负数视为无效
+     * @param blockEntityTags Pos 为相对区域原点的方块实体
+     */
+    public void encode(@Nonnull String[] names, @Nonnull BlockIndexStorage blocks,
+                       @Nonnull List<CompoundTag> blockEntityTags, @Nonnull Visitor visitor) {
+        // 方块实体按区块段分组，坐标转为区块段内坐标
+        List<List<CompoundTag>> blockEntitiesBySection = new ArrayList<>(getSectionCount());
+        for (int i = 0; i < getSectionCount(); i++) {
+            blockEntitiesBySection.add(List.of());
+        }
+        for (CompoundTag blockEntityTag : blockEntityTags) {
+            int[] pos = blockEntityTag.getIntArray("Pos");
+            if (pos.length != 3 || pos[0] < 0 || pos[1] < 0 || pos[2] < 0 || pos[0] >= width || pos[1] >= height || pos[2] >= length) {
+                continue;
+            }
+            int index = sectionIndex(pos[0] / SECTION_SIZE, pos[1] / SECTION_SIZE, pos[2] / SECTION_SIZE);
+            if (blockEntitiesBySection.get(index).isEmpty()) {
+                blockEntitiesBySection.set(index, new ArrayList<>());
+            }
+            CompoundTag localTag = blockEntityTag.copy();
+            localTag.putIntArray("Pos", new int[]{pos[0] % SECTION_SIZE, pos[1] % SECTION_SIZE, pos[2] % SECTION_SIZE});
+            blockEntitiesBySection.get(index).add(localTag);
+        }
+
+        // 全局索引 -> 局部索引，用 stamp 区分区块段避免每段清空；最后一格表示无效索引
+        final int invalidId = names.length;
+        int[] localIds = new int[names.length + 1];
+        int[] stamps = new int[names.length + 1];
+        int[] sectionData = new int[SECTION_SIZE * SECTION_SIZE * SECTION_SIZE];
+
+        for (int sy = 0; sy < sectionsY; sy++) {
+            for (int sz = 0; sz < sectionsZ; sz++) {
+                for (int sx = 0; sx < sectionsX; sx++) {
+                    final int index = sectionIndex(sx, sy, sz);
+                    final int stamp = index + 1;
+                    final int x0 = sx * SECTION_SIZE;
+                    final int y0 = sy * SECTION_SIZE;
+                    final int z0 = sz * SECTION_SIZE;
+                    final int sizeX = Math.min(SECTION_SIZE, width - x0);
+                    final int sizeY = Math.min(SECTION_SIZE, height - y0);
+                    final int sizeZ = Math.min(SECTION_SIZE, length - z0);
+
+                    ListTag palette = new ListTag();
+                    Hasher hasher = SECTION_HASH.newHasher();
+                    hasher.putInt(sizeX).putInt(sizeY).putInt(sizeZ);
+                    int count = 0;
+                    for (int y = 0; y < sizeY; y++) {
+                        for (int z = 0; z < sizeZ; z++) {
+                            int globalIndex = x0 + (z0 + z + (y0 + y) * length) * width;
+                            for (int x = 0; x < sizeX; x++) {
+                                int globalId = blocks.get(globalIndex + x);
+                                if (globalId < 0 || globalId >= names.length) {
+                                    globalId = invalidId;
+                                }
+                                if (stamps[globalId] != stamp) {
+                                    stamps[globalId] = stamp;
+                                    localIds[globalId] = palette.size();
+                                    String name = globalId == invalidId ? INVALID_NAME : names[globalId];
+                                    palette.add(StringTag.valueOf(name));
+                                    hasher.putString(name, StandardCharsets.UTF_8);
+                                }
+                                int localId = localIds[globalId];
+                                sectionData[count++] = localId;
+                                hasher.putInt(localId);
+                            }
+                        }
+                    }
+                    List<CompoundTag> blockEntities = blockEntitiesBySection.get(index);
+                    for (CompoundTag blockEntityTag : blockEntities) {
+                        hasher.putString(blockEntityTag.toString(), StandardCharsets.UTF_8);
+                    }
+
+                    ByteBuffer hash = ByteBuffer.wrap(hasher.hash().asBytes());
+                    long hashHigh = hash.getLong(0);
+                    long hashLow = hash.getLong(Long.BYTES);
+                    byte[] data = visitor.wants(index, hashHigh, hashLow) ? VarIntUtil.encodeVarints(sectionData, 0, count) : null;
+                    visitor.accept(new Section(index, sizeX, sizeY, sizeZ, hashHigh, hashLow, palette, data, blockEntities));
+                }
+            }
+        }
+    }
+
+    /**
+     * 把区块段的局部索引写回全局数组
+     * @param globalIds 局部调色板索引 -> 全局索引
+     * @param localData 区块段内按 x -> z -> y 排列的局部索引
+     */
+    public void scatter(int index, @Nonnull int[] globalIds, @Nonnull int[] localData, @Nonnull int[] out) {
+        final int x0 = index % sectionsX * SECTION_SIZE;
+        final int z0 = index / sectionsX % sectionsZ * SECTION_SIZE;
+        final int y0 = index / sectionsX / sectionsZ * SECTION_SIZE;
+        final int sizeX = Math.min(SECTION_SIZE, width - x0);
+        final int sizeY = Math.min(SECTION_SIZE, height - y0);
+        final int sizeZ = Math.min(SECTION_SIZE, length - z0);
+        int cursor = 0;
+        for (int y = 0; y < sizeY; y++) {
+            for (int z = 0; z < sizeZ; z++) {
+                int globalIndex = x0 + (z0 + z + (y0 + y) * length) * width;
+                for (int x = 0; x < sizeX; x++) {
+                    out[globalIndex + x] = globalIds[localData[cursor++]];
+                }
+            }
+        }
+    }
+
+    /**
+     * 区块段内的方块数
+     */
+    public int sectionVolume(int index) {
+        final int x0 = index % sectionsX * SECTION_SIZE;
+        final int z0 = index / sectionsX % sectionsZ * SECTION_SIZE;
+        final int y0 = index / sectionsX / sectionsZ * SECTION_SIZE;
+        return Math.min(SECTION_SIZE, width - x0) * Math.min(SECTION_SIZE, height - y0) * Math.min(SECTION_SIZE, length - z0);
+    }
+
+    /**
+     * 区块段内的方块实体坐标转回相对区域原点的坐标，返回副本
+     */
+    @Nonnull
+    public CompoundTag toRegionBlockEntity(int index, @Nonnull CompoundTag localTag) {
+        int[] pos = localTag.getIntArray("Pos");
+        CompoundTag regionTag = localTag.copy();
+        if (pos.length == 3) {
+            regionTag.putIntArray("Pos", new int[]{
+                pos[0] + index % sectionsX * SECTION_SIZE,
+                pos[1] + index / sectionsX / sectionsZ * SECTION_SIZE,
+                pos[2] + index / sectionsX % sectionsZ * SECTION_SIZE});
+        }
+        return regionTag;
+    }
+
+    public int sectionIndex(int sx, int sy, int sz) {
+        return sx + (sz + sy * sectionsZ) * sectionsX;
+    }
+
+    public int getSectionCount() {
+        return sectionsX * sectionsY * sectionsZ;
+    }
+
+    @Nonnull
+    public static String toHashString(long hashHigh, long hashLow) {
+        return String.format("%016x%016x", hashHigh, hashLow);
+    }
+}
@@ -0,0 +1,372 @@
+package com.dwinovo.piayn.schem.io;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+
+import com.dwinovo.piayn.schem.SchemSerializer;
+import com.dwinovo.piayn.schem.data.BlockIndexStorage;
+import com.dwinovo.piayn.schem.data.DecodedSchematic;
+import com.dwinovo.piayn.schem.util.BlockUtil;
+import com.mojang.logging.LogUtils;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.NbtAccounter;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.Tag;
+import net.minecraft.world.level.block.state.BlockState;
+
+/**
+ * 未压缩的蓝图旁路文件（foo.schem -> foo.schem.psc）
+ * 布局：固定长度文件头、调色板表、按 long 对齐的位打包方块数组、未压缩的方块实体与实体 NBT
+ * 方块数组与原版 SimpleBitStorage 相同：每个 long 存放 64 / bits 个值，值不跨 long
+ * 读取时用 {@link FileChannel#map} 映射整个文件，粘贴直接从映射区读取调色板索引，不拷贝方块数据
+ * 文件头记录源文件的大小与修改时间，不一致时视为过期并重新生成
+ */
+public class SchemSidecar {
+
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    public static final String SIDECAR_SUFFIX = ".psc";
+
+    // "PSC1"
+    private static final int MAGIC = 0x50534331;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 96;
+
+    // 文件头字段偏移
+    private static final int SOURCE_SIZE_OFFSET = 8;
+    private static final int SOURCE_MODIFIED_OFFSET = 16;
+    private static final int WIDTH_OFFSET = 24;
+    private static final int HEIGHT_OFFSET = 28;
+    private static final int LENGTH_OFFSET = 32;
+    private static final int PALETTE_SIZE_OFFSET = 36;
+    private static final int BITS_OFFSET = 40;
+    private static final int PALETTE_OFFSET = 48;
+    private static final int DATA_OFFSET = 56;
+    private static final int TAGS_OFFSET = 64;
+    private static final int TAGS_LENGTH_OFFSET = 72;
+
+    /**
+     * 某个蓝图对应的旁路文件路径
+     */
+    @Nonnull
+    public static Path sidecarPath(@Nonnull Path schemPath) {
+        return schemPath.resolveSibling(schemPath.getFileName().toString() + SIDECAR_SUFFIX);
+    }
+
+    /**
+     * 映射旁路文件，不存在、已过期或格式不符时返回 null
+     * 文件头中的偏移与长度逐项校验，损坏的旁路文件会被删除，调用方退回读取 .schem
+     */
+    @Nullable
+    public static DecodedSchematic load(@Nonnull Path schemPath) throws IOException {
+        Path sidecarPath = sidecarPath(schemPath);
+        if (!Files.isRegularFile(sidecarPath)) {
+            return null;
+        }
+        BasicFileAttributes source = Files.readAttributes(schemPath, BasicFileAttributes.class);
+        try {
+            return read(sidecarPath, source);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Discarding corrupt schematic sidecar {}: {}", sidecarPath.getFileName(), e.toString());
+            delete(schemPath);
+            return null;
+        }
+    }
+
+    @Nullable
+    private static DecodedSchematic read(@Nonnull Path sidecarPath, @Nonnull BasicFileAttributes source) throws IOException {
+        MappedByteBuffer buffer;
+        long fileSize;
+        try (FileChannel channel = FileChannel.open(sidecarPath, StandardOpenOption.READ)) {
+            fileSize = channel.size();
+            if (fileSize < HEADER_SIZE || fileSize > Integer.MAX_VALUE) {
+                throw new IOException("Invalid file size " + fileSize);
+            }
+            // 通道关闭后映射仍然有效
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Unknown sidecar format");
+        }
+        // 源文件变化后旁路文件只是过期，下次写入时覆盖
+        if (buffer.getLong(SOURCE_SIZE_OFFSET) != source.size()
+            || buffer.getLong(SOURCE_MODIFIED_OFFSET) != source.lastModifiedTime().toMillis()) {
+            return null;
+        }
+
+        int width = buffer.getInt(WIDTH_OFFSET);
+        int height = buffer.getInt(HEIGHT_OFFSET);
+        int length = buffer.getInt(LENGTH_OFFSET);
+        int paletteSize = buffer.getInt(PALETTE_SIZE_OFFSET);
+        int bits = buffer.getInt(BITS_OFFSET);
+        long paletteOffset = buffer.getLong(PALETTE_OFFSET);
+        long dataOffset = buffer.getLong(DATA_OFFSET);
+        long tagsOffset = buffer.getLong(TAGS_OFFSET);
+        long tagsLength = buffer.getLong(TAGS_LENGTH_OFFSET);
+
+        if (width < 0 || height < 0 || length < 0) {
+            throw new IOException("Invalid size " + width + "x" + height + "x" + length);
+        }
+        long volume = (long) width * height * length;
+        if (volume > Integer.MAX_VALUE) {
+            throw new IOException("Volume " + volume + " is too large");
+        }
+        if (paletteSize < 0 || bits != bitsFor(paletteSize)) {
+            throw new IOException("Palette size " + paletteSize + " does not match " + bits + " bits");
+        }
+        int valuesPerLong = 64 / bits;
+        long dataLength = (volume + valuesPerLong - 1) / valuesPerLong * Long.BYTES;
+        // 逐段比较差值，避免偏移过大时相加溢出
+        if (paletteOffset < HEADER_SIZE || dataOffset < paletteOffset || dataOffset > fileSize || (dataOffset & 7L) != 0
+            || tagsOffset > fileSize || tagsOffset - dataOffset < dataLength
+            || tagsLength < 0 || tagsLength > fileSize - tagsOffset) {
+            throw new IOException("Section offsets out of bounds");
+        }
+        // 每个调色板条目至少有 4 字节的长度
+        if (paletteSize > (dataOffset - paletteOffset) / Integer.BYTES) {
+            throw new IOException("Palette size " + paletteSize + " out of bounds");
+        }
+
+        // 调色板：每项为长度 + UTF-8 字节，空串表示无法解析的条目，不能越过方块数组
+        BlockState[] palette = new BlockState[paletteSize];
+        ByteBuffer paletteBuffer = buffer.duplicate().limit((int) dataOffset).position((int) paletteOffset);
+        for (int i = 0; i < paletteSize; i++) {
+            int entryLength = paletteBuffer.remaining() >= Integer.BYTES ? paletteBuffer.getInt() : -1;
+            if (entryLength < 0 || entryLength > paletteBuffer.remaining()) {
+                throw new IOException("Palette entry " + i + " out of bounds");
+            }
+            byte[] bytes = new byte[entryLength];
+            paletteBuffer.get(bytes);
+            palette[i] = bytes.length == 0 ? null : BlockUtil.parseBlockState(new String(bytes, StandardCharsets.UTF_8));
+        }
+
+        byte[] tagBytes = new byte[(int) tagsLength];
+        buffer.get((int) tagsOffset, tagBytes);
+        CompoundTag tags = NbtIo.read(new DataInputStream(new ByteArrayInputStream(tagBytes)), NbtAccounter.unlimitedHeap());
+
+        BlockIndexStorage blocks = new MappedStorage(buffer, (int) dataOffset, (int) volume, bits, paletteSize);
+        return new DecodedSchematic(width, height, length, palette, blocks,
+            toCompoundList(tags.getList(SchemSerializer.BLOCK_ENTITIES_KEY, Tag.TAG_COMPOUND)),
+            toCompoundList(tags.getList(SchemSerializer.ENTITIES_KEY, Tag.TAG_COMPOUND)));
+    }
+
+    /**
+     * 调色板大小对应的位宽，额外保留一个值表示缺失
+     */
+    private static int bitsFor(int paletteSize) {
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(paletteSize));
+    }
+
+    /**
+     * 为蓝图生成旁路文件，先写临时文件再替换
+     */
+    public static void write(@Nonnull Path schemPath, @Nonnull DecodedSchematic schematic) throws IOException {
+        BasicFileAttributes source = Files.readAttributes(schemPath, BasicFileAttributes.class);
+        BlockState[] palette = schematic.getPalette();
+        BlockIndexStorage blocks = schematic.getBlocks();
+
+        int bits = bitsFor(palette.length);
+        int valuesPerLong = 64 / bits;
+        long dataLongs = ((long) blocks.size() + valuesPerLong - 1) / valuesPerLong;
+
+        ByteArrayOutputStream paletteBytes = new ByteArrayOutputStream();
+        DataOutputStream paletteOutput = new DataOutputStream(paletteBytes);
+        for (BlockState blockState : palette) {
+            byte[] bytes = blockState == null ? new byte[0] : BlockUtil.blockStateToString(blockState).getBytes(StandardCharsets.UTF_8);
+            paletteOutput.writeInt(bytes.length);
+            paletteOutput.write(bytes);
+        }
+
+        CompoundTag tags = new CompoundTag();
+        tags.put(SchemSerializer.BLOCK_ENTITIES_KEY, toListTag(schematic.getBlockEntityTags()));
+        tags.put(SchemSerializer.ENTITIES_KEY, toListTag(schematic.getEntityTags()));
+        ByteArrayOutputStream tagBytes = new ByteArrayOutputStream();
+        NbtIo.write(tags, new DataOutputStream(tagBytes));
+
+        long paletteOffset = HEADER_SIZE;
+        // 方块数组按 8 字节对齐
+        long dataOffset = (paletteOffset + paletteBytes.size() + 7) & ~7L;
+        long tagsOffset = dataOffset + dataLongs * Long.BYTES;
+        if (tagsOffset + tagBytes.size() > Integer.MAX_VALUE) {
+            throw new IOException("Schematic too large for a sidecar file");
+        }
+
+        Path sidecarPath = sidecarPath(schemPath);
+        Path tempPath = Files.createTempFile(sidecarPath.getParent(), sidecarPath.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath), 65536))) {
+                output.writeInt(MAGIC);
+                output.writeInt(FORMAT_VERSION);
+                output.writeLong(source.size());
+                output.writeLong(source.lastModifiedTime().toMillis());
+                output.writeInt(schematic.getWidth());
+                output.writeInt(schematic.getHeight());
+                output.writeInt(schematic.getLength());
+                output.writeInt(palette.length);
+                output.writeInt(bits);
+                output.writeInt(0);
+                output.writeLong(paletteOffset);
+                output.writeLong(dataOffset);
+                output.writeLong(tagsOffset);
+                output.writeLong(tagBytes.size());
+                output.write(new byte[HEADER_SIZE - TAGS_LENGTH_OFFSET - Long.BYTES]);
+
+                paletteBytes.writeTo(output);
+                output.write(new byte[(int) (dataOffset - paletteOffset - paletteBytes.size())]);
+
+                int missing = palette.length;
+                long word = 0;
+                int filled = 0;
+                for (int i = 0, size = blocks.size(); i < size; i++) {
+                    int value = blocks.get(i);
+                    if (value < 0 || value >= palette.length) {
+                        value = missing;
+                    }
+                    word |= (long) value << (filled * bits);
+                    if (++filled == valuesPerLong) {
+                        output.writeLong(word);
+                        word = 0;
+                        filled = 0;
+                    }
+                }
+                if (filled > 0) {
+                    output.writeLong(word);
+                }
+
+                tagBytes.writeTo(output);
+            }
+            try {
+                Files.move(tempPath, sidecarPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempPath, sidecarPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    /**
+     * 生成旁路文件，失败只记录日志
+     * 旧的映射仍在使用时部分系统不允许替换文件，下次加载会再次尝试
+     */
+    public static void writeQuietly(@Nonnull Path schemPath, @Nonnull DecodedSchematic schematic) {
+        try {
+            write(schemPath, schematic);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write schematic sidecar for {}", schemPath.getFileName(), e);
+        }
+    }
+
+    /**
+     * 蓝图变化后重新生成已存在的旁路文件，从未生成过的不处理
+     */
+    public static void refreshIfPresent(@Nonnull Path schemPath) {
+        if (!Files.isRegularFile(sidecarPath(schemPath))) {
+            return;
+        }
+        try {
+            if (load(schemPath) != null) {
+                return;
+            }
+            try (SchemStreamReader reader = SchemStreamReader.open(schemPath)) {
+                write(schemPath, DecodedSchematic.read(reader, true));
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to refresh schematic sidecar for {}", schemPath.getFileName(), e);
+        }
+    }
+
+    /**
+     * 蓝图删除后移除旁路文件
+     */
+    public static void delete(@Nonnull Path schemPath) {
+        try {
+            Files.deleteIfExists(sidecarPath(schemPath));
+        } catch (IOException e) {
+            LOGGER.warn("Failed to delete schematic sidecar for {}", schemPath.getFileName(), e);
+        }
+    }
+
+    private static ListTag toListTag(@Nonnull List<CompoundTag> tags) {
+        ListTag listTag = new ListTag();
+        listTag.addAll(tags);
+        return listTag;
+    }
+
+    private static List<CompoundTag> toCompoundList(@Nonnull ListTag listTag) {
+        List<CompoundTag> tags = new ArrayList<>(listTag.size());
+        for (int i = 0; i < listTag.size(); i++) {
+            tags.add(listTag.getCompound(i));
+        }
+        return tags;
+    }
+
+    /**
+     * 直接读取映射区的位打包方块数组
+     */
+    private static class MappedStorage implements BlockIndexStorage {
+
+        private final ByteBuffer buffer;
+        private final int dataOffset;
+        private final int size;
+        private final int bits;
+        private final int valuesPerLong;
+        private final long mask;
+        private final int paletteSize;
+
+        MappedStorage(@Nonnull ByteBuffer buffer, int dataOffset, int size, int bits, int paletteSize) {
+            this.buffer = buffer;
+            this.dataOffset = dataOffset;
+            this.size = size;
+            this.bits = bits;
+            this.valuesPerLong = 64 / bits;
+            this.mask = (1L << bits) - 1L;
+            this.paletteSize = paletteSize;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public int get(int index) {
+            // 绝对位置读取，不改变缓冲区状态，可多线程共享
+            int cell = index / valuesPerLong;
+            int shift = (index - cell * valuesPerLong) * bits;
+            int value = (int) ((buffer.getLong(dataOffset + cell * Long.BYTES) >>> shift) & mask);
+            return value < paletteSize ? value : -1;
+        }
+
+        @Override
+        public long heapBytes() {
+            return 64L;
+        }
+    }
+
+    private SchemSidecar() {
+        // 工具类，禁止实例化
+    }
+}
@@ -0,0 +1,519 @@
+package com.dwinovo.piayn.schem.io;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+
+import com.dwinovo.piayn.schem.SchemSerializer;
+import com.dwinovo.piayn.schem.util.PaletteUtil;
+import com.mojang.logging.LogUtils;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.IntArrayTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.NbtAccounter;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.Tag;
+import net.minecraft.nbt.TagType;
+import net.minecraft.nbt.TagTypes;
+import net.minecraft.world.level.block.state.BlockState;
+
+/**
+ * 流式 .schem 读取器
+ * 打开时只解析头部与调色板，方块数据以游标方式按需解码，
+ * 方块实体与实体在读到时才逐个解析，不会提前持有
+ * 要求文件中尺寸在 Blocks 之前、Palette 在 Data 之前、BlockEntities 在 Data 之后、Entities 在 Blocks 之后
+ * （{@link SchemStreamWriter} 的写入顺序），否则退回到整体读取
+ */
+public class SchemStreamReader implements Closeable {
+
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    private static final int BUFFER_SIZE = 65536;
+
+    private enum Phase {
+        /** 正在读取方块数据 */
+        DATA,
+        /** 在 Blocks 复合标签中，Data 之后 */
+        BLOCKS,
+        /** 正在读取方块实体列表 */
+        BLOCK_ENTITIES,
+        /** 在 Schematic 复合标签中，Blocks 之后 */
+        SCHEMATIC,
+        /** 正在读取实体列表 */
+        ENTITIES,
+        DONE
+    }
+
+    // 流式模式下的输入，整体读取模式下为 null
+    @Nullable
+    private final DataInputStream input;
+    private final NbtAccounter accounter = NbtAccounter.unlimitedHeap();
+    private Phase phase;
+
+    // 头部
+    private int width;
+    private int height;
+    private int length;
+    private int dataVersion;
+    private int[] offset = new int[3];
+    @Nullable
+    private CompoundTag metadata;
+    private BlockState[] palette = new BlockState[0];
+
+    // 方块数据游标
+    private byte[] buffer;
+    private int bufferPos;
+    private int bufferLength;
+    private long dataRemaining;
+
+    // 列表游标：流式模式下为剩余元素数，整体读取模式下为 ListTag 下标
+    private int listRemaining;
+    @Nullable
+    private ListTag blockEntitiesList;
+    @Nullable
+    private ListTag entitiesList;
+    private int blockEntityIndex;
+    private int entityIndex;
+
+    /**
+     * 打开蓝图文件并解析头部与调色板
+     * @throws IOException 读取失败，或尺寸超出上限、调色板索引越界时
+     */
+    @Nonnull
+    public static SchemStreamReader open(@Nonnull Path path) throws IOException {
+        DataInputStream input = openStream(path);
+        try {
+            SchemStreamReader reader = new SchemStreamReader(input);
+            if (reader.readHeader()) {
+                SchemSerializer.checkVolume(reader.width, reader.height, reader.length);
+                return reader;
+            }
+        } catch (IllegalArgumentException e) {
+            input.close();
+            throw new IOException("Invalid schematic " + path.getFileName() + ": " + e.getMessage(), e);
+        } catch (IOException | RuntimeException e) {
+            input.close();
+            throw e;
+        }
+        input.close();
+
+        // 字段顺序不满足流式读取的要求，整体读取
+        LOGGER.debug("Schematic {} is not in streaming order, falling back to full read", path);
+        CompoundTag rootTag = NbtIo.readCompressed(path, NbtAccounter.unlimitedHeap());
+        try {
+            SchemStreamReader reader = new SchemStreamReader(rootTag);
+            SchemSerializer.checkVolume(reader.width, reader.height, reader.length);
+            return reader;
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid schematic " + path.getFileName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static DataInputStream openStream(@Nonnull Path path) throws IOException {
+        InputStream fileStream = Files.newInputStream(path);
+        try {
+            return new DataInputStream(new BufferedInputStream(new GZIPInputStream(fileStream, BUFFER_SIZE), BUFFER_SIZE));
+        } catch (IOException e) {
+            fileStream.close();
+            throw e;
+        }
+    }
+
+    private SchemStreamReader(@Nonnull DataInputStream input) {
+        this.input = input;
+        this.buffer = new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * 整体读取模式：数据已在内存中，只借用同一套游标接口
+     */
+    private SchemStreamReader(@Nonnull CompoundTag rootTag) {
+        this.input = null;
+        CompoundTag schematicTag = rootTag.contains(SchemSerializer.SCHEMATIC_KEY, Tag.TAG_COMPOUND)
+            ? rootTag.getCompound(SchemSerializer.SCHEMATIC_KEY) : rootTag;
+        this.width = schematicTag.getShort(SchemSerializer.WIDTH_KEY) & 0xFFFF;
+        this.height = schematicTag.getShort(SchemSerializer.HEIGHT_KEY) & 0xFFFF;
+        this.length = schematicTag.getShort(SchemSerializer.LENGTH_KEY) & 0xFFFF;
+        this.dataVersion = schematicTag.getInt(SchemSerializer.DATA_VERSION_KEY);
+        int[] offsetArray = schematicTag.getIntArray(SchemSerializer.OFFSET_KEY);
+        if (offsetArray.length == 3) {
+            this.offset = offsetArray;
+        }
+        if (schematicTag.contains(SchemSerializer.METADATA_KEY, Tag.TAG_COMPOUND)) {
+            this.metadata = schematicTag.getCompound(SchemSerializer.METADATA_KEY);
+        }
+
+        CompoundTag blocksContainer = schematicTag.getCompound(SchemSerializer.BLOCKS_KEY);
+        this.palette = PaletteUtil.parsePaletteArray(blocksContainer.getCompound(SchemSerializer.PALETTE_KEY));
+        this.buffer = blocksContainer.getByteArray(SchemSerializer.DATA_KEY);
+        this.bufferLength = buffer.length;
+        this.blockEntitiesList = blocksContainer.getList(SchemSerializer.BLOCK_ENTITIES_KEY, Tag.TAG_COMPOUND);
+        this.entitiesList = schematicTag.getList(SchemSerializer.ENTITIES_KEY, Tag.TAG_COMPOUND);
+        this.phase = Phase.DATA;
+    }
+
+    /**
+     * 读取到 Data 的数组头为止
+     * @return 字段顺序是否满足流式读取
+     */
+    private boolean readHeader() throws IOException {
+        DataInputStream in = input;
+        if (in.readByte() != Tag.TAG_COMPOUND) {
+            throw new IOException("Root tag is not a compound");
+        }
+        in.readUTF();
+
+        // Sponge V3 把内容包在 Schematic 标签里，也兼容直接放在根标签的文件
+        byte type = in.readByte();
+        if (type == Tag.TAG_END) {
+            return false;
+        }
+        String name = in.readUTF();
+        if (type == Tag.TAG_COMPOUND && SchemSerializer.SCHEMATIC_KEY.equals(name)) {
+            type = in.readByte();
+            if (type == Tag.TAG_END) {
+                return false;
+            }
+            name = in.readUTF();
+        }
+
+        while (true) {
+            switch (name) {
+                case SchemSerializer.WIDTH_KEY -> width = readShortValue(type);
+                case SchemSerializer.HEIGHT_KEY -> height = readShortValue(type);
+                case SchemSerializer.LENGTH_KEY -> length = readShortValue(type);
+                case SchemSerializer.DATA_VERSION_KEY -> dataVersion = readIntValue(type);
+                case SchemSerializer.OFFSET_KEY -> {
+                    if (type == Tag.TAG_INT_ARRAY) {
+                        int[] offsetArray = IntArrayTag.TYPE.load(in, accounter).getAsIntArray();
+                        if (offsetArray.length == 3) {
+                            offset = offsetArray;
+                        }
+                    } else {
+                        skip(type);
+                    }
+                }
+                case SchemSerializer.METADATA_KEY -> {
+                    if (type == Tag.TAG_COMPOUND) {
+                        metadata = CompoundTag.TYPE.load(in, accounter);
+                    } else {
+                        skip(type);
+                    }
+                }
+                case SchemSerializer.BLOCKS_KEY -> {
+                    // 尺寸必须在方块容器之前给出
+                    boolean hasSize = width > 0 && height > 0 && length > 0;
+                    return type == Tag.TAG_COMPOUND && hasSize && readBlocksHeader();
+                }
+                // 实体在方块之后读取，出现在 Blocks 之前时无法流式处理
+                case SchemSerializer.ENTITIES_KEY -> {
+                    return false;
+                }
+                default -> skip(type);
+            }
+            type = in.readByte();
+            if (type == Tag.TAG_END) {
+                // 没有方块容器
+                return false;
+            }
+            name = in.readUTF();
+        }
+    }
+
+    /**
+     * 在 Blocks 中读取调色板并停在 Data 的字节之前
+     */
+    private boolean readBlocksHeader() throws IOException {
+        DataInputStream in = input;
+        boolean hasPalette = false;
+        for (byte type = in.readByte(); type != Tag.TAG_END; type = in.readByte()) {
+            String name = in.readUTF();
+            switch (name) {
+                case SchemSerializer.PALETTE_KEY -> {
+                    if (type != Tag.TAG_COMPOUND) {
+                        return false;
+                    }
+                    palette = PaletteUtil.parsePaletteArray(CompoundTag.TYPE.load(in, accounter));
+                    hasPalette = true;
+                }
+                case SchemSerializer.DATA_KEY -> {
+                    if (type != Tag.TAG_BYTE_ARRAY || !hasPalette) {
+                        return false;
+                    }
+                    dataRemaining = in.readInt();
+                    phase = Phase.DATA;
+                    return true;
+                }
+                // 方块实体需要在方块之后放置，出现在 Data 之前时无法流式处理
+                case SchemSerializer.BLOCK_ENTITIES_KEY -> {
+                    return false;
+                }
+                default -> skip(type);
+            }
+        }
+        return false;
+    }
+
+    // === 头部 ===
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public int getDataVersion() {
+        return dataVersion;
+    }
+
+    @Nonnull
+    public int[] getOffset() {
+        return offset;
+    }
+
+    @Nullable
+    public CompoundTag getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * 按索引排列的调色板，无法解析的条目为 null
+     */
+    @Nonnull
+    public BlockState[] getPalette() {
+        return palette;
+    }
+
+    public boolean isStreaming() {
+        return input != null;
+    }
+
+    // === 方块数据游标 ===
+
+    /**
+     * 按 x -> z -> y 顺序继续解码最多 maxCount 个调色板索引
+     * @return 实际解码的数量，0 表示方块数据已读完
+     */
+    public int readBlocks(@Nonnull int[] out, int outOffset, int maxCount) throws IOException {
+        if (phase != Phase.DATA) {
+            return 0;
+        }
+        int count = 0;
+        while (count < maxCount && hasMoreData()) {
+            int b = nextDataByte();
+            // 单字节快速路径
+            if (b >= 0) {
+                out[outOffset + count++] = b;
+                continue;
+            }
+            int value = b & 0x7F;
+            int shift = 7;
+            do {
+                if (shift > 28) {
+                    throw new IOException("Malformed varint in block data");
+                }
+                b = nextDataByte();
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            out[outOffset + count++] = value;
+        }
+        return count;
+    }
+
+    private boolean hasMoreData() {
+        return bufferPos < bufferLength || dataRemaining > 0;
+    }
+
+    private int nextDataByte() throws IOException {
+        if (bufferPos == bufferLength) {
+            if (dataRemaining <= 0) {
+                throw new EOFException("Block data ended inside a varint");
+            }
+            int toRead = (int) Math.min(buffer.length, dataRemaining);
+            input.readFully(buffer, 0, toRead);
+            bufferPos = 0;
+            bufferLength = toRead;
+            dataRemaining -= toRead;
+        }
+        return buffer[bufferPos++];
+    }
+
+    // === 方块实体与实体 ===
+
+    /**
+     * 读取下一个方块实体，会跳过尚未读取的方块数据
+     * @return 没有更多方块实体时返回 null
+     */
+    @Nullable
+    public CompoundTag nextBlockEntity() throws IOException {
+        if (phase == Phase.DATA) {
+            finishData();
+        }
+        if (input == null) {
+            return nextFromList(blockEntitiesList, true);
+        }
+        while (true) {
+            if (phase == Phase.BLOCK_ENTITIES) {
+                if (listRemaining > 0) {
+                    listRemaining--;
+                    return CompoundTag.TYPE.load(input, accounter);
+                }
+                phase = Phase.BLOCKS;
+            }
+            if (phase != Phase.BLOCKS) {
+                return null;
+            }
+            advanceBlocks();
+        }
+    }
+
+    /**
+     * 读取下一个实体，会跳过尚未读取的方块数据与方块实体
+     * @return 没有更多实体时返回 null
+     */
+    @Nullable
+    public CompoundTag nextEntity() throws IOException {
+        if (phase == Phase.DATA) {
+            finishData();
+        }
+        if (input == null) {
+            return nextFromList(entitiesList, false);
+        }
+        // 跳过方块容器的剩余部分
+        while (phase == Phase.BLOCKS || phase == Phase.BLOCK_ENTITIES) {
+            if (phase == Phase.BLOCK_ENTITIES) {
+                while (listRemaining > 0) {
+                    listRemaining--;
+                    CompoundTag.TYPE.skip(input, accounter);
+                }
+                phase = Phase.BLOCKS;
+            } else {
+                advanceBlocks();
+            }
+        }
+        while (true) {
+            if (phase == Phase.ENTITIES) {
+                if (listRemaining > 0) {
+                    listRemaining--;
+                    return CompoundTag.TYPE.load(input, accounter);
+                }
+                phase = Phase.SCHEMATIC;
+            }
+            if (phase != Phase.SCHEMATIC) {
+                return null;
+            }
+            advanceSchematic();
+        }
+    }
+
+    private void finishData() throws IOException {
+        if (input != null && dataRemaining > 0) {
+            input.skipNBytes(dataRemaining);
+        }
+        dataRemaining = 0;
+        bufferPos = bufferLength;
+        phase = Phase.BLOCKS;
+    }
+
+    /**
+     * 读取 Blocks 中的下一个字段
+     */
+    private void advanceBlocks() throws IOException {
+        byte type = input.readByte();
+        if (type == Tag.TAG_END) {
+            phase = Phase.SCHEMATIC;
+            return;
+        }
+        String name = input.readUTF();
+        if (type == Tag.TAG_LIST && SchemSerializer.BLOCK_ENTITIES_KEY.equals(name)) {
+            beginList(Phase.BLOCK_ENTITIES);
+        } else {
+            skip(type);
+        }
+    }
+
+    /**
+     * 读取 Schematic 中 Blocks 之后的下一个字段
+     */
+    private void advanceSchematic() throws IOException {
+        byte type = input.readByte();
+        if (type == Tag.TAG_END) {
+            phase = Phase.DONE;
+            return;
+        }
+        String name = input.readUTF();
+        if (type == Tag.TAG_LIST && SchemSerializer.ENTITIES_KEY.equals(name)) {
+            beginList(Phase.ENTITIES);
+        } else {
+            skip(type);
+        }
+    }
+
+    private void beginList(@Nonnull Phase listPhase) throws IOException {
+        byte elementType = input.readByte();
+        int size = input.readInt();
+        if (size > 0 && elementType != Tag.TAG_COMPOUND) {
+            // 不是复合标签列表，整体跳过
+            TagType<?> skipType = TagTypes.getType(elementType);
+            for (int i = 0; i < size; i++) {
+                skipType.skip(input, accounter);
+            }
+            return;
+        }
+        listRemaining = Math.max(0, size);
+        phase = listPhase;
+    }
+
+    @Nullable
+    private CompoundTag nextFromList(@Nullable ListTag list, boolean blockEntities) {
+        int index = blockEntities ? blockEntityIndex++ : entityIndex++;
+        return list != null && index < list.size() ? list.getCompound(index) : null;
+    }
+
+    // === NBT 辅助 ===
+
+    private int readShortValue(byte type) throws IOException {
+        if (type == Tag.TAG_SHORT) {
+            return input.readShort() & 0xFFFF;
+        }
+        skip(type);
+        return 0;
+    }
+
+    private int readIntValue(byte type) throws IOException {
+        if (type == Tag.TAG_INT) {
+            return input.readInt();
+        }
+        skip(type);
+        return 0;
+    }
+
+    private void skip(byte type) throws IOException {
+        TagTypes.getType(type).skip(input, accounter);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (input != null) {
+            input.close();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.dwinovo.piayn.schem.io;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.dwinovo.piayn.schem.SchemSerializer;
+import com.dwinovo.piayn.schem.capture.RegionCapture;
+import com.dwinovo.piayn.schem.util.BlockUtil;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.world.level.block.state.BlockState;
+
+/**
+ * 流式 .schem 写入器
+ * 按 Sponge V3 结构把头部、调色板、方块数据与方块实体依次直接写入 GZip 流，
+ * 不在内存中构建完整的 CompoundTag，也不缓存整个压缩结果
+ */
+public class SchemStreamWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 65536;
+
+    private final DataOutputStream output;
+
+    public SchemStreamWriter(@Nonnull OutputStream outputStream) throws IOException {
+        this.output = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(outputStream, BUFFER_SIZE), BUFFER_SIZE));
+    }
+
+    /**
+     * 写出完整的蓝图文件，方块数据由截取结果分块编码后边编码边写
+     */
+    public void writeSchematic(@Nonnull RegionCapture capture, @Nullable ListTag entitiesList,
+                               @Nullable String schematicName, @Nullable String authorName) throws IOException {
+        // 根标签名为空字符串，与 NbtIo#writeCompressed 一致
+        beginCompound("");
+        beginCompound(SchemSerializer.SCHEMATIC_KEY);
+
+        // 基本信息
+        writeInt(SchemSerializer.VERSION_KEY, SchemSerializer.SCHEMATIC_VERSION);
+        writeInt(SchemSerializer.DATA_VERSION_KEY, SchemSerializer.DATA_VERSION);
+        writeShort(SchemSerializer.WIDTH_KEY, (short) capture.getWidth());
+        writeShort(SchemSerializer.HEIGHT_KEY, (short) capture.getHeight());
+        writeShort(SchemSerializer.LENGTH_KEY, (short) capture.getLength());
+        writeIntArray(SchemSerializer.OFFSET_KEY, new int[]{0, 0, 0});
+
+        // 元数据
+        if (schematicName != null || authorName != null) {
+            beginCompound(SchemSerializer.METADATA_KEY);
+            if (schematicName != null) {
+                writeString(SchemSerializer.NAME_KEY, schematicName);
+            }
+            if (authorName != null) {
+                writeString(SchemSerializer.AUTHOR_KEY, authorName);
+            }
+            writeLong(SchemSerializer.DATE_KEY, System.currentTimeMillis());
+            endCompound();
+        }
+
+        // 方块容器：快照模式下取调色板时完成并行解析
+        beginCompound(SchemSerializer.BLOCKS_KEY);
+        beginCompound(SchemSerializer.PALETTE_KEY);
+        for (Map.Entry<BlockState, Integer> entry : capture.getPaletteMap().entries()) {
+            writeInt(BlockUtil.blockStateToString(entry.getKey()), entry.getValue());
+        }
+        endCompound();
+        writeEncodedData(SchemSerializer.DATA_KEY, capture);
+        writeCompoundList(SchemSerializer.BLOCK_ENTITIES_KEY, capture.getBlockEntityTags());
+        endCompound();
+
+        if (entitiesList != null && !entitiesList.isEmpty()) {
+            writeTag(SchemSerializer.ENTITIES_KEY, entitiesList);
+        }
+
+        endCompound();
+        endCompound();
+    }
+
+    // === 底层 NBT 写入 ===
+
+    public void beginCompound(@Nonnull String name) throws IOException {
+        writeHeader(Tag.TAG_COMPOUND, name);
+    }
+
+    public void endCompound() throws IOException {
+        output.writeByte(Tag.TAG_END);
+    }
+
+    public void writeShort(@Nonnull String name, short value) throws IOException {
+        writeHeader(Tag.TAG_SHORT, name);
+        output.writeShort(value);
+    }
+
+    public void writeInt(@Nonnull String name, int value) throws IOException {
+        writeHeader(Tag.TAG_INT, name);
+        output.writeInt(value);
+    }
+
+    public void writeLong(@Nonnull String name, long value) throws IOException {
+        writeHeader(Tag.TAG_LONG, name);
+        output.writeLong(value);
+    }
+
+    public void writeString(@Nonnull String name, @Nonnull String value) throws IOException {
+        writeHeader(Tag.TAG_STRING, name);
+        output.writeUTF(value);
+    }
+
+    public void writeIntArray(@Nonnull String name, @Nonnull int[] values) throws IOException {
+        writeHeader(Tag.TAG_INT_ARRAY, name);
+        output.writeInt(values.length);
+        for (int value : values) {
+            output.writeInt(value);
+        }
+    }
+
+    public void writeByteArray(@Nonnull String name, @Nonnull byte[] bytes) throws IOException {
+        writeHeader(Tag.TAG_BYTE_ARRAY, name);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    /**
+     * 把截取结果编码为 varint 字节数组标签
+     * 先统计编码长度写入数组头，再由 {@link RegionCapture#writeEncoded} 分块编码写出，快照模式下分批并行编码
+     */
+    public void writeEncodedData(@Nonnull String name, @Nonnull RegionCapture capture) throws IOException {
+        long byteLength = capture.getEncodedSize();
+        if (byteLength > Integer.MAX_VALUE) {
+            throw new IOException("Block data too large: " + byteLength + " bytes");
+        }
+        writeHeader(Tag.TAG_BYTE_ARRAY, name);
+        output.writeInt((int) byteLength);
+        capture.writeEncoded(output::write);
+    }
+
+    /**
+     * 逐个写出复合标签列表，空列表不写
+     */
+    public void writeCompoundList(@Nonnull String name, @Nonnull List<CompoundTag> tags) throws IOException {
+        if (tags.isEmpty()) {
+            return;
+        }
+        writeHeader(Tag.TAG_LIST, name);
+        output.writeByte(Tag.TAG_COMPOUND);
+        output.writeInt(tags.size());
+        for (CompoundTag tag : tags) {
+            tag.write(output);
+        }
+    }
+
+    public void writeTag(@Nonnull String name, @Nonnull Tag tag) throws IOException {
+        writeHeader(tag.getId(), name);
+        tag.write(output);
+    }
+
+    private void writeHeader(byte type, @Nonnull String name) throws IOException {
+        output.writeByte(type);
+        output.writeUTF(name);
+    }
+
+    @Override
+    public void close() throws IOException {
+        output.close();
+    }
+}
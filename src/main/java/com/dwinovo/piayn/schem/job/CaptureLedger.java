@@ -0,0 +1,145 @@
+package com.dwinovo.piayn.schem.job;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+
+import com.dwinovo.piayn.schem.SchemSerializer;
+import com.mojang.logging.LogUtils;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtAccounter;
+import net.minecraft.nbt.NbtIo;
+
+/**
+ * 玩家用蓝图笔保存到服务端的蓝图及其归属
+ * 用于拒绝覆盖他人或无主的蓝图，并按玩家统计文件数与字节数配额
+ * 保存在蓝图目录的 .captures.dat 中，文件被删除后对应的记录在下次统计时移除
+ */
+public class CaptureLedger {
+
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    public static final CaptureLedger INSTANCE = new CaptureLedger(SchemSerializer.DEFAULT_DIR);
+
+    private static final String LEDGER_FILE = ".captures.dat";
+
+    private final Path directory;
+    // 文件名 -> 归属玩家，首次访问时加载
+    @Nullable
+    private Map<String, UUID> owners;
+
+    /**
+     * 玩家已占用的配额
+     */
+    public record Usage(int files, long bytes) {
+    }
+
+    public CaptureLedger(@Nonnull Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * 蓝图的归属玩家，不是由玩家截取的蓝图返回 null
+     */
+    @Nullable
+    public synchronized UUID getOwner(@Nonnull String fileName) {
+        return load().get(fileName);
+    }
+
+    /**
+     * 统计玩家名下仍然存在的蓝图，同时移除已被删除的记录
+     */
+    @Nonnull
+    public synchronized Usage getUsage(@Nonnull UUID owner) {
+        int files = 0;
+        long bytes = 0;
+        boolean removed = false;
+        Iterator<Map.Entry<String, UUID>> iterator = load().entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, UUID> entry = iterator.next();
+            if (!entry.getValue().equals(owner)) {
+                continue;
+            }
+            try {
+                bytes += Files.size(directory.resolve(entry.getKey()));
+                files++;
+            } catch (IOException e) {
+                iterator.remove();
+                removed = true;
+            }
+        }
+        if (removed) {
+            save();
+        }
+        return new Usage(files, bytes);
+    }
+
+    /**
+     * 记录玩家保存的蓝图，在文件写入完成后调用
+     */
+    public synchronized void record(@Nonnull String fileName, @Nonnull UUID owner) {
+        if (!owner.equals(load().put(fileName, owner))) {
+            save();
+        }
+    }
+
+    @Nonnull
+    private Map<String, UUID> load() {
+        if (owners != null) {
+            return owners;
+        }
+        owners = new HashMap<>();
+        Path path = directory.resolve(LEDGER_FILE);
+        if (!Files.isRegularFile(path)) {
+            return owners;
+        }
+        try {
+            CompoundTag ledgerTag = NbtIo.readCompressed(path, NbtAccounter.unlimitedHeap());
+            for (String fileName : ledgerTag.getAllKeys()) {
+                try {
+                    owners.put(fileName, UUID.fromString(ledgerTag.getString(fileName)));
+                } catch (IllegalArgumentException e) {
+                    LOGGER.warn("Ignoring capture ledger entry {} with invalid owner", fileName);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.error("Failed to read capture ledger {}", path, e);
+        }
+        return owners;
+    }
+
+    private void save() {
+        CompoundTag ledgerTag = new CompoundTag();
+        for (Map.Entry<String, UUID> entry : owners.entrySet()) {
+            ledgerTag.putString(entry.getKey(), entry.getValue().toString());
+        }
+        Path path = directory.resolve(LEDGER_FILE);
+        try {
+            Files.createDirectories(directory);
+            Path tempPath = Files.createTempFile(directory, LEDGER_FILE, ".tmp");
+            try {
+                NbtIo.writeCompressed(ledgerTag, tempPath);
+                try {
+                    Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(tempPath);
+            }
+        } catch (IOException e) {
+            LOGGER.error("Failed to write capture ledger {}", path, e);
+        }
+    }
+}
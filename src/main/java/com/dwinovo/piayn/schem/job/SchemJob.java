@@ -0,0 +1,182 @@
+package com.dwinovo.piayn.schem.job;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+
+import com.mojang.logging.LogUtils;
+
+/**
+ * 蓝图任务基类
+ * 主线程部分由 {@link SchemJobScheduler} 在每 tick 的时间预算内分片推进，
+ * 子类可以把不依赖世界的工作（NBT 构建、压缩、写文件）交给后台线程
+ */
+public abstract class SchemJob {
+
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    public enum State {
+        /** 等待调度 */
+        QUEUED,
+        /** 主线程分片执行中 */
+        RUNNING,
+        /** 主线程部分已完成，等待后台线程 */
+        WAITING,
+        DONE,
+        FAILED,
+        CANCELLED;
+
+        public boolean isFinished() {
+            return this == DONE || this == FAILED || this == CANCELLED;
+        }
+    }
+
+    /**
+     * 进度回调，在主线程每次推进后调用；结束状态可能由后台线程回调
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        void onProgress(@Nonnull SchemJob job);
+    }
+
+    private final String name;
+    private volatile State state = State.QUEUED;
+    private volatile boolean cancelRequested;
+    @Nullable
+    private volatile Throwable error;
+    @Nullable
+    private ProgressListener progressListener;
+
+    protected SchemJob(@Nonnull String name) {
+        this.name = name;
+    }
+
+    /**
+     * 在截止时间前推进主线程部分
+     * @param deadlineNanos {@link System#nanoTime()} 截止时间
+     * @return 主线程部分是否已结束（不再需要调度）
+     */
+    public final boolean tick(long deadlineNanos) {
+        if (state.isFinished() || state == State.WAITING) {
+            return true;
+        }
+        if (cancelRequested) {
+            markCancelled();
+            return true;
+        }
+        state = State.RUNNING;
+        try {
+            if (run(deadlineNanos)) {
+                synchronized (this) {
+                    if (state == State.RUNNING) {
+                        state = State.WAITING;
+                    }
+                }
+                return true;
+            }
+            return false;
+        } catch (Exception e) {
+            markFailed(e);
+            return true;
+        } finally {
+            if (!state.isFinished()) {
+                notifyProgress();
+            }
+        }
+    }
+
+    /**
+     * 执行一片主线程工作
+     * @return 主线程部分是否已完成；完成后子类需自行调用 {@link #markDone()} 或等待后台线程结束
+     */
+    protected abstract boolean run(long deadlineNanos) throws Exception;
+
+    /**
+     * 取消时的清理回调，可能在任意线程调用
+     */
+    protected void onCancel() {
+    }
+
+    /**
+     * 任务进度，范围 [0, 1]
+     */
+    public abstract float getProgress();
+
+    /**
+     * 请求取消，主线程部分会在下一次调度时停止，后台部分在检查点停止
+     * 等待后台线程的任务保持 WAITING，由子类在后台部分真正停止后调用 {@link #markCancelled()}；
+     * 后台部分已越过最后一个检查点时任务仍会正常完成
+     */
+    public void cancel() {
+        cancelRequested = true;
+        if (state == State.QUEUED) {
+            markCancelled();
+        }
+    }
+
+    public boolean isCancelRequested() {
+        return cancelRequested;
+    }
+
+    protected void markDone() {
+        if (finish(State.DONE)) {
+            notifyProgress();
+        }
+    }
+
+    protected void markFailed(@Nonnull Throwable throwable) {
+        if (finish(State.FAILED)) {
+            error = throwable;
+            LOGGER.error("Schematic job failed: {}", name, throwable);
+            notifyProgress();
+        }
+    }
+
+    protected void markCancelled() {
+        if (finish(State.CANCELLED)) {
+            onCancel();
+            notifyProgress();
+        }
+    }
+
+    private synchronized boolean finish(@Nonnull State finalState) {
+        if (state.isFinished()) {
+            return false;
+        }
+        state = finalState;
+        return true;
+    }
+
+    private void notifyProgress() {
+        ProgressListener listener = progressListener;
+        if (listener != null) {
+            try {
+                listener.onProgress(this);
+            } catch (Exception e) {
+                LOGGER.warn("Schematic job progress listener failed: {}", name, e);
+            }
+        }
+    }
+
+    @Nonnull
+    public SchemJob setProgressListener(@Nullable ProgressListener progressListener) {
+        this.progressListener = progressListener;
+        return this;
+    }
+
+    @Nonnull
+    public String getName() {
+        return name;
+    }
+
+    @Nonnull
+    public State getState() {
+        return state;
+    }
+
+    @Nullable
+    public Throwable getError() {
+        return error;
+    }
+}
@@ -0,0 +1,98 @@
+package com.dwinovo.piayn.schem.job;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import javax.annotation.Nonnull;
+
+import com.dwinovo.piayn.config.PIAYNConfig;
+
+/**
+ * 蓝图任务调度器
+ * 每 tick 在配置的毫秒预算内轮流推进任务的主线程部分，多个任务公平分享预算
+ * 任务在服务端执行，由服务端 tick 事件驱动
+ */
+public class SchemJobScheduler {
+
+    public static final SchemJobScheduler SERVER = new SchemJobScheduler();
+
+    private static final int DEFAULT_BUDGET_MS = 5;
+    // 最小时间片，避免任务过多时每个任务分到的时间不够处理一个单元
+    private static final long MIN_SLICE_NANOS = 200_000L;
+
+    private final Deque<SchemJob> queue = new ArrayDeque<>();
+
+    /**
+     * 提交任务，在下一次 tick 开始执行
+     */
+    @Nonnull
+    public <T extends SchemJob> T submit(@Nonnull T job) {
+        queue.addLast(job);
+        return job;
+    }
+
+    /**
+     * 使用配置的预算推进任务，仅在主线程调用
+     */
+    public void tick() {
+        tick(getBudgetNanos());
+    }
+
+    public void tick(long budgetNanos) {
+        if (queue.isEmpty()) {
+            return;
+        }
+        final long deadline = System.nanoTime() + budgetNanos;
+        // 轮转调度：每轮每个任务分得剩余预算的均分时间片，未完成的任务排到队尾
+        boolean progressed = true;
+        while (progressed && !queue.isEmpty()) {
+            progressed = false;
+            final int count = queue.size();
+            for (int i = 0; i < count && !queue.isEmpty(); i++) {
+                long now = System.nanoTime();
+                if (now >= deadline) {
+                    return;
+                }
+                long slice = Math.max(MIN_SLICE_NANOS, (deadline - now) / (count - i));
+                long sliceDeadline = Math.min(deadline, now + slice);
+                SchemJob job = queue.pollFirst();
+                if (job.tick(sliceDeadline)) {
+                    continue;
+                }
+                queue.addLast(job);
+                // 用满时间片说明还有工作；提前返回的任务（例如在等待IO）本轮不再占用预算
+                if (System.nanoTime() >= sliceDeadline) {
+                    progressed = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * 取消所有排队中的任务，例如退出世界时
+     */
+    public void cancelAll() {
+        for (SchemJob job : queue) {
+            job.cancel();
+        }
+        queue.clear();
+    }
+
+    /**
+     * 当前仍需主线程推进的任务快照
+     */
+    @Nonnull
+    public List<SchemJob> getActiveJobs() {
+        return new ArrayList<>(queue);
+    }
+
+    public boolean isIdle() {
+        return queue.isEmpty();
+    }
+
+    private static long getBudgetNanos() {
+        int budgetMs = PIAYNConfig.SPEC.isLoaded() ? PIAYNConfig.SCHEM_TICK_BUDGET_MS.get() : DEFAULT_BUDGET_MS;
+        return budgetMs * 1_000_000L;
+    }
+}
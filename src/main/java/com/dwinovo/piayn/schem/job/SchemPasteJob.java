@@ -0,0 +1,278 @@
+package com.dwinovo.piayn.schem.job;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+
+import com.dwinovo.piayn.schem.data.DecodedSchematic;
+import com.dwinovo.piayn.schem.data.SchematicCache;
+import com.dwinovo.piayn.schem.paste.BulkPaster;
+import com.dwinovo.piayn.schem.pojo.PasteOptions;
+import com.dwinovo.piayn.schem.undo.PasteHistory;
+import com.dwinovo.piayn.schem.undo.PasteJournal;
+import com.dwinovo.piayn.schem.util.EntityUtil;
+import com.mojang.logging.LogUtils;
+
+import net.minecraft.Util;
+import net.minecraft.core.BlockPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.server.level.ServerLevel;
+
+/**
+ * 蓝图粘贴任务
+ * 1. IO 线程：读取并解码蓝图，重复粘贴时命中已解码缓存
+ * 2. 主线程：以区块列为单位分片粘贴方块，之后分片放置实体
+ *    差异模式下主线程提前复制若干区块列的区块段，在后台线程并行比较，粘贴时只放置差异
+ * 取消时已经粘贴的部分会保留
+ * 通过 {@link #recordUndo(UUID)} 开启撤销记录后，结束、取消或失败时把已覆盖的部分加入 {@link PasteHistory}；
+ * 记录中的日志超过撤销内存上限时放弃记录
+ */
+public class SchemPasteJob extends SchemJob {
+
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    // 方块阶段在总进度中的占比，其余为实体
+    private static final float BLOCK_WEIGHT = 0.95f;
+    // 每放置多少个实体检查一次截止时间
+    private static final int ENTITY_BATCH = 16;
+    // 差异模式下最多提前快照的区块列数
+    private static final int DIFF_WINDOW = 32;
+
+    private final ServerLevel level;
+    private final Callable<DecodedSchematic> source;
+    private final BlockPos targetPos;
+    private final PasteOptions options;
+
+    @Nullable
+    private volatile CompletableFuture<Loaded> loading;
+    @Nullable
+    private Loaded loaded;
+
+    // 游标：下一个要粘贴的区块列
+    private int chunkX;
+    private int chunkZ;
+    private int pastedChunks;
+    private int totalChunks;
+    private int entityIndex;
+
+    // 差异模式：快照游标与按粘贴顺序排列的后台比较结果
+    private int diffChunkX;
+    private int diffChunkZ;
+    private final Deque<CompletableFuture<BulkPaster.ChunkDiff>> pendingDiffs = new ArrayDeque<>();
+
+    // 撤销记录的归属者，为 null 时不记录
+    @Nullable
+    private UUID undoOwner;
+    @Nullable
+    private PasteJournal journal;
+
+    private record Loaded(BulkPaster paster, List<CompoundTag> entities) {
+    }
+
+    public SchemPasteJob(@Nonnull ServerLevel level, @Nonnull Path path, @Nonnull BlockPos targetPos, @Nonnull PasteOptions options) {
+        this(level, path.getFileName().toString(), () -> SchematicCache.get(path), targetPos, options);
+    }
+
+    /**
+     * @param source 在IO线程调用，提供要粘贴的蓝图
+     */
+    public SchemPasteJob(@Nonnull ServerLevel level, @Nonnull String name, @Nonnull Callable<DecodedSchematic> source,
+                         @Nonnull BlockPos targetPos, @Nonnull PasteOptions options) {
+        super(name);
+        this.level = level;
+        this.source = source;
+        this.targetPos = targetPos.immutable();
+        this.options = options;
+    }
+
+    /**
+     * 记录被覆盖的方块以便撤销，需在提交前调用
+     * @param owner 撤销记录的归属者
+     */
+    @Nonnull
+    public SchemPasteJob recordUndo(@Nonnull UUID owner) {
+        this.undoOwner = owner;
+        return this;
+    }
+
+    @Override
+    protected boolean run(long deadlineNanos) {
+        if (loaded == null) {
+            CompletableFuture<Loaded> future = loading;
+            if (future == null) {
+                // 开始调度时才读取文件，排队中的任务不占用内存
+                loading = CompletableFuture.supplyAsync(this::load, Util.ioPool());
+                return false;
+            }
+            if (!future.isDone()) {
+                return false;
+            }
+            loaded = future.join();
+            BulkPaster paster = loaded.paster();
+            if (undoOwner != null) {
+                journal = new PasteJournal();
+                paster.setJournal(journal);
+            }
+            chunkX = paster.getMinChunkX();
+            chunkZ = paster.getMinChunkZ();
+            diffChunkX = chunkX;
+            diffChunkZ = chunkZ;
+            totalChunks = (paster.getMaxChunkX() - chunkX + 1) * (paster.getMaxChunkZ() - chunkZ + 1);
+        }
+
+        try {
+            return paste(deadlineNanos);
+        } catch (RuntimeException e) {
+            // 失败前已经改变的部分仍可撤销
+            commitUndo();
+            throw e;
+        }
+    }
+
+    private boolean paste(long deadlineNanos) {
+        BulkPaster paster = loaded.paster();
+        while (chunkZ <= paster.getMaxChunkZ()) {
+            BulkPaster.ChunkDiff diff = null;
+            if (options.isDiff()) {
+                submitDiffs(paster);
+                // 比较尚未完成时等到下一 tick
+                if (!pendingDiffs.getFirst().isDone()) {
+                    return false;
+                }
+                diff = pendingDiffs.removeFirst().join();
+            }
+            paster.pasteChunk(chunkX, chunkZ, diff);
+            pastedChunks++;
+            checkJournalSize(paster);
+            if (++chunkX > paster.getMaxChunkX()) {
+                chunkX = paster.getMinChunkX();
+                chunkZ++;
+            }
+            if (System.nanoTime() >= deadlineNanos) {
+                return false;
+            }
+        }
+
+        List<CompoundTag> entities = loaded.entities();
+        while (entityIndex < entities.size()) {
+            CompoundTag entityTag = entities.get(entityIndex++);
+            try {
+                EntityUtil.pasteEntity(level, entityTag, targetPos, paster.getTransform());
+            } catch (Exception e) {
+                LOGGER.warn("Failed to paste entity {} from {}", entityTag.getString("Id"), getName(), e);
+            }
+            if (entityIndex % ENTITY_BATCH == 0 && System.nanoTime() >= deadlineNanos) {
+                return false;
+            }
+        }
+
+        LOGGER.info("Pasted schematic {} at {}: {} blocks changed", getName(), targetPos, paster.getBlocksPlaced());
+        commitUndo();
+        markDone();
+        return true;
+    }
+
+    /**
+     * 补足差异窗口：在主线程复制区块段，比较交给后台线程
+     */
+    private void submitDiffs(@Nonnull BulkPaster paster) {
+        while (pendingDiffs.size() < DIFF_WINDOW && diffChunkZ <= paster.getMaxChunkZ()) {
+            BulkPaster.ChunkDiff diff = paster.createDiff(diffChunkX, diffChunkZ, true);
+            pendingDiffs.addLast(CompletableFuture.supplyAsync(() -> {
+                diff.getMask();
+                return diff;
+            }, Util.backgroundExecutor()));
+            if (++diffChunkX > paster.getMaxChunkX()) {
+                diffChunkX = paster.getMinChunkX();
+                diffChunkZ++;
+            }
+        }
+    }
+
+    /**
+     * 在IO线程读取蓝图，不访问世界
+     */
+    @Nonnull
+    private Loaded load() {
+        try {
+            DecodedSchematic schematic = source.call();
+            List<CompoundTag> entities = options.isPasteEntities() ? schematic.getEntityTags() : List.of();
+            return new Loaded(new BulkPaster(level, targetPos, schematic, options), entities);
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to read schematic " + getName(), e);
+        }
+    }
+
+    /**
+     * 记录中的日志超过撤销内存上限时放弃记录，之后的粘贴不再可撤销
+     */
+    private void checkJournalSize(@Nonnull BulkPaster paster) {
+        PasteJournal current = journal;
+        if (current == null || current.heapBytes() <= PasteHistory.getMaxBytes()) {
+            return;
+        }
+        LOGGER.warn("Undo journal for {} exceeded {} bytes after {} blocks, this paste cannot be undone",
+            getName(), PasteHistory.getMaxBytes(), current.getBlockCount());
+        journal = null;
+        paster.setJournal(null);
+    }
+
+    /**
+     * 把撤销日志交给历史记录，只在主线程调用，只提交一次
+     */
+    private void commitUndo() {
+        PasteJournal current = journal;
+        if (current == null || undoOwner == null) {
+            return;
+        }
+        journal = null;
+        loaded.paster().setJournal(null);
+        PasteHistory.INSTANCE.record(undoOwner, getName(), level.dimension(), current);
+    }
+
+    @Override
+    protected void onCancel() {
+        CompletableFuture<Loaded> future = loading;
+        if (future != null) {
+            future.cancel(false);
+        }
+        // 运行中取消时在主线程调用，已粘贴的部分仍可撤销
+        commitUndo();
+    }
+
+    @Override
+    public float getProgress() {
+        if (getState() == State.DONE) {
+            return 1.0f;
+        }
+        Loaded current = loaded;
+        if (current == null || totalChunks == 0) {
+            return 0.0f;
+        }
+        float blockProgress = (float) pastedChunks / totalChunks;
+        if (pastedChunks < totalChunks) {
+            return blockProgress * BLOCK_WEIGHT;
+        }
+        int entityCount = current.entities().size();
+        float entityProgress = entityCount == 0 ? 1.0f : (float) entityIndex / entityCount;
+        return blockProgress * BLOCK_WEIGHT + entityProgress * (1.0f - BLOCK_WEIGHT);
+    }
+
+    @Nonnull
+    public BlockPos getTargetPos() {
+        return targetPos;
+    }
+
+    @Nonnull
+    public ServerLevel getLevel() {
+        return level;
+    }
+}
@@ -0,0 +1,199 @@
+package com.dwinovo.piayn.schem.job;
+
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CancellationException;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.dwinovo.piayn.config.PIAYNConfig;
+import com.dwinovo.piayn.schem.SchemSerializer;
+import com.dwinovo.piayn.schem.capture.EntityCapture;
+import com.dwinovo.piayn.schem.capture.EntityFilter;
+import com.dwinovo.piayn.schem.capture.RegionCapture;
+import com.dwinovo.piayn.schem.data.BlockIndexStorage;
+import com.dwinovo.piayn.schem.data.SectionCodec;
+import com.dwinovo.piayn.schem.pojo.StructureData;
+import com.dwinovo.piayn.schem.snapshot.SchemSnapshot;
+import com.dwinovo.piayn.schem.store.SectionStore;
+
+import net.minecraft.Util;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.world.level.Level;
+
+/**
+ * 蓝图保存任务
+ * 1. 主线程：按区块段分片截取方块，之后按区块列分片收集实体
+ * 2. 后台线程：编码方块数据（并行模式下在 ForkJoin 池中合并调色板并编码）
+ * 3. IO 线程：流式写入 GZip NBT 并原子替换文件；快照模式下写出相对父快照的差量快照，
+ *    启用区块段仓库时写出清单并只保存仓库中没有的区块段
+ */
+public class SchemSaveJob extends SchemJob {
+
+    // 截取阶段在总进度中的占比，其余为构建、压缩与写入
+    private static final float CAPTURE_WEIGHT = 0.9f;
+
+    private final Level level;
+    private final String schematicName;
+    @Nullable
+    private final String authorName;
+    private final RegionCapture capture;
+    private final EntityCapture entityCapture;
+    private final Output output;
+    @Nullable
+    private final String snapshotParent;
+    private final CompletableFuture<Path> result = new CompletableFuture<>();
+    // 为 false 时目标文件已存在则保存失败，快照从不覆盖
+    private boolean replaceExisting = true;
+
+    private enum Output {
+        /** 完整的 Sponge V3 .schem */
+        SCHEM,
+        /** .snap 差量快照 */
+        SNAPSHOT,
+        /** .pman 区块段仓库清单 */
+        MANIFEST
+    }
+
+    /**
+     * 保存蓝图，配置启用区块段仓库时保存为清单
+     */
+    public SchemSaveJob(@Nonnull StructureData structureData) {
+        this(structureData, useSectionStore() ? Output.MANIFEST : Output.SCHEM, null);
+    }
+
+    /**
+     * 差量快照任务，只写出与父快照不同的区块段
+     * @param snapshotParent 父快照名称，为 null 时写出完整快照
+     */
+    public SchemSaveJob(@Nonnull StructureData structureData, @Nullable String snapshotParent) {
+        this(structureData, Output.SNAPSHOT, snapshotParent);
+    }
+
+    private SchemSaveJob(@Nonnull StructureData structureData, @Nonnull Output output, @Nullable String snapshotParent) {
+        super(switch (output) {
+            case SCHEM -> SchemSerializer.resolveSchemName(structureData.getSchemName());
+            case SNAPSHOT -> SchemSnapshot.resolveName(structureData.getSchemName());
+            case MANIFEST -> SectionStore.resolveName(structureData.getSchemName());
+        });
+        this.output = output;
+        this.snapshotParent = snapshotParent;
+        this.level = structureData.getLevel();
+        this.schematicName = getName();
+        this.authorName = structureData.getAuthorName();
+        // 并行模式下主线程只做区块段快照，调色板合并与编码在后台构建 NBT 时完成
+        boolean parallel = !PIAYNConfig.SPEC.isLoaded() || PIAYNConfig.SCHEM_PARALLEL_CAPTURE.get();
+        this.capture = new RegionCapture(level, structureData.getOriginPos(),
+            structureData.getWidth(), structureData.getHeight(), structureData.getLength(), parallel);
+        this.entityCapture = new EntityCapture(level, structureData.getOriginPos(),
+            structureData.getWidth(), structureData.getHeight(), structureData.getLength(), EntityFilter.fromConfig());
+    }
+
+    /**
+     * 是否允许替换已存在的同名文件，需在提交前调用
+     */
+    @Nonnull
+    public SchemSaveJob replaceExisting(boolean replaceExisting) {
+        this.replaceExisting = replaceExisting;
+        return this;
+    }
+
+    @Override
+    protected boolean run(long deadlineNanos) {
+        while (capture.captureNextSection()) {
+            if (System.nanoTime() >= deadlineNanos) {
+                return false;
+            }
+        }
+
+        // 实体需要在主线程保存
+        while (entityCapture.captureNextChunk()) {
+            if (System.nanoTime() >= deadlineNanos) {
+                return false;
+            }
+        }
+        ListTag entitiesList = entityCapture.getEntitiesList();
+
+        CompletableFuture<Path> future = CompletableFuture
+            .supplyAsync(() -> {
+                checkCancelled();
+                // 快照模式下在这里完成并行解析，避免占用IO线程；varint 编码由写入器分块进行，不构建完整的 Data
+                capture.getBlockData();
+                return capture;
+            }, Util.backgroundExecutor())
+            .thenApplyAsync(resolved -> {
+                checkCancelled();
+                try {
+                    return switch (output) {
+                        case SCHEM -> SchemSerializer.writeSchemStreaming(resolved, entitiesList, schematicName, authorName,
+                            replaceExisting, this::isCancelRequested);
+                        case SNAPSHOT -> SchemSnapshot.write(resolved, entitiesList, schematicName, snapshotParent,
+                            this::isCancelRequested);
+                        case MANIFEST -> SectionStore.writeManifest(resolved.getWidth(), resolved.getHeight(), resolved.getLength(),
+                            SectionCodec.paletteNames(resolved.getPaletteMap()), BlockIndexStorage.ofArray(resolved.getBlockData()),
+                            resolved.getBlockEntityTags(), entitiesList, buildMetadata(), schematicName,
+                            replaceExisting, this::isCancelRequested);
+                    };
+                } catch (Exception e) {
+                    throw new IllegalStateException("Failed to write schematic " + schematicName, e);
+                }
+            }, Util.ioPool());
+
+        // 取消请求不会打断后台写入：写入在替换文件前检查取消，任务在这里结束后才进入最终状态
+        future.whenComplete((path, throwable) -> {
+            if (throwable == null) {
+                result.complete(path);
+                markDone();
+            } else if (isCancelRequested() || throwable.getCause() instanceof CancellationException) {
+                markCancelled();
+            } else {
+                result.completeExceptionally(throwable);
+                markFailed(throwable.getCause() != null ? throwable.getCause() : throwable);
+            }
+        });
+        return true;
+    }
+
+    private static boolean useSectionStore() {
+        return PIAYNConfig.SPEC.isLoaded() && PIAYNConfig.SCHEM_SECTION_STORE.get();
+    }
+
+    private CompoundTag buildMetadata() {
+        CompoundTag metadataTag = new CompoundTag();
+        metadataTag.putString(SchemSerializer.NAME_KEY, schematicName);
+        if (authorName != null) {
+            metadataTag.putString(SchemSerializer.AUTHOR_KEY, authorName);
+        }
+        metadataTag.putLong(SchemSerializer.DATE_KEY, System.currentTimeMillis());
+        return metadataTag;
+    }
+
+    private void checkCancelled() {
+        if (isCancelRequested()) {
+            throw new CancellationException("Schematic save cancelled: " + schematicName);
+        }
+    }
+
+    @Override
+    protected void onCancel() {
+        result.cancel(false);
+    }
+
+    @Override
+    public float getProgress() {
+        return switch (getState()) {
+            case DONE -> 1.0f;
+            case WAITING -> CAPTURE_WEIGHT;
+            default -> capture.getProgress() * CAPTURE_WEIGHT;
+        };
+    }
+
+    /**
+     * 保存完成后得到文件路径；失败时异常完成，取消时被取消
+     */
+    @Nonnull
+    public CompletableFuture<Path> getResult() {
+        return result;
+    }
+}
@@ -0,0 +1,172 @@
+package com.dwinovo.piayn.schem.job;
+
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+
+import com.dwinovo.piayn.config.PIAYNConfig;
+import com.dwinovo.piayn.packet.SchemCaptureStatusPacket;
+import com.dwinovo.piayn.schem.SchemSerializer;
+import com.dwinovo.piayn.schem.pojo.StructureData;
+import com.mojang.logging.LogUtils;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.network.chat.Component;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.level.levelgen.structure.BoundingBox;
+import net.neoforged.neoforge.network.PacketDistributor;
+
+/**
+ * 服务端蓝图截取服务
+ * 在服务端权威世界中分帧截取，结果保存在服务端蓝图目录，
+ * 进度通过 {@link SchemCaptureStatusPacket} 汇报给发起的玩家
+ * 需要 capturePermissionLevel 权限；不能覆盖他人或无主的蓝图，每个玩家的蓝图数量与大小受配额限制，见 {@link CaptureLedger}
+ */
+public class ServerCaptureService {
+
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    // 每个玩家同时只允许一个截取任务
+    private static final Map<UUID, SchemSaveJob> ACTIVE_CAPTURES = new ConcurrentHashMap<>();
+
+    /**
+     * 为玩家发起截取，仅在服务端主线程调用
+     */
+    public static void start(@Nonnull ServerPlayer player, @Nonnull BlockPos startPos, @Nonnull BlockPos endPos, String schemName) {
+        UUID playerId = player.getUUID();
+        if (!player.hasPermissions(PIAYNConfig.SCHEM_CAPTURE_PERMISSION.get())) {
+            player.displayClientMessage(Component.literal("§c[蓝图笔] 没有在服务端保存蓝图的权限"), true);
+            return;
+        }
+        if (ACTIVE_CAPTURES.containsKey(playerId)) {
+            player.displayClientMessage(Component.literal("§c[蓝图笔] 上一个蓝图仍在保存中"), true);
+            return;
+        }
+
+        // 选区由客户端提供，截取会在主线程读取区块：只接受玩家附近且已加载的区域，避免远程加载或生成区块
+        int maxDistance = PIAYNConfig.SCHEM_MAX_CAPTURE_DISTANCE.get();
+        if (!isNear(player, startPos, maxDistance) || !isNear(player, endPos, maxDistance)) {
+            player.displayClientMessage(Component.literal("§c[蓝图笔] 选区离玩家过远: 超过 " + maxDistance + " 格"), true);
+            return;
+        }
+        BoundingBox box = BoundingBox.fromCorners(startPos, endPos);
+        if (!player.serverLevel().hasChunksAt(box.minX(), box.minY(), box.minZ(), box.maxX(), box.maxY(), box.maxZ())) {
+            player.displayClientMessage(Component.literal("§c[蓝图笔] 选区包含未加载的区块"), true);
+            return;
+        }
+
+        StructureData structureData = new StructureData(player.serverLevel(), startPos, endPos, schemName, player.getName().getString());
+        long volume = (long) structureData.getWidth() * structureData.getHeight() * structureData.getLength();
+        int maxVolume = PIAYNConfig.SCHEM_MAX_CAPTURE_VOLUME.get();
+        if (volume > maxVolume) {
+            player.displayClientMessage(Component.literal("§c[蓝图笔] 选区过大: " + volume + " > " + maxVolume), true);
+            return;
+        }
+
+        SchemSaveJob job;
+        try {
+            job = new SchemSaveJob(structureData);
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Rejected capture request from {}: {}", player.getName().getString(), e.getMessage());
+            return;
+        }
+
+        // 只能覆盖自己截取的蓝图，其他已有蓝图（包括管理员放入目录的）一律拒绝
+        String fileName = job.getName();
+        boolean exists = Files.exists(SchemSerializer.DEFAULT_DIR.resolve(fileName));
+        if (exists && !playerId.equals(CaptureLedger.INSTANCE.getOwner(fileName))) {
+            player.displayClientMessage(Component.literal("§c[蓝图笔] 已存在同名蓝图: " + fileName), true);
+            return;
+        }
+        CaptureLedger.Usage usage = CaptureLedger.INSTANCE.getUsage(playerId);
+        int maxFiles = PIAYNConfig.SCHEM_CAPTURE_MAX_FILES.get();
+        if (!exists && usage.files() >= maxFiles) {
+            player.displayClientMessage(Component.literal("§c[蓝图笔] 已达到蓝图数量上限: " + maxFiles), true);
+            return;
+        }
+        long maxBytes = PIAYNConfig.SCHEM_CAPTURE_MAX_MB.get() * 1024L * 1024L;
+        if (usage.bytes() >= maxBytes) {
+            player.displayClientMessage(Component.literal("§c[蓝图笔] 已达到蓝图空间上限: " + PIAYNConfig.SCHEM_CAPTURE_MAX_MB.get() + " MB"), true);
+            return;
+        }
+        // 检查之后同名文件才出现时，写入会因目标已存在而失败，不会覆盖
+        job.replaceExisting(exists);
+        job.getResult().thenAccept(path -> CaptureLedger.INSTANCE.record(path.getFileName().toString(), playerId));
+
+        MinecraftServer server = player.server;
+        ProgressReporter reporter = new ProgressReporter(server, playerId);
+        job.setProgressListener(reporter::report);
+        ACTIVE_CAPTURES.put(playerId, job);
+        SchemJobScheduler.SERVER.submit(job);
+        LOGGER.info("Player {} started capturing {} ({} blocks) into {}", player.getName().getString(),
+            job.getName(), volume, SchemSerializer.DEFAULT_DIR);
+    }
+
+    /**
+     * 位置与玩家的水平距离（按坐标轴取最大值）是否在范围内
+     */
+    private static boolean isNear(@Nonnull ServerPlayer player, @Nonnull BlockPos pos, int maxDistance) {
+        BlockPos playerPos = player.blockPosition();
+        return Math.abs((long) pos.getX() - playerPos.getX()) <= maxDistance
+            && Math.abs((long) pos.getZ() - playerPos.getZ()) <= maxDistance;
+    }
+
+    /**
+     * 取消玩家当前的截取任务
+     */
+    public static void cancel(@Nonnull ServerPlayer player) {
+        SchemSaveJob job = ACTIVE_CAPTURES.get(player.getUUID());
+        if (job != null) {
+            job.cancel();
+        }
+    }
+
+    /**
+     * 清空登记，服务器关闭时调用
+     */
+    public static void clear() {
+        ACTIVE_CAPTURES.clear();
+    }
+
+    /**
+     * 节流地把任务进度发送给玩家，结束时移除登记
+     */
+    private static class ProgressReporter {
+        private final MinecraftServer server;
+        private final UUID playerId;
+        private int lastPercent = -1;
+
+        ProgressReporter(MinecraftServer server, UUID playerId) {
+            this.server = server;
+            this.playerId = playerId;
+        }
+
+        void report(SchemJob job) {
+            // 结束回调可能来自后台线程，统一回到服务端主线程
+            server.execute(() -> {
+                boolean finished = job.getState().isFinished();
+                int percent = (int) (job.getProgress() * 100);
+                if (!finished && percent == lastPercent) {
+                    return;
+                }
+                lastPercent = percent;
+                if (finished) {
+                    ACTIVE_CAPTURES.remove(playerId, job);
+                }
+                ServerPlayer player = server.getPlayerList().getPlayer(playerId);
+                if (player != null) {
+                    PacketDistributor.sendToPlayer(player, SchemCaptureStatusPacket.fromJob(job));
+                }
+            });
+        }
+    }
+
+    private ServerCaptureService() {
+        // 工具类，禁止实例化
+    }
+}
@@ -0,0 +1,408 @@
+package com.dwinovo.piayn.schem.library;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+
+import com.dwinovo.piayn.schem.SchemSerializer;
+import com.dwinovo.piayn.schem.data.DecodedSchematic;
+import com.dwinovo.piayn.schem.io.SchemSidecar;
+import com.dwinovo.piayn.schem.io.SchemStreamReader;
+import com.dwinovo.piayn.schem.pojo.SchemIndexEntry;
+import com.google.common.hash.Hashing;
+import com.mojang.logging.LogUtils;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.NbtAccounter;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.Tag;
+
+/**
+ * 蓝图库索引
+ * 把目录中每个蓝图的元数据、尺寸、方块数、调色板大小与内容哈希保存在索引文件中，
+ * 启动时只重新读取大小或修改时间变化的文件，之后由 WatchService 增量更新
+ * 索引在独立的守护线程中维护，列出与搜索只读内存中的记录
+ * 蓝图变化或删除时同时更新或删除已存在的旁路文件
+ */
+public class SchemLibrary {
+
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    public static final SchemLibrary INSTANCE = new SchemLibrary(SchemSerializer.DEFAULT_DIR);
+
+    private static final String INDEX_FILE = ".index.dat";
+    private static final String ENTRIES_KEY = "Entries";
+    private static final String SCHEM_SUFFIX = ".schem";
+    // 一批文件事件之后空闲多久才写回索引
+    private static final long SAVE_DELAY_MS = 500;
+    // 统计方块数时每次解码的数量
+    private static final int COUNT_BUFFER = 65536;
+    // 停止时等待监听线程写回索引的时长
+    private static final long STOP_TIMEOUT_MS = 5000;
+
+    private final Path directory;
+    private final Map<String, SchemIndexEntry> entries = new ConcurrentHashMap<>();
+
+    @Nullable
+    private Thread watchThread;
+    // 已停止但可能仍在写回索引的线程，下次启动前等待它结束
+    @Nullable
+    private Thread stoppedThread;
+    @Nullable
+    private volatile WatchService watchService;
+    private volatile boolean ready;
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    // 读写索引文件的锁，新旧监听线程可能短暂重叠
+    private final Object indexLock = new Object();
+
+    public SchemLibrary(@Nonnull Path directory) {
+        this.directory = directory;
+    }
+
+    // === 查询 ===
+
+    /**
+     * 所有已索引的蓝图，按文件名排序
+     */
+    @Nonnull
+    public List<SchemIndexEntry> list() {
+        return entries.values().stream()
+            .sorted(Comparator.comparing(SchemIndexEntry::getFileName))
+            .toList();
+    }
+
+    /**
+     * 按名称、作者或文件名搜索，不区分大小写
+     */
+    @Nonnull
+    public List<SchemIndexEntry> search(@Nonnull String query) {
+        String lowerCaseQuery = query.toLowerCase(Locale.ROOT);
+        return entries.values().stream()
+            .filter(entry -> entry.matchesQuery(lowerCaseQuery))
+            .sorted(Comparator.comparing(SchemIndexEntry::getFileName))
+            .toList();
+    }
+
+    @Nullable
+    public SchemIndexEntry get(@Nonnull String fileName) {
+        return entries.get(fileName);
+    }
+
+    @Nonnull
+    public Collection<String> getFileNames() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    /**
+     * 首次扫描是否已完成，未完成时列表可能不全
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    // === 生命周期 ===
+
+    /**
+     * 启动监听线程，首次扫描也在该线程中进行
+     * 上一次停止的线程尚未结束时先等待它写回索引
+     */
+    public void start() {
+        Thread previous;
+        synchronized (this) {
+            if (watchThread != null) {
+                return;
+            }
+            previous = stoppedThread;
+            stoppedThread = null;
+        }
+        if (previous != null) {
+            join(previous);
+        }
+        synchronized (this) {
+            if (watchThread != null) {
+                return;
+            }
+            Thread thread = new Thread(this::watchLoop, "PIAYN Schematic Library");
+            thread.setDaemon(true);
+            watchThread = thread;
+            thread.start();
+        }
+    }
+
+    /**
+     * 停止监听并等待监听线程写回索引，超时后由下次启动继续等待
+     */
+    public void stop() {
+        Thread thread;
+        synchronized (this) {
+            thread = watchThread;
+            if (thread == null) {
+                return;
+            }
+            watchThread = null;
+            stoppedThread = thread;
+            thread.interrupt();
+            closeWatchService();
+        }
+        // 在锁外等待，监听线程结束前还会访问本对象
+        join(thread);
+    }
+
+    private void closeWatchService() {
+        WatchService service = watchService;
+        if (service != null) {
+            try {
+                service.close();
+            } catch (IOException e) {
+                LOGGER.warn("Failed to close schematic watch service", e);
+            }
+        }
+    }
+
+    private static void join(@Nonnull Thread thread) {
+        try {
+            thread.join(STOP_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            LOGGER.warn("Schematic library watcher did not stop within {} ms", STOP_TIMEOUT_MS);
+        }
+    }
+
+    private void watchLoop() {
+        try {
+            Files.createDirectories(directory);
+            loadIndex();
+            try (WatchService service = FileSystems.getDefault().newWatchService()) {
+                synchronized (this) {
+                    // 线程已被停止时不再监听，停止方可能在服务创建之前就已关闭了旧的服务
+                    if (watchThread != Thread.currentThread()) {
+                        return;
+                    }
+                    watchService = service;
+                }
+                // 先注册再扫描，扫描期间的变化不会丢失
+                directory.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                rescan();
+                ready = true;
+                saveIfDirty();
+
+                while (!Thread.currentThread().isInterrupted()) {
+                    WatchKey key = dirty.get() ? service.poll(SAVE_DELAY_MS, TimeUnit.MILLISECONDS) : service.take();
+                    if (key == null) {
+                        saveIfDirty();
+                        continue;
+                    }
+                    handleEvents(key);
+                    if (!key.reset()) {
+                        LOGGER.warn("Schematic directory {} is no longer watched", directory);
+                        break;
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // 正常停止
+        } catch (IOException e) {
+            LOGGER.error("Schematic library watcher failed", e);
+        } finally {
+            saveIfDirty();
+        }
+    }
+
+    private void handleEvents(@Nonnull WatchKey key) {
+        // 同一批中同一文件只处理一次
+        Set<String> changed = new HashSet<>();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                rescan();
+                return;
+            }
+            if (event.context() instanceof Path path) {
+                String fileName = path.getFileName().toString();
+                if (fileName.endsWith(SCHEM_SUFFIX)) {
+                    changed.add(fileName);
+                }
+            }
+        }
+        for (String fileName : changed) {
+            update(fileName);
+        }
+    }
+
+    // === 索引维护 ===
+
+    /**
+     * 与目录内容对齐：移除消失的文件，重新索引新增或变化的文件
+     */
+    private void rescan() {
+        Set<String> present = new HashSet<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(path -> path.getFileName().toString())
+                .filter(name -> name.endsWith(SCHEM_SUFFIX))
+                .forEach(present::add);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to list schematic directory {}", directory, e);
+            return;
+        }
+        for (String fileName : entries.keySet()) {
+            if (!present.contains(fileName)) {
+                entries.remove(fileName);
+                SchemSidecar.delete(directory.resolve(fileName));
+                dirty.set(true);
+            }
+        }
+        for (String fileName : present) {
+            update(fileName);
+        }
+    }
+
+    /**
+     * 重新索引单个文件，大小与修改时间未变时跳过
+     */
+    private void update(@Nonnull String fileName) {
+        Path path = directory.resolve(fileName);
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            // 文件已删除
+            if (entries.remove(fileName) != null) {
+                dirty.set(true);
+            }
+            SchemSidecar.delete(path);
+            return;
+        }
+        long fileSize = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        SchemIndexEntry existing = entries.get(fileName);
+        if (existing != null && existing.matches(fileSize, lastModified)) {
+            return;
+        }
+        try {
+            entries.put(fileName, index(path, fileName, fileSize, lastModified));
+            dirty.set(true);
+            SchemSidecar.refreshIfPresent(path);
+        } catch (Exception e) {
+            // 文件可能仍在写入，之后的修改事件会再次触发
+            LOGGER.debug("Failed to index schematic {}", fileName, e);
+        }
+    }
+
+    @Nonnull
+    private SchemIndexEntry index(@Nonnull Path path, @Nonnull String fileName, long fileSize, long lastModified) throws IOException {
+        String contentHash = com.google.common.io.Files.asByteSource(path.toFile()).hash(Hashing.sha256()).toString();
+        try (SchemStreamReader reader = SchemStreamReader.open(path)) {
+            CompoundTag metadata = reader.getMetadata();
+            String schemName = null;
+            String authorName = null;
+            long date = 0;
+            if (metadata != null) {
+                schemName = metadata.contains(SchemSerializer.NAME_KEY) ? metadata.getString(SchemSerializer.NAME_KEY) : null;
+                authorName = metadata.contains(SchemSerializer.AUTHOR_KEY) ? metadata.getString(SchemSerializer.AUTHOR_KEY) : null;
+                date = metadata.getLong(SchemSerializer.DATE_KEY);
+            }
+
+            // 统计非空气方块
+            byte[] paletteFlags = DecodedSchematic.computeFlags(reader.getPalette());
+            byte skipFlags = DecodedSchematic.FLAG_AIR | DecodedSchematic.FLAG_INVALID;
+            int[] buffer = new int[COUNT_BUFFER];
+            long blockCount = 0;
+            int count;
+            while ((count = reader.readBlocks(buffer, 0, buffer.length)) > 0) {
+                for (int i = 0; i < count; i++) {
+                    int paletteIndex = buffer[i];
+                    if (paletteIndex >= 0 && paletteIndex < paletteFlags.length && (paletteFlags[paletteIndex] & skipFlags) == 0) {
+                        blockCount++;
+                    }
+                }
+            }
+
+            return new SchemIndexEntry(fileName, fileSize, lastModified, schemName, authorName, date,
+                reader.getWidth(), reader.getHeight(), reader.getLength(),
+                blockCount, reader.getPalette().length, contentHash);
+        }
+    }
+
+    private void loadIndex() {
+        Path indexPath = directory.resolve(INDEX_FILE);
+        synchronized (indexLock) {
+            if (!Files.isRegularFile(indexPath)) {
+                return;
+            }
+            try {
+                CompoundTag root = NbtIo.readCompressed(indexPath, NbtAccounter.unlimitedHeap());
+                ListTag list = root.getList(ENTRIES_KEY, Tag.TAG_COMPOUND);
+                for (int i = 0; i < list.size(); i++) {
+                    SchemIndexEntry entry = SchemIndexEntry.fromTag(list.getCompound(i));
+                    entries.put(entry.getFileName(), entry);
+                }
+            } catch (IOException e) {
+                // 索引损坏时重新扫描即可
+                LOGGER.warn("Failed to read schematic index, rebuilding", e);
+                entries.clear();
+            }
+        }
+    }
+
+    private void saveIfDirty() {
+        // 先清除标记再取记录，之后的修改会重新标记
+        if (!dirty.getAndSet(false)) {
+            return;
+        }
+        ListTag list = new ListTag();
+        for (SchemIndexEntry entry : entries.values()) {
+            list.add(entry.toTag());
+        }
+        CompoundTag root = new CompoundTag();
+        root.put(ENTRIES_KEY, list);
+
+        Path indexPath = directory.resolve(INDEX_FILE);
+        synchronized (indexLock) {
+            try {
+                // 每次写入使用独立的临时文件
+                Path tempPath = Files.createTempFile(directory, INDEX_FILE, ".tmp");
+                try {
+                    NbtIo.writeCompressed(root, tempPath);
+                    try {
+                        Files.move(tempPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    } catch (AtomicMoveNotSupportedException e) {
+                        Files.move(tempPath, indexPath, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                } finally {
+                    Files.deleteIfExists(tempPath);
+                }
+            } catch (IOException e) {
+                dirty.set(true);
+                LOGGER.warn("Failed to write schematic index", e);
+            }
+        }
+    }
+}
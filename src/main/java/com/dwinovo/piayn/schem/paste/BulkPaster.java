@@ -0,0 +1,438 @@
+package com.dwinovo.piayn.schem.paste;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+
+import com.dwinovo.piayn.schem.data.DecodedSchematic;
+import com.dwinovo.piayn.schem.pojo.PasteOptions;
+import com.dwinovo.piayn.schem.undo.PasteJournal;
+import com.dwinovo.piayn.schem.util.BlockEntityUtil;
+import com.mojang.logging.LogUtils;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.network.protocol.game.ClientboundLevelChunkWithLightPacket;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.server.level.ThreadedLevelLightEngine;
+import net.minecraft.world.entity.ai.village.poi.PoiTypes;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.EntityBlock;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.chunk.PalettedContainer;
+import net.minecraft.world.level.levelgen.Heightmap;
+import net.minecraft.world.level.material.Fluid;
+import net.minecraft.world.level.lighting.LightEngine;
+
+/**
+ * 区块段级批量粘贴
+ * 直接写入 LevelChunkSection，不触发邻居更新与逐方块同步：
+ * 1. 按 {@link DecodedSchematic} 的放置位集跳过空气，写入方块状态，同步维护高度图、方块实体与兴趣点
+ * 2. 区块段空/非空变化时更新一次光照段状态，只对光照属性变化的方块做光照检查
+ * 3. 每个区块写完后把整个区块重新发送给正在观察的玩家一次
+ * 每次调用 {@link #pasteChunk(int, int)} 处理一个区块列，便于分帧执行
+ * 关闭 {@link PasteOptions#isBulk()} 时退回逐方块 setBlock，仍按区块列分片
+ * 差异模式（{@link PasteOptions#isDiff()}）先与世界比较出差异位集，只访问与世界不同的位置；
+ * 差异可以由 {@link #createDiff} 在主线程快照后于后台线程并行计算
+ * 旋转与镜像见 {@link PasteTransform}：调色板预先变换，放置位集换成目标顺序，
+ * 循环中源数据下标按行线性递推，与不变换时开销相同
+ * 逐区块段的写入与差异循环在不访问世界的 {@link SectionPaster} 中
+ * 设置 {@link PasteJournal} 后，每个实际改变的方块与被覆盖的方块实体在写入前记录下来，用于撤销
+ */
+public class BulkPaster {
+
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    private final ServerLevel level;
+    private final BlockPos targetPos;
+    private final SectionPaster core;
+    // 变换后的尺寸
+    private final int width;
+    private final int height;
+    private final int length;
+    private final PasteOptions options;
+    private final PasteTransform transform;
+
+    // 按区块分组的方块实体数据
+    private final Long2ObjectMap<List<CompoundTag>> blockEntitiesByChunk = new Long2ObjectOpenHashMap<>();
+
+    private final int minChunkX;
+    private final int minChunkZ;
+    private final int maxChunkX;
+    private final int maxChunkZ;
+
+    // 待做光照检查、流体刻的位置，跨区块复用
+    private final LongArrayList lightChecks = new LongArrayList();
+    private final LongArrayList fluidTicks = new LongArrayList();
+    private int blocksPlaced;
+    // 撤销日志，为 null 时不记录
+    @Nullable
+    private PasteJournal journal;
+
+    public BulkPaster(@Nonnull ServerLevel level, @Nonnull BlockPos targetPos,
+                      @Nonnull DecodedSchematic schematic, @Nonnull PasteOptions options) {
+        this.level = level;
+        this.targetPos = targetPos.immutable();
+        this.core = new SectionPaster(targetPos, schematic, options);
+        this.transform = core.getTransform();
+        this.width = core.getWidth();
+        this.height = core.getHeight();
+        this.length = core.getLength();
+        this.options = options;
+
+        this.minChunkX = SectionPos.blockToSectionCoord(targetPos.getX());
+        this.minChunkZ = SectionPos.blockToSectionCoord(targetPos.getZ());
+        this.maxChunkX = SectionPos.blockToSectionCoord(targetPos.getX() + width - 1);
+        this.maxChunkZ = SectionPos.blockToSectionCoord(targetPos.getZ() + length - 1);
+
+        if (options.isPasteBlockEntities()) {
+            for (CompoundTag sourceTag : schematic.getBlockEntityTags()) {
+                CompoundTag blockEntityTag = transform.transformBlockEntity(sourceTag);
+                int[] relativePos = blockEntityTag.getIntArray("Pos");
+                if (relativePos.length != 3) {
+                    continue;
+                }
+                long chunkKey = ChunkPos.asLong(
+                    SectionPos.blockToSectionCoord(targetPos.getX() + relativePos[0]),
+                    SectionPos.blockToSectionCoord(targetPos.getZ() + relativePos[2]));
+                blockEntitiesByChunk.computeIfAbsent(chunkKey, key -> new ArrayList<>()).add(blockEntityTag);
+            }
+        }
+    }
+
+    /**
+     * 一次性粘贴所有区块
+     */
+    public int pasteAll() {
+        for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+            for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+                pasteChunk(chunkX, chunkZ);
+            }
+        }
+        return blocksPlaced;
+    }
+
+    /**
+     * 粘贴区域与某个区块列的交集，差异模式下先在主线程就地比较
+     * @return 该区块中实际改变的方块数
+     */
+    public int pasteChunk(int chunkX, int chunkZ) {
+        return pasteChunk(chunkX, chunkZ, options.isDiff() ? createDiff(chunkX, chunkZ, false) : null);
+    }
+
+    /**
+     * 粘贴区域与某个区块列的交集
+     * @param diff 不为 null 时只放置差异位集中的位置
+     * @return 该区块中实际改变的方块数
+     */
+    public int pasteChunk(int chunkX, int chunkZ, @Nullable ChunkDiff diff) {
+        LevelChunk chunk = level.getChunk(chunkX, chunkZ);
+        ThreadedLevelLightEngine lightEngine = level.getChunkSource().getLightEngine();
+
+        // 区域与区块的交集（世界坐标，包含）
+        final int x0 = Math.max(targetPos.getX(), SectionPos.sectionToBlockCoord(chunkX));
+        final int x1 = Math.min(targetPos.getX() + width - 1, SectionPos.sectionToBlockCoord(chunkX, 15));
+        final int z0 = Math.max(targetPos.getZ(), SectionPos.sectionToBlockCoord(chunkZ));
+        final int z1 = Math.min(targetPos.getZ() + length - 1, SectionPos.sectionToBlockCoord(chunkZ, 15));
+        final int minY = Math.max(targetPos.getY(), level.getMinBuildHeight());
+        final int maxY = Math.min(targetPos.getY() + height - 1, level.getMaxBuildHeight() - 1);
+        if (x0 > x1 || z0 > z1 || minY > maxY) {
+            return 0;
+        }
+        final long[] diffWords = diff != null ? diff.getMask().toLongArray() : null;
+
+        if (!options.isBulk()) {
+            return pasteChunkWithSetBlock(chunkX, chunkZ, x0, x1, minY, maxY, z0, z1, diffWords);
+        }
+
+        Heightmap[] heightmaps = chunk.getHeightmaps().stream().map(Map.Entry::getValue).toArray(Heightmap[]::new);
+        BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+        SectionPaster.ChangeListener listener = (x, y, z, oldState, state, flags) -> {
+            pos.set(x, y, z);
+            if (journal != null) {
+                record(chunk, pos, oldState);
+            }
+            afterBlockChanged(chunk, heightmaps, pos, oldState, state, flags);
+        };
+        int changed = 0;
+
+        for (int sectionY = SectionPos.blockToSectionCoord(minY); sectionY <= SectionPos.blockToSectionCoord(maxY); sectionY++) {
+            LevelChunkSection section = chunk.getSection(chunk.getSectionIndexFromSectionY(sectionY));
+            final boolean wasEmpty = section.hasOnlyAir();
+            changed += core.pasteSection(section::setBlockState, chunkX, sectionY, chunkZ, minY, maxY, diffWords, listener);
+
+            // 区块段空/非空状态变化时更新光照段，只做一次
+            boolean isEmpty = section.hasOnlyAir();
+            if (wasEmpty != isEmpty) {
+                lightEngine.updateSectionStatus(SectionPos.of(chunkX, sectionY, chunkZ), isEmpty);
+            }
+        }
+
+        // 光照检查放在整个区块写完之后，避免检查到一半写入的状态
+        for (int i = 0, size = lightChecks.size(); i < size; i++) {
+            lightEngine.checkBlock(pos.set(lightChecks.getLong(i)));
+        }
+        lightChecks.clear();
+
+        // 含流体的状态需要流体刻才会流动
+        for (int i = 0, size = fluidTicks.size(); i < size; i++) {
+            pos.set(fluidTicks.getLong(i));
+            Fluid fluid = chunk.getFluidState(pos).getType();
+            level.scheduleTick(pos.immutable(), fluid, fluid.getTickDelay(level));
+        }
+        fluidTicks.clear();
+
+        pasteBlockEntities(chunkX, chunkZ);
+
+        if (changed > 0) {
+            chunk.setUnsaved(true);
+            resendChunk(chunk, lightEngine);
+        }
+        blocksPlaced += changed;
+        return changed;
+    }
+
+    /**
+     * 非批量模式：逐方块 setBlock，保留邻居更新与逐方块同步
+     */
+    private int pasteChunkWithSetBlock(int chunkX, int chunkZ, int x0, int x1, int minY, int maxY, int z0, int z1,
+                                       @Nullable long[] diffWords) {
+        LevelChunk chunk = level.getChunk(chunkX, chunkZ);
+        BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+        final int chunkMinX = SectionPos.sectionToBlockCoord(chunkX);
+        // 差异模式下迭代差异位集，否则迭代放置位集；两者都满足 下标 = rowBase + 世界 x
+        final long[] words = diffWords != null ? diffWords : core.getPlaceWords();
+        int changed = 0;
+        for (int y = minY; y <= maxY; y++) {
+            for (int z = z0; z <= z1; z++) {
+                final int rowBase = diffWords != null
+                    ? SectionPaster.diffIndex(0, y - minY, z & 15) - chunkMinX
+                    : core.rowBase(y, z);
+                final int sourceRowBase = core.sourceRowBase(y, z);
+                final int rowEnd = rowBase + x1;
+                for (int i = SectionPaster.nextSetBit(words, rowBase + x0, rowEnd); i >= 0; i = SectionPaster.nextSetBit(words, i + 1, rowEnd)) {
+                    final int x = i - rowBase;
+                    BlockState state = core.stateAt(sourceRowBase, x);
+                    BlockState oldState = chunk.getBlockState(pos.set(x, y, z));
+                    if (oldState == state) {
+                        continue;
+                    }
+                    if (journal != null) {
+                        record(chunk, pos, oldState);
+                    }
+                    if (level.setBlock(pos, state, Block.UPDATE_ALL)) {
+                        changed++;
+                    }
+                }
+            }
+        }
+        pasteBlockEntities(chunkX, chunkZ);
+        blocksPlaced += changed;
+        return changed;
+    }
+
+    // === 差异粘贴 ===
+
+    /**
+     * 在主线程取得区块列的差异快照
+     * @param copy 为 true 时复制区块段的状态容器，之后可以在任意线程计算差异；
+     *             为 false 时直接引用，只能立即在主线程计算
+     */
+    @Nonnull
+    public ChunkDiff createDiff(int chunkX, int chunkZ, boolean copy) {
+        LevelChunk chunk = level.getChunk(chunkX, chunkZ);
+        final int minY = Math.max(targetPos.getY(), level.getMinBuildHeight());
+        final int maxY = Math.min(targetPos.getY() + height - 1, level.getMaxBuildHeight() - 1);
+        List<PalettedContainer<BlockState>> states = new ArrayList<>();
+        for (int sectionY = SectionPos.blockToSectionCoord(minY); sectionY <= SectionPos.blockToSectionCoord(maxY); sectionY++) {
+            PalettedContainer<BlockState> sectionStates = chunk.getSection(chunk.getSectionIndexFromSectionY(sectionY)).getStates();
+            states.add(copy ? sectionStates.copy() : sectionStates);
+        }
+        return new ChunkDiff(chunkX, chunkZ, minY, maxY, states);
+    }
+
+    /**
+     * 一个区块列的差异：与世界中已有状态不同、需要放置的位置，由 {@link SectionPaster#computeDiff} 计算
+     * 只比较方块状态，不比较方块实体数据；方块实体仍会全部重新载入
+     * 基于复制的快照计算时，快照之后世界中的变化不会被看到
+     */
+    public final class ChunkDiff {
+        private final int chunkX;
+        private final int chunkZ;
+        private final int minY;
+        private final int maxY;
+        // 从 minY 所在区块段开始的状态容器，计算后释放
+        @Nullable
+        private List<PalettedContainer<BlockState>> states;
+        @Nullable
+        private BitSet mask;
+
+        private ChunkDiff(int chunkX, int chunkZ, int minY, int maxY, @Nonnull List<PalettedContainer<BlockState>> states) {
+            this.chunkX = chunkX;
+            this.chunkZ = chunkZ;
+            this.minY = minY;
+            this.maxY = maxY;
+            this.states = states;
+        }
+
+        /**
+         * 差异位集，首次调用时计算；按 {@link SectionPaster#diffIndex} 编址
+         */
+        @Nonnull
+        public synchronized BitSet getMask() {
+            if (mask == null) {
+                mask = states != null ? core.computeDiff(chunkX, chunkZ, minY, maxY, states) : new BitSet();
+                states = null;
+            }
+            return mask;
+        }
+
+        public int getChunkX() {
+            return chunkX;
+        }
+
+        public int getChunkZ() {
+            return chunkZ;
+        }
+    }
+
+    /**
+     * 在方块被覆盖之前记录旧状态与旧方块实体
+     */
+    private void record(@Nonnull LevelChunk chunk, @Nonnull BlockPos pos, @Nonnull BlockState oldState) {
+        journal.recordBlock(pos.getX(), pos.getY(), pos.getZ(), oldState);
+        if (oldState.hasBlockEntity() && !journal.hasBlockEntity(pos)) {
+            journal.recordBlockEntity(level, pos, chunk.getBlockEntity(pos, LevelChunk.EntityCreationType.CHECK));
+        }
+    }
+
+    private void afterBlockChanged(@Nonnull LevelChunk chunk, @Nonnull Heightmap[] heightmaps,
+                                   @Nonnull BlockPos.MutableBlockPos pos,
+                                   @Nonnull BlockState oldState, @Nonnull BlockState state, byte flags) {
+        final int localX = pos.getX() & 15;
+        final int localZ = pos.getZ() & 15;
+        for (Heightmap heightmap : heightmaps) {
+            heightmap.update(localX, pos.getY(), localZ, state);
+        }
+
+        // 方块实体：方块变化或新状态不需要时移除，需要时复用或新建
+        if (oldState.hasBlockEntity() && (!oldState.is(state.getBlock()) || (flags & DecodedSchematic.FLAG_BLOCK_ENTITY) == 0)) {
+            chunk.removeBlockEntity(pos);
+        }
+        if ((flags & DecodedSchematic.FLAG_BLOCK_ENTITY) != 0) {
+            BlockEntity blockEntity = chunk.getBlockEntity(pos, LevelChunk.EntityCreationType.CHECK);
+            if (blockEntity == null) {
+                blockEntity = ((EntityBlock) state.getBlock()).newBlockEntity(pos.immutable(), state);
+                if (blockEntity != null) {
+                    chunk.addAndRegisterBlockEntity(blockEntity);
+                }
+            } else {
+                blockEntity.setBlockState(state);
+            }
+        }
+
+        if (LightEngine.hasDifferentLightProperties(chunk, pos, oldState, state)) {
+            lightChecks.add(pos.asLong());
+        }
+        if ((flags & DecodedSchematic.FLAG_POST_PROCESS) != 0) {
+            fluidTicks.add(pos.asLong());
+        }
+        // 兴趣点（村民工作站、床、传送门等），先过滤以免为普通方块创建位置对象
+        if (PoiTypes.forState(oldState).isPresent() || PoiTypes.forState(state).isPresent()) {
+            level.onBlockStateChange(pos.immutable(), oldState, state);
+        }
+    }
+
+    private void pasteBlockEntities(int chunkX, int chunkZ) {
+        List<CompoundTag> blockEntityTags = blockEntitiesByChunk.remove(ChunkPos.asLong(chunkX, chunkZ));
+        if (blockEntityTags == null) {
+            return;
+        }
+        BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+        for (CompoundTag blockEntityTag : blockEntityTags) {
+            if (journal != null) {
+                // 方块状态未改变但数据会被覆盖的方块实体
+                int[] relativePos = blockEntityTag.getIntArray("Pos");
+                pos.set(targetPos.getX() + relativePos[0], targetPos.getY() + relativePos[1], targetPos.getZ() + relativePos[2]);
+                if (!journal.hasBlockEntity(pos)) {
+                    journal.recordBlockEntity(level, pos, level.getBlockEntity(pos));
+                }
+            }
+            try {
+                BlockEntityUtil.pasteBlockEntity(level, blockEntityTag, targetPos);
+            } catch (Exception e) {
+                LOGGER.warn("Failed to paste block entity {}", blockEntityTag.getString("Id"), e);
+            }
+        }
+    }
+
+    /**
+     * 把整个区块重新发送给观察者，代替逐方块的更新包
+     */
+    private void resendChunk(@Nonnull LevelChunk chunk, @Nonnull ThreadedLevelLightEngine lightEngine) {
+        List<ServerPlayer> players = level.getChunkSource().chunkMap.getPlayers(chunk.getPos(), false);
+        if (players.isEmpty()) {
+            return;
+        }
+        ClientboundLevelChunkWithLightPacket packet = new ClientboundLevelChunkWithLightPacket(chunk, lightEngine, null, null);
+        for (ServerPlayer player : players) {
+            player.connection.send(packet);
+        }
+    }
+
+    public int getMinChunkX() {
+        return minChunkX;
+    }
+
+    public int getMinChunkZ() {
+        return minChunkZ;
+    }
+
+    public int getMaxChunkX() {
+        return maxChunkX;
+    }
+
+    public int getMaxChunkZ() {
+        return maxChunkZ;
+    }
+
+    public int getBlocksPlaced() {
+        return blocksPlaced;
+    }
+
+    @Nonnull
+    public PasteOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * 设置撤销日志，需在粘贴开始前调用
+     */
+    public void setJournal(@Nullable PasteJournal journal) {
+        this.journal = journal;
+    }
+
+    @Nullable
+    public PasteJournal getJournal() {
+        return journal;
+    }
+
+    @Nonnull
+    public PasteTransform getTransform() {
+        return transform;
+    }
+}
@@ -0,0 +1,236 @@
+package com.dwinovo.piayn.schem.paste;
+
+import java.util.BitSet;
+import javax.annotation.Nonnull;
+
+import com.dwinovo.piayn.schem.pojo.PasteOptions;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.world.level.block.Mirror;
+import net.minecraft.world.level.block.Rotation;
+import net.minecraft.world.level.block.state.BlockState;
+
+/**
+ * 粘贴时的水平旋转与镜像
+ * 与原版结构模板相同，先镜像再旋转；变换后区域的最小角仍对齐粘贴位置
+ * 方块状态只按调色板条目变换一次；坐标变换折叠成数据下标的线性映射：
+ * 目标层内位置 (dx, dz) 对应源数据下标 origin + dx * strideX + dz * strideZ
+ */
+public class PasteTransform {
+
+    private final Rotation rotation;
+    private final Mirror mirror;
+    // 源蓝图尺寸
+    private final int sourceWidth;
+    private final int sourceLength;
+    // 变换后的尺寸
+    private final int width;
+    private final int length;
+
+    // 目标层内位置 -> 源层内下标
+    private final int origin;
+    private final int strideX;
+    private final int strideZ;
+
+    public PasteTransform(int sourceWidth, int sourceLength, @Nonnull Rotation rotation, @Nonnull Mirror mirror) {
+        this.rotation = rotation;
+        this.mirror = mirror;
+        this.sourceWidth = sourceWidth;
+        this.sourceLength = sourceLength;
+        boolean swap = rotation == Rotation.CLOCKWISE_90 || rotation == Rotation.COUNTERCLOCKWISE_90;
+        this.width = swap ? sourceLength : sourceWidth;
+        this.length = swap ? sourceWidth : sourceLength;
+
+        this.origin = sourceIndex(0, 0);
+        this.strideX = sourceIndex(1, 0) - origin;
+        this.strideZ = sourceIndex(0, 1) - origin;
+    }
+
+    @Nonnull
+    public static PasteTransform of(@Nonnull PasteOptions options, int sourceWidth, int sourceLength) {
+        return new PasteTransform(sourceWidth, sourceLength, options.getRotation(), options.getMirror());
+    }
+
+    public boolean isIdentity() {
+        return rotation == Rotation.NONE && mirror == Mirror.NONE;
+    }
+
+    // === 方块坐标 ===
+
+    /**
+     * 源方块坐标变换后的 x
+     */
+    public int transformX(int x, int z) {
+        int mirroredX = mirror == Mirror.FRONT_BACK ? sourceWidth - 1 - x : x;
+        int mirroredZ = mirror == Mirror.LEFT_RIGHT ? sourceLength - 1 - z : z;
+        return switch (rotation) {
+            case NONE -> mirroredX;
+            case CLOCKWISE_90 -> sourceLength - 1 - mirroredZ;
+            case CLOCKWISE_180 -> sourceWidth - 1 - mirroredX;
+            case COUNTERCLOCKWISE_90 -> mirroredZ;
+        };
+    }
+
+    /**
+     * 源方块坐标变换后的 z
+     */
+    public int transformZ(int x, int z) {
+        int mirroredX = mirror == Mirror.FRONT_BACK ? sourceWidth - 1 - x : x;
+        int mirroredZ = mirror == Mirror.LEFT_RIGHT ? sourceLength - 1 - z : z;
+        return switch (rotation) {
+            case NONE -> mirroredZ;
+            case CLOCKWISE_90 -> mirroredX;
+            case CLOCKWISE_180 -> sourceLength - 1 - mirroredZ;
+            case COUNTERCLOCKWISE_90 -> sourceWidth - 1 - mirroredX;
+        };
+    }
+
+    /**
+     * 目标层内位置对应的源层内下标（x + z * sourceWidth），是 dx、dz 的线性函数
+     */
+    private int sourceIndex(int dx, int dz) {
+        // 先撤销旋转
+        int mirroredX;
+        int mirroredZ;
+        switch (rotation) {
+            case CLOCKWISE_90 -> {
+                mirroredX = dz;
+                mirroredZ = sourceLength - 1 - dx;
+            }
+            case CLOCKWISE_180 -> {
+                mirroredX = sourceWidth - 1 - dx;
+                mirroredZ = sourceLength - 1 - dz;
+            }
+            case COUNTERCLOCKWISE_90 -> {
+                mirroredX = sourceWidth - 1 - dz;
+                mirroredZ = dx;
+            }
+            default -> {
+                mirroredX = dx;
+                mirroredZ = dz;
+            }
+        }
+        // 再撤销镜像
+        int x = mirror == Mirror.FRONT_BACK ? sourceWidth - 1 - mirroredX : mirroredX;
+        int z = mirror == Mirror.LEFT_RIGHT ? sourceLength - 1 - mirroredZ : mirroredZ;
+        return x + z * sourceWidth;
+    }
+
+    // === 实体坐标 ===
+
+    /**
+     * 源实体坐标（相对区域原点的连续坐标）变换后的 x
+     */
+    public double transformX(double x, double z) {
+        double mirroredX = mirror == Mirror.FRONT_BACK ? sourceWidth - x : x;
+        double mirroredZ = mirror == Mirror.LEFT_RIGHT ? sourceLength - z : z;
+        return switch (rotation) {
+            case NONE -> mirroredX;
+            case CLOCKWISE_90 -> sourceLength - mirroredZ;
+            case CLOCKWISE_180 -> sourceWidth - mirroredX;
+            case COUNTERCLOCKWISE_90 -> mirroredZ;
+        };
+    }
+
+    /**
+     * 源实体坐标（相对区域原点的连续坐标）变换后的 z
+     */
+    public double transformZ(double x, double z) {
+        double mirroredX = mirror == Mirror.FRONT_BACK ? sourceWidth - x : x;
+        double mirroredZ = mirror == Mirror.LEFT_RIGHT ? sourceLength - z : z;
+        return switch (rotation) {
+            case NONE -> mirroredZ;
+            case CLOCKWISE_90 -> mirroredX;
+            case CLOCKWISE_180 -> sourceLength - mirroredZ;
+            case COUNTERCLOCKWISE_90 -> sourceWidth - mirroredX;
+        };
+    }
+
+    // === 批量变换 ===
+
+    /**
+     * 逐调色板条目变换方块状态，null 条目保持为 null
+     */
+    @Nonnull
+    public BlockState[] transformPalette(@Nonnull BlockState[] palette) {
+        if (isIdentity()) {
+            return palette;
+        }
+        BlockState[] transformed = new BlockState[palette.length];
+        for (int i = 0; i < palette.length; i++) {
+            if (palette[i] != null) {
+                transformed[i] = palette[i].mirror(mirror).rotate(rotation);
+            }
+        }
+        return transformed;
+    }
+
+    /**
+     * 把按源数据下标的位集转为按目标数据下标
+     */
+    @Nonnull
+    public BitSet transformMask(@Nonnull BitSet sourceMask) {
+        if (isIdentity()) {
+            return sourceMask;
+        }
+        final int layerSize = sourceWidth * sourceLength;
+        BitSet mask = new BitSet(sourceMask.length());
+        for (int i = sourceMask.nextSetBit(0); i >= 0; i = sourceMask.nextSetBit(i + 1)) {
+            int y = i / layerSize;
+            int x = i % sourceWidth;
+            int z = i % layerSize / sourceWidth;
+            mask.set(transformX(x, z) + transformZ(x, z) * width + y * layerSize);
+        }
+        return mask;
+    }
+
+    /**
+     * 方块实体 Pos 变换后的副本
+     */
+    @Nonnull
+    public CompoundTag transformBlockEntity(@Nonnull CompoundTag blockEntityTag) {
+        int[] pos = blockEntityTag.getIntArray("Pos");
+        if (isIdentity() || pos.length != 3) {
+            return blockEntityTag;
+        }
+        CompoundTag transformed = blockEntityTag.copy();
+        transformed.putIntArray("Pos", new int[]{transformX(pos[0], pos[2]), pos[1], transformZ(pos[0], pos[2])});
+        return transformed;
+    }
+
+    @Nonnull
+    public Rotation getRotation() {
+        return rotation;
+    }
+
+    @Nonnull
+    public Mirror getMirror() {
+        return mirror;
+    }
+
+    /**
+     * 变换后的 x 方向尺寸
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * 变换后的 z 方向尺寸
+     */
+    public int getLength() {
+        return length;
+    }
+
+    public int getOrigin() {
+        return origin;
+    }
+
+    public int getStrideX() {
+        return strideX;
+    }
+
+    public int getStrideZ() {
+        return strideZ;
+    }
+}
@@ -0,0 +1,272 @@
+package com.dwinovo.piayn.schem.paste;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.dwinovo.piayn.schem.data.BlockIndexStorage;
+import com.dwinovo.piayn.schem.data.DecodedSchematic;
+import com.dwinovo.piayn.schem.pojo.PasteOptions;
+
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.PalettedContainer;
+
+/**
+ * 区块段级粘贴的核心：蓝图数据、放置位集与逐区块段的写入、差异循环，不访问世界
+ * {@link BulkPaster} 在此之上处理区块、高度图、方块实体、光照与同步；
+ * 也可以直接写入不属于任何世界的区块段，例如基准测试
+ * 坐标均为世界坐标，区块段内坐标取低 4 位
+ */
+public class SectionPaster {
+
+    /**
+     * 写入区块段中的一个方块并返回原状态，
+     * 世界中为 LevelChunkSection#setBlockState，也可以是 PalettedContainer#getAndSet
+     */
+    @FunctionalInterface
+    public interface SectionWriter {
+        @Nonnull
+        BlockState setBlockState(int localX, int localY, int localZ, @Nonnull BlockState state);
+    }
+
+    /**
+     * 方块实际改变后调用，flags 为调色板条目的属性
+     */
+    @FunctionalInterface
+    public interface ChangeListener {
+        void onChanged(int x, int y, int z, @Nonnull BlockState oldState, @Nonnull BlockState state, byte flags);
+    }
+
+    private final BlockPos targetPos;
+    private final BlockState[] palette;
+    private final byte[] paletteFlags;
+    private final BlockIndexStorage blocks;
+    // 放置位集的 long 数组形式，按目标数据下标（变换后的 x + z * width + y * width * length）
+    // 逐行查找时用 {@link #nextSetBit(long[], int, int)} 限定在行内，不会越过行尾扫描后续的空气
+    private final long[] placeWords;
+    // 变换后的尺寸
+    private final int width;
+    private final int height;
+    private final int length;
+    private final PasteTransform transform;
+    // 源数据一层的大小，以及目标 x 增加 1 时源下标的增量
+    private final int sourceLayerSize;
+    private final int strideX;
+    // 会被放置的调色板状态，差异计算时与区块段调色板比较
+    private final Set<BlockState> placedStates = new ReferenceOpenHashSet<>();
+
+    public SectionPaster(@Nonnull BlockPos targetPos, @Nonnull DecodedSchematic schematic, @Nonnull PasteOptions options) {
+        this.targetPos = targetPos.immutable();
+        this.transform = PasteTransform.of(options, schematic.getWidth(), schematic.getLength());
+        this.palette = transform.transformPalette(schematic.getPalette());
+        this.paletteFlags = transform.isIdentity() ? schematic.getPaletteFlags() : DecodedSchematic.computeFlags(palette);
+        this.blocks = schematic.getBlocks();
+        this.placeWords = transform.transformMask(schematic.getPlaceMask(options.isPasteAir())).toLongArray();
+        this.width = transform.getWidth();
+        this.height = schematic.getHeight();
+        this.length = transform.getLength();
+        this.sourceLayerSize = schematic.getWidth() * schematic.getLength();
+        this.strideX = transform.getStrideX();
+        final byte skipFlags = options.isPasteAir()
+            ? DecodedSchematic.FLAG_INVALID : (byte) (DecodedSchematic.FLAG_INVALID | DecodedSchematic.FLAG_AIR);
+        for (int i = 0; i < palette.length; i++) {
+            if ((paletteFlags[i] & skipFlags) == 0) {
+                placedStates.add(palette[i]);
+            }
+        }
+    }
+
+    /**
+     * 把区域与一个区块段的交集写入区块段
+     * @param minY 粘贴的最低层，已按建筑高度裁剪；差异位集的 y 相对于它
+     * @param maxY 粘贴的最高层，已按建筑高度裁剪
+     * @param diffWords 不为 null 时只写入差异位集中的位置，按 {@link #diffIndex} 编址
+     * @param listener 不为 null 时在每个实际改变的方块之后调用
+     * @return 实际改变的方块数
+     */
+    public int pasteSection(@Nonnull SectionWriter writer, int chunkX, int sectionY, int chunkZ, int minY, int maxY,
+                            @Nullable long[] diffWords, @Nullable ChangeListener listener) {
+        final int x0 = Math.max(targetPos.getX(), SectionPos.sectionToBlockCoord(chunkX));
+        final int x1 = Math.min(targetPos.getX() + width - 1, SectionPos.sectionToBlockCoord(chunkX, 15));
+        final int z0 = Math.max(targetPos.getZ(), SectionPos.sectionToBlockCoord(chunkZ));
+        final int z1 = Math.min(targetPos.getZ() + length - 1, SectionPos.sectionToBlockCoord(chunkZ, 15));
+        final int y0 = Math.max(minY, SectionPos.sectionToBlockCoord(sectionY));
+        final int y1 = Math.min(maxY, SectionPos.sectionToBlockCoord(sectionY, 15));
+        final int chunkMinX = SectionPos.sectionToBlockCoord(chunkX);
+        int changed = 0;
+
+        for (int y = y0; y <= y1; y++) {
+            for (int z = z0; z <= z1; z++) {
+                // 源下标 = sourceRowBase + 世界 x * strideX
+                final int sourceRowBase = sourceRowBase(y, z);
+                if (diffWords == null) {
+                    // 目标下标 = rowBase + 世界 x；用位集跳过整段空气
+                    final int rowBase = rowBase(y, z);
+                    final int rowEnd = rowBase + x1;
+                    for (int i = nextSetBit(placeWords, rowBase + x0, rowEnd); i >= 0; i = nextSetBit(placeWords, i + 1, rowEnd)) {
+                        changed += placeBlock(writer, listener, i - rowBase, y, z, sourceRowBase);
+                    }
+                } else {
+                    // 差异位 = diffRowBase + 世界 x，只访问与世界不同的位置
+                    final int diffRowBase = diffIndex(0, y - minY, z & 15) - chunkMinX;
+                    final int diffRowEnd = diffRowBase + x1;
+                    for (int bit = nextSetBit(diffWords, diffRowBase + x0, diffRowEnd); bit >= 0; bit = nextSetBit(diffWords, bit + 1, diffRowEnd)) {
+                        changed += placeBlock(writer, listener, bit - diffRowBase, y, z, sourceRowBase);
+                    }
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @return 方块是否改变（0 或 1）
+     */
+    private int placeBlock(@Nonnull SectionWriter writer, @Nullable ChangeListener listener,
+                           int x, int y, int z, int sourceRowBase) {
+        final int paletteIndex = blocks.get(sourceRowBase + x * strideX);
+        BlockState state = palette[paletteIndex];
+        BlockState oldState = writer.setBlockState(x & 15, y & 15, z & 15, state);
+        if (oldState == state) {
+            return 0;
+        }
+        if (listener != null) {
+            listener.onChanged(x, y, z, oldState, state, paletteFlags[paletteIndex]);
+        }
+        return 1;
+    }
+
+    /**
+     * 计算区域与一个区块列的差异：与已有状态不同、需要放置的位置
+     * 逐区块段计算，先用区块段调色板判断能否免去逐个读取容器；只比较方块状态，不比较方块实体数据
+     * @param states 从 minY 所在区块段开始的状态容器
+     * @return 按 {@link #diffIndex} 编址的差异位集
+     */
+    @Nonnull
+    public BitSet computeDiff(int chunkX, int chunkZ, int minY, int maxY, @Nonnull List<PalettedContainer<BlockState>> states) {
+        final int x0 = Math.max(targetPos.getX(), SectionPos.sectionToBlockCoord(chunkX));
+        final int x1 = Math.min(targetPos.getX() + width - 1, SectionPos.sectionToBlockCoord(chunkX, 15));
+        final int z0 = Math.max(targetPos.getZ(), SectionPos.sectionToBlockCoord(chunkZ));
+        final int z1 = Math.min(targetPos.getZ() + length - 1, SectionPos.sectionToBlockCoord(chunkZ, 15));
+        BitSet diffMask = new BitSet();
+        if (x0 > x1 || z0 > z1 || minY > maxY) {
+            return diffMask;
+        }
+        final int minSectionY = SectionPos.blockToSectionCoord(minY);
+        final int maxSectionY = SectionPos.blockToSectionCoord(maxY);
+        for (int sectionY = minSectionY; sectionY <= maxSectionY; sectionY++) {
+            PalettedContainer<BlockState> sectionStates = states.get(sectionY - minSectionY);
+            // 先看区块段调色板：只有一种状态时只与它比较；与蓝图要放置的状态没有交集时全部不同，都不读取容器
+            final BlockState uniform = sectionStates.get(0, 0, 0);
+            final boolean single = !sectionStates.maybeHas(state -> state != uniform);
+            final boolean disjoint = !sectionStates.maybeHas(placedStates::contains);
+            final int y0 = Math.max(minY, SectionPos.sectionToBlockCoord(sectionY));
+            final int y1 = Math.min(maxY, SectionPos.sectionToBlockCoord(sectionY, 15));
+            for (int y = y0; y <= y1; y++) {
+                for (int z = z0; z <= z1; z++) {
+                    final int rowBase = rowBase(y, z);
+                    final int sourceRowBase = sourceRowBase(y, z);
+                    final int rowEnd = rowBase + x1;
+                    for (int i = nextSetBit(placeWords, rowBase + x0, rowEnd); i >= 0; i = nextSetBit(placeWords, i + 1, rowEnd)) {
+                        final int x = i - rowBase;
+                        if (!disjoint) {
+                            BlockState state = palette[blocks.get(sourceRowBase + x * strideX)];
+                            BlockState current = single ? uniform : sectionStates.get(x & 15, y & 15, z & 15);
+                            if (current == state) {
+                                continue;
+                            }
+                        }
+                        diffMask.set(diffIndex(x & 15, y - minY, z & 15));
+                    }
+                }
+            }
+        }
+        return diffMask;
+    }
+
+    /**
+     * 区块内的差异位下标：区块内 x、z 各 4 位，y 为相对粘贴最低层的高度
+     */
+    static int diffIndex(int localX, int relativeY, int localZ) {
+        return relativeY << 8 | localZ << 4 | localX;
+    }
+
+    /**
+     * 在 [from, to] 内查找下一个置位，只读取覆盖该区间的 long，不会越过 to 继续扫描
+     * @return 位下标，区间内没有置位时返回 -1
+     */
+    static int nextSetBit(@Nonnull long[] words, int from, int to) {
+        if (from > to) {
+            return -1;
+        }
+        int wordIndex = from >> 6;
+        final int lastWord = Math.min(to >> 6, words.length - 1);
+        if (wordIndex > lastWord) {
+            return -1;
+        }
+        long word = words[wordIndex] & (-1L << from);
+        while (word == 0) {
+            if (++wordIndex > lastWord) {
+                return -1;
+            }
+            word = words[wordIndex];
+        }
+        final int bit = (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+        return bit <= to ? bit : -1;
+    }
+
+    /**
+     * 世界坐标 (y, z) 所在行的目标数据下标基数，加上世界 x 即为放置位下标
+     */
+    int rowBase(int y, int z) {
+        return ((y - targetPos.getY()) * length + (z - targetPos.getZ())) * width - targetPos.getX();
+    }
+
+    /**
+     * 世界坐标 (y, z) 所在行的源数据下标基数，加上世界 x * strideX 即为源下标
+     */
+    int sourceRowBase(int y, int z) {
+        return (y - targetPos.getY()) * sourceLayerSize + transform.getOrigin()
+            + (z - targetPos.getZ()) * transform.getStrideZ() - targetPos.getX() * strideX;
+    }
+
+    /**
+     * 某一行中世界坐标 x 处要放置的状态
+     */
+    @Nonnull
+    BlockState stateAt(int sourceRowBase, int x) {
+        return palette[blocks.get(sourceRowBase + x * strideX)];
+    }
+
+    @Nonnull
+    long[] getPlaceWords() {
+        return placeWords;
+    }
+
+    @Nonnull
+    public BlockPos getTargetPos() {
+        return targetPos;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    @Nonnull
+    public PasteTransform getTransform() {
+        return transform;
+    }
+}
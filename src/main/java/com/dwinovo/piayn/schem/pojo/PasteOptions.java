@@ -0,0 +1,31 @@
+package com.dwinovo.piayn.schem.pojo;
+
+import net.minecraft.world.level.block.Mirror;
+import net.minecraft.world.level.block.Rotation;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 蓝图粘贴选项
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PasteOptions {
+    /** 直接写入区块段，不触发邻居更新、逐方块光照与逐方块同步 */
+    boolean bulk = true;
+    /** 是否用蓝图中的空气覆盖世界中的方块 */
+    boolean pasteAir = false;
+    /** 是否粘贴方块实体数据 */
+    boolean pasteBlockEntities = true;
+    /** 是否粘贴实体 */
+    boolean pasteEntities = true;
+    /** 差异粘贴：先与世界比较，只放置与世界不同的方块，适合修复已有建筑 */
+    boolean diff = false;
+    /** 绕竖直轴的旋转，在镜像之后应用 */
+    Rotation rotation = Rotation.NONE;
+    /** 水平镜像 */
+    Mirror mirror = Mirror.NONE;
+}
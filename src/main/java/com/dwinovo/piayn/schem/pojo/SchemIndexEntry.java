@@ -0,0 +1,88 @@
+package com.dwinovo.piayn.schem.pojo;
+
+import java.util.Locale;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import net.minecraft.nbt.CompoundTag;
+
+/**
+ * 蓝图库索引中的一条记录，列出或搜索蓝图时不必解压文件
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SchemIndexEntry {
+    @Nonnull String fileName;
+    long fileSize;
+    long lastModified;
+    @Nullable String schemName;
+    @Nullable String authorName;
+    long date;
+    int width;
+    int height;
+    int length;
+    // 非空气方块数
+    long blockCount;
+    int paletteSize;
+    // 文件内容的 SHA-256
+    @Nonnull String contentHash;
+
+    /**
+     * 文件大小与修改时间都一致时认为索引仍然有效
+     */
+    public boolean matches(long fileSize, long lastModified) {
+        return this.fileSize == fileSize && this.lastModified == lastModified;
+    }
+
+    /**
+     * 名称、作者或文件名包含关键字（不区分大小写）
+     */
+    public boolean matchesQuery(@Nonnull String lowerCaseQuery) {
+        return fileName.toLowerCase(Locale.ROOT).contains(lowerCaseQuery)
+            || (schemName != null && schemName.toLowerCase(Locale.ROOT).contains(lowerCaseQuery))
+            || (authorName != null && authorName.toLowerCase(Locale.ROOT).contains(lowerCaseQuery));
+    }
+
+    @Nonnull
+    public CompoundTag toTag() {
+        CompoundTag tag = new CompoundTag();
+        tag.putString("File", fileName);
+        tag.putLong("Size", fileSize);
+        tag.putLong("Modified", lastModified);
+        if (schemName != null) {
+            tag.putString("Name", schemName);
+        }
+        if (authorName != null) {
+            tag.putString("Author", authorName);
+        }
+        tag.putLong("Date", date);
+        tag.putInt("Width", width);
+        tag.putInt("Height", height);
+        tag.putInt("Length", length);
+        tag.putLong("Blocks", blockCount);
+        tag.putInt("PaletteSize", paletteSize);
+        tag.putString("Hash", contentHash);
+        return tag;
+    }
+
+    @Nonnull
+    public static SchemIndexEntry fromTag(@Nonnull CompoundTag tag) {
+        return new SchemIndexEntry(
+            tag.getString("File"),
+            tag.getLong("Size"),
+            tag.getLong("Modified"),
+            tag.contains("Name") ? tag.getString("Name") : null,
+            tag.contains("Author") ? tag.getString("Author") : null,
+            tag.getLong("Date"),
+            tag.getInt("Width"),
+            tag.getInt("Height"),
+            tag.getInt("Length"),
+            tag.getLong("Blocks"),
+            tag.getInt("PaletteSize"),
+            tag.getString("Hash"));
+    }
+}
@@ -0,0 +1,403 @@
+package com.dwinovo.piayn.schem.snapshot;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.zip.GZIPInputStream;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+
+import com.dwinovo.piayn.schem.SchemSerializer;
+import com.dwinovo.piayn.schem.capture.RegionCapture;
+import com.dwinovo.piayn.schem.data.BlockIndexStorage;
+import com.dwinovo.piayn.schem.data.SectionCodec;
+import com.dwinovo.piayn.schem.io.SchemStreamWriter;
+import com.dwinovo.piayn.schem.util.VarIntUtil;
+import com.mojang.logging.LogUtils;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.IntArrayTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.LongArrayTag;
+import net.minecraft.nbt.NbtAccounter;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.Tag;
+import net.minecraft.nbt.TagTypes;
+
+/**
+ * 差量蓝图快照
+ * 区域按 {@link SectionCodec} 划分为 16x16x16 的区块段并计算内容哈希；
+ * 有父快照时只写出哈希与父快照不同的区块段，文件中记录父快照名称与全部区块段的哈希
+ * 读取时沿父快照链从根快照开始依次覆盖区块段，还原为完整的 Sponge V3 结构
+ * 头部字段写在区块段之前，计算差量时只需读取父快照的头部
+ */
+public class SchemSnapshot {
+
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    public static final Path SNAPSHOT_DIR = SchemSerializer.DEFAULT_DIR.resolve("snapshots");
+    public static final String SNAPSHOT_SUFFIX = ".snap";
+
+    // 2：区块段哈希包含区块段尺寸，方块实体 Pos 相对区块段保存（见 SectionCodec）；版本 1 不再兼容
+    private static final int FORMAT_VERSION = 2;
+    // 父快照链的最大深度，防止循环引用
+    private static final int MAX_CHAIN_DEPTH = 4096;
+
+    private static final String VERSION_KEY = "Version";
+    private static final String PARENT_KEY = "Parent";
+    private static final String HASHES_KEY = "Hashes";
+    private static final String SECTIONS_KEY = "Sections";
+    private static final String INDEX_KEY = "Index";
+
+    /**
+     * 父快照头部：尺寸与区块段哈希
+     */
+    private record Header(int version, int width, int height, int length, @Nullable String parent, long[] hashes) {
+    }
+
+    /**
+     * 规范化快照文件名并补全后缀
+     */
+    @Nonnull
+    public static String resolveName(@Nullable String snapshotName) {
+        String resolved = SchemSerializer.resolveSchemName(snapshotName);
+        resolved = resolved.substring(0, resolved.length() - ".schem".length());
+        return resolved.endsWith(SNAPSHOT_SUFFIX) ? resolved : resolved + SNAPSHOT_SUFFIX;
+    }
+
+    /**
+     * 快照文件路径，名称越出快照目录时返回 null
+     */
+    @Nullable
+    public static Path resolvePath(@Nonnull String snapshotName) {
+        Path path = SNAPSHOT_DIR.resolve(resolveName(snapshotName)).normalize();
+        return path.startsWith(SNAPSHOT_DIR) ? path : null;
+    }
+
+    /**
+     * 写出快照，父快照不存在或尺寸不同时写出完整快照
+     * 快照可能是其他快照的父快照，不覆盖已存在的快照；父快照也不能是自己
+     * 不访问世界，应在后台或IO线程调用
+     * @param cancelled 替换文件前检查，为 true 时删除临时文件并抛出 {@link CancellationException}
+     */
+    @Nonnull
+    public static Path write(@Nonnull RegionCapture capture, @Nullable ListTag entitiesList,
+                             @Nonnull String snapshotName, @Nullable String parentName,
+                             @Nonnull BooleanSupplier cancelled) throws IOException {
+        final int width = capture.getWidth();
+        final int height = capture.getHeight();
+        final int length = capture.getLength();
+        final SectionCodec codec = new SectionCodec(width, height, length);
+        final int sectionCount = codec.getSectionCount();
+
+        Path path = resolvePath(snapshotName);
+        if (path == null) {
+            throw new IOException("Invalid snapshot name: " + snapshotName);
+        }
+        if (Files.exists(path)) {
+            throw new FileAlreadyExistsException(path.getFileName().toString(), null, "snapshot already exists");
+        }
+
+        // 父快照的区块段哈希
+        long[] parentHashes = null;
+        String parent = null;
+        if (parentName != null) {
+            Path parentPath = resolvePath(parentName);
+            if (path.equals(parentPath)) {
+                throw new IOException("Snapshot " + path.getFileName() + " cannot be its own parent");
+            }
+            if (parentPath != null && Files.isRegularFile(parentPath)) {
+                Header header = readHeader(parentPath);
+                if (header.version() != FORMAT_VERSION) {
+                    LOGGER.warn("Snapshot parent {} uses format version {}, writing a full snapshot", parentName, header.version());
+                } else if (header.width() == width && header.height() == height && header.length() == length
+                    && header.hashes().length == sectionCount * 2) {
+                    parentHashes = header.hashes();
+                    parent = parentPath.getFileName().toString();
+                } else {
+                    LOGGER.warn("Snapshot parent {} has a different size, writing a full snapshot", parentName);
+                }
+            } else {
+                LOGGER.warn("Snapshot parent {} does not exist, writing a full snapshot", parentName);
+            }
+        }
+
+        // 逐段计算哈希，只编码与父快照不同的区块段
+        long[] hashes = new long[sectionCount * 2];
+        List<SectionCodec.Section> changed = new ArrayList<>();
+        final long[] parentTable = parentHashes;
+        codec.encode(SectionCodec.paletteNames(capture.getPaletteMap()), BlockIndexStorage.ofArray(capture.getBlockData()),
+            capture.getBlockEntityTags(), new SectionCodec.Visitor() {
+                @Override
+                public boolean wants(int index, long hashHigh, long hashLow) {
+                    return parentTable == null || parentTable[index * 2] != hashHigh || parentTable[index * 2 + 1] != hashLow;
+                }
+
+                @Override
+                public void accept(@Nonnull SectionCodec.Section section) {
+                    hashes[section.index() * 2] = section.hashHigh();
+                    hashes[section.index() * 2 + 1] = section.hashLow();
+                    if (section.data() != null) {
+                        changed.add(section);
+                    }
+                }
+            });
+
+        Files.createDirectories(SNAPSHOT_DIR);
+        Path tempPath = Files.createTempFile(SNAPSHOT_DIR, path.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream outputStream = Files.newOutputStream(tempPath);
+                 SchemStreamWriter writer = new SchemStreamWriter(outputStream)) {
+                writer.beginCompound("");
+                writer.writeInt(VERSION_KEY, FORMAT_VERSION);
+                writer.writeInt(SchemSerializer.DATA_VERSION_KEY, SchemSerializer.DATA_VERSION);
+                writer.writeInt(SchemSerializer.WIDTH_KEY, width);
+                writer.writeInt(SchemSerializer.HEIGHT_KEY, height);
+                writer.writeInt(SchemSerializer.LENGTH_KEY, length);
+                writer.writeLong(SchemSerializer.DATE_KEY, System.currentTimeMillis());
+                if (parent != null) {
+                    writer.writeString(PARENT_KEY, parent);
+                }
+                writer.writeTag(HASHES_KEY, new LongArrayTag(hashes));
+
+                ListTag sectionsList = new ListTag();
+                for (SectionCodec.Section section : changed) {
+                    CompoundTag sectionTag = new CompoundTag();
+                    sectionTag.putInt(INDEX_KEY, section.index());
+                    sectionTag.put(SchemSerializer.PALETTE_KEY, section.palette());
+                    sectionTag.putByteArray(SchemSerializer.DATA_KEY, section.data());
+                    if (!section.blockEntities().isEmpty()) {
+                        ListTag blockEntitiesList = new ListTag();
+                        blockEntitiesList.addAll(section.blockEntities());
+                        sectionTag.put(SchemSerializer.BLOCK_ENTITIES_KEY, blockEntitiesList);
+                    }
+                    sectionsList.add(sectionTag);
+                }
+                writer.writeTag(SECTIONS_KEY, sectionsList);
+                if (entitiesList != null && !entitiesList.isEmpty()) {
+                    writer.writeTag(SchemSerializer.ENTITIES_KEY, entitiesList);
+                }
+                writer.endCompound();
+            }
+            if (cancelled.getAsBoolean()) {
+                throw new CancellationException("Snapshot write cancelled: " + path.getFileName());
+            }
+            // 不替换：写出期间同名快照被创建时失败，而不是覆盖
+            Files.move(tempPath, path);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+
+        LOGGER.info("Wrote snapshot {}: {}/{} sections changed{}", path.getFileName(), changed.size(), sectionCount,
+            parent != null ? " since " + parent : "");
+        return path;
+    }
+
+    /**
+     * 沿父快照链还原为完整的 Sponge V3 根标签，可直接写成 .schem 或粘贴
+     */
+    @Nonnull
+    public static CompoundTag rebuild(@Nonnull String snapshotName) throws IOException {
+        Path leafPath = resolvePath(snapshotName);
+        if (leafPath == null || !Files.isRegularFile(leafPath)) {
+            throw new IOException("Snapshot does not exist: " + snapshotName);
+        }
+
+        // 从叶子读到根，再从根开始覆盖
+        Deque<CompoundTag> chain = new ArrayDeque<>();
+        Set<String> visited = new HashSet<>();
+        Path path = leafPath;
+        while (path != null) {
+            if (!visited.add(path.getFileName().toString()) || visited.size() > MAX_CHAIN_DEPTH) {
+                throw new IOException("Snapshot chain is cyclic or too deep at " + path.getFileName());
+            }
+            CompoundTag snapshotTag = NbtIo.readCompressed(path, NbtAccounter.unlimitedHeap());
+            // 旧版本的哈希与方块实体坐标含义不同，无法与当前版本混用
+            if (snapshotTag.getInt(VERSION_KEY) != FORMAT_VERSION) {
+                throw new IOException("Snapshot " + path.getFileName() + " uses unsupported format version "
+                    + snapshotTag.getInt(VERSION_KEY) + ", capture it again");
+            }
+            chain.push(snapshotTag);
+            if (!snapshotTag.contains(PARENT_KEY, Tag.TAG_STRING)) {
+                break;
+            }
+            path = resolvePath(snapshotTag.getString(PARENT_KEY));
+            if (path == null || !Files.isRegularFile(path)) {
+                throw new IOException("Missing parent snapshot " + snapshotTag.getString(PARENT_KEY) + " of " + snapshotName);
+            }
+        }
+
+        CompoundTag leaf = chain.peekLast();
+        final int width = leaf.getInt(SchemSerializer.WIDTH_KEY);
+        final int height = leaf.getInt(SchemSerializer.HEIGHT_KEY);
+        final int length = leaf.getInt(SchemSerializer.LENGTH_KEY);
+        final int volume;
+        try {
+            volume = SchemSerializer.checkVolume(width, height, length);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid snapshot " + snapshotName + ": " + e.getMessage(), e);
+        }
+        final SectionCodec codec = new SectionCodec(width, height, length);
+
+        // 每个区块段只取链上最后写入它的快照，被覆盖的区块段不解码，其调色板也不进入结果
+        CompoundTag[] finalSections = new CompoundTag[codec.getSectionCount()];
+        for (CompoundTag snapshotTag : chain) {
+            if (snapshotTag.getInt(SchemSerializer.WIDTH_KEY) != width || snapshotTag.getInt(SchemSerializer.HEIGHT_KEY) != height
+                || snapshotTag.getInt(SchemSerializer.LENGTH_KEY) != length) {
+                throw new IOException("Snapshot chain of " + snapshotName + " mixes different sizes");
+            }
+            ListTag sections = snapshotTag.getList(SECTIONS_KEY, Tag.TAG_COMPOUND);
+            for (int s = 0; s < sections.size(); s++) {
+                CompoundTag sectionTag = sections.getCompound(s);
+                final int index = sectionTag.getInt(INDEX_KEY);
+                if (index < 0 || index >= codec.getSectionCount()) {
+                    throw new IOException("Corrupt section " + index + " in snapshot chain of " + snapshotName);
+                }
+                finalSections[index] = sectionTag;
+            }
+        }
+
+        // 先按区块段调色板的合并顺序写入临时索引
+        Map<String, Integer> mergedIds = new HashMap<>();
+        List<String> mergedNames = new ArrayList<>();
+        int[] blockData = new int[volume];
+        ListTag blockEntitiesList = new ListTag();
+        int[] sectionData = new int[SectionCodec.SECTION_SIZE * SectionCodec.SECTION_SIZE * SectionCodec.SECTION_SIZE];
+        for (int index = 0; index < finalSections.length; index++) {
+            CompoundTag sectionTag = finalSections[index];
+            if (sectionTag == null) {
+                throw new IOException("Section " + index + " is missing from the snapshot chain of " + snapshotName);
+            }
+            ListTag localPalette = sectionTag.getList(SchemSerializer.PALETTE_KEY, Tag.TAG_STRING);
+            int[] globalIds = new int[localPalette.size()];
+            for (int i = 0; i < globalIds.length; i++) {
+                globalIds[i] = mergedIds.computeIfAbsent(localPalette.getString(i), name -> {
+                    mergedNames.add(name);
+                    return mergedNames.size() - 1;
+                });
+            }
+            int decoded = VarIntUtil.decodeVarintArray(sectionTag.getByteArray(SchemSerializer.DATA_KEY), sectionData);
+            if (decoded != codec.sectionVolume(index)) {
+                throw new IOException("Corrupt section " + index + " in snapshot chain of " + snapshotName);
+            }
+            codec.scatter(index, globalIds, sectionData, blockData);
+
+            ListTag localBlockEntities = sectionTag.getList(SchemSerializer.BLOCK_ENTITIES_KEY, Tag.TAG_COMPOUND);
+            for (int i = 0; i < localBlockEntities.size(); i++) {
+                blockEntitiesList.add(codec.toRegionBlockEntity(index, localBlockEntities.getCompound(i)));
+            }
+        }
+
+        // 再按方块数据中首次出现的顺序重新编号，调色板只包含结果中实际出现的状态
+        Map<String, Integer> palette = new LinkedHashMap<>();
+        int[] remap = new int[mergedNames.size()];
+        Arrays.fill(remap, -1);
+        for (int i = 0; i < blockData.length; i++) {
+            int mergedId = blockData[i];
+            if (remap[mergedId] < 0) {
+                remap[mergedId] = palette.size();
+                palette.put(mergedNames.get(mergedId), remap[mergedId]);
+            }
+            blockData[i] = remap[mergedId];
+        }
+
+        // 构建 Sponge V3 结构
+        CompoundTag schematicTag = new CompoundTag();
+        schematicTag.putInt(SchemSerializer.VERSION_KEY, SchemSerializer.SCHEMATIC_VERSION);
+        schematicTag.putInt(SchemSerializer.DATA_VERSION_KEY, leaf.getInt(SchemSerializer.DATA_VERSION_KEY));
+        schematicTag.putShort(SchemSerializer.WIDTH_KEY, (short) width);
+        schematicTag.putShort(SchemSerializer.HEIGHT_KEY, (short) height);
+        schematicTag.putShort(SchemSerializer.LENGTH_KEY, (short) length);
+        schematicTag.put(SchemSerializer.OFFSET_KEY, new IntArrayTag(new int[]{0, 0, 0}));
+
+        CompoundTag metadataTag = new CompoundTag();
+        metadataTag.putString(SchemSerializer.NAME_KEY, leafPath.getFileName().toString());
+        metadataTag.putLong(SchemSerializer.DATE_KEY, leaf.getLong(SchemSerializer.DATE_KEY));
+        schematicTag.put(SchemSerializer.METADATA_KEY, metadataTag);
+
+        CompoundTag blocksContainer = new CompoundTag();
+        CompoundTag paletteTag = new CompoundTag();
+        for (Map.Entry<String, Integer> entry : palette.entrySet()) {
+            paletteTag.putInt(entry.getKey(), entry.getValue());
+        }
+        blocksContainer.put(SchemSerializer.PALETTE_KEY, paletteTag);
+        blocksContainer.put(SchemSerializer.DATA_KEY, VarIntUtil.encodeVarintArray(blockData));
+        if (!blockEntitiesList.isEmpty()) {
+            blocksContainer.put(SchemSerializer.BLOCK_ENTITIES_KEY, blockEntitiesList);
+        }
+        schematicTag.put(SchemSerializer.BLOCKS_KEY, blocksContainer);
+
+        ListTag entitiesList = leaf.getList(SchemSerializer.ENTITIES_KEY, Tag.TAG_COMPOUND);
+        if (!entitiesList.isEmpty()) {
+            schematicTag.put(SchemSerializer.ENTITIES_KEY, entitiesList);
+        }
+
+        CompoundTag rootContent = new CompoundTag();
+        rootContent.put(SchemSerializer.SCHEMATIC_KEY, schematicTag);
+        return rootContent;
+    }
+
+    /**
+     * 只读取到区块段列表之前，取得尺寸与哈希
+     */
+    @Nonnull
+    private static Header readHeader(@Nonnull Path path) throws IOException {
+        NbtAccounter accounter = NbtAccounter.unlimitedHeap();
+        try (InputStream fileStream = Files.newInputStream(path);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(fileStream)))) {
+            if (in.readByte() != Tag.TAG_COMPOUND) {
+                throw new IOException("Snapshot root is not a compound: " + path.getFileName());
+            }
+            in.readUTF();
+
+            int version = 0;
+            int width = 0;
+            int height = 0;
+            int length = 0;
+            String parent = null;
+            for (byte type = in.readByte(); type != Tag.TAG_END; type = in.readByte()) {
+                String name = in.readUTF();
+                if (type == Tag.TAG_INT && VERSION_KEY.equals(name)) {
+                    version = in.readInt();
+                } else if (type == Tag.TAG_INT && SchemSerializer.WIDTH_KEY.equals(name)) {
+                    width = in.readInt();
+                } else if (type == Tag.TAG_INT && SchemSerializer.HEIGHT_KEY.equals(name)) {
+                    height = in.readInt();
+                } else if (type == Tag.TAG_INT && SchemSerializer.LENGTH_KEY.equals(name)) {
+                    length = in.readInt();
+                } else if (type == Tag.TAG_STRING && PARENT_KEY.equals(name)) {
+                    parent = in.readUTF();
+                } else if (type == Tag.TAG_LONG_ARRAY && HASHES_KEY.equals(name)) {
+                    // 哈希写在区块段之前，读到即可停止
+                    return new Header(version, width, height, length, parent, LongArrayTag.TYPE.load(in, accounter).getAsLongArray());
+                } else {
+                    TagTypes.getType(type).skip(in, accounter);
+                }
+            }
+            return new Header(version, width, height, length, parent, new long[0]);
+        }
+    }
+
+    private SchemSnapshot() {
+        // 工具类，禁止实例化
+    }
+}
@@ -0,0 +1,358 @@
+package com.dwinovo.piayn.schem.store;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BooleanSupplier;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+
+import com.dwinovo.piayn.schem.SchemSerializer;
+import com.dwinovo.piayn.schem.data.BlockIndexStorage;
+import com.dwinovo.piayn.schem.data.DecodedSchematic;
+import com.dwinovo.piayn.schem.data.SectionCodec;
+import com.dwinovo.piayn.schem.util.BlockUtil;
+import com.dwinovo.piayn.schem.util.PaletteUtil;
+import com.dwinovo.piayn.schem.util.VarIntUtil;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.mojang.logging.LogUtils;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.LongArrayTag;
+import net.minecraft.nbt.NbtAccounter;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.Tag;
+import net.minecraft.world.level.block.state.BlockState;
+
+/**
+ * 按内容寻址的区块段仓库
+ * 16x16x16 区块段以内容哈希为文件名保存在 store/ab/abcdef....sec，相同内容只保存一次；
+ * 清单文件（.pman）只记录尺寸、元数据、实体与按顺序排列的区块段哈希
+ * 写入时只写出仓库中还没有的区块段；读取时区块段经过共享的内存缓存，多个清单引用同一区块段只解码一次
+ */
+public class SectionStore {
+
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    public static final Path STORE_DIR = SchemSerializer.DEFAULT_DIR.resolve("store");
+    public static final String MANIFEST_SUFFIX = ".pman";
+    private static final String SECTION_SUFFIX = ".sec";
+
+    private static final int FORMAT_VERSION = 1;
+    private static final String VERSION_KEY = "Version";
+    private static final String SECTIONS_KEY = "Sections";
+    private static final String SIZE_KEY = "Size";
+
+    // 已解码区块段的缓存上限（KB）
+    private static final long SECTION_CACHE_WEIGHT_KB = 64 * 1024;
+
+    /**
+     * 已解码的区块段，调色板已解析为方块状态，方块实体坐标相对区块段原点
+     */
+    private record StoredSection(BlockState[] palette, int[] data, List<CompoundTag> blockEntities) {
+
+        int weightKb() {
+            return (data.length * Integer.BYTES + palette.length * 8) / 1024 + 1;
+        }
+    }
+
+    private static final Cache<String, StoredSection> SECTION_CACHE = CacheBuilder.newBuilder()
+        .maximumWeight(SECTION_CACHE_WEIGHT_KB)
+        .<String, StoredSection>weigher((hash, section) -> section.weightKb())
+        .build();
+
+    // 确认已在仓库中的区块段，避免重复检查文件
+    private static final Set<String> KNOWN_SECTIONS = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 规范化清单文件名并补全后缀
+     */
+    @Nonnull
+    public static String resolveName(@Nullable String manifestName) {
+        String resolved = SchemSerializer.resolveSchemName(manifestName);
+        resolved = resolved.substring(0, resolved.length() - ".schem".length());
+        return resolved.endsWith(MANIFEST_SUFFIX) ? resolved : resolved + MANIFEST_SUFFIX;
+    }
+
+    /**
+     * 蓝图目录中的清单路径，不存在或越出目录时返回 null
+     */
+    @Nullable
+    public static Path resolveManifestPath(@Nonnull String manifestName) {
+        Path path = SchemSerializer.DEFAULT_DIR.resolve(resolveName(manifestName)).normalize();
+        if (!path.startsWith(SchemSerializer.DEFAULT_DIR) || !Files.isRegularFile(path)) {
+            return null;
+        }
+        return path;
+    }
+
+    public static boolean isManifest(@Nonnull Path path) {
+        return path.getFileName().toString().endsWith(MANIFEST_SUFFIX);
+    }
+
+    /**
+     * 把截取结果或已解码的蓝图写为清单，只写出仓库中没有的区块段
+     * 不访问世界，应在后台或IO线程调用
+     * @param names 全局调色板字符串，见 {@link SectionCodec#paletteNames}
+     */
+    @Nonnull
+    public static Path writeManifest(int width, int height, int length, @Nonnull String[] names,
+                                     @Nonnull BlockIndexStorage blocks, @Nonnull List<CompoundTag> blockEntityTags,
+                                     @Nullable ListTag entitiesList, @Nullable CompoundTag metadata,
+                                     @Nonnull String manifestName) throws IOException {
+        return writeManifest(width, height, length, names, blocks, blockEntityTags, entitiesList, metadata, manifestName, true, () -> false);
+    }
+
+    /**
+     * 写出清单，替换清单文件前检查是否已取消；已写入仓库的区块段按内容寻址，保留供以后复用
+     * @param replaceExisting 为 false 时清单已存在则抛出 {@link java.nio.file.FileAlreadyExistsException}
+     * @param cancelled 为 true 时删除临时文件并抛出 {@link CancellationException}
+     */
+    @Nonnull
+    public static Path writeManifest(int width, int height, int length, @Nonnull String[] names,
+                                     @Nonnull BlockIndexStorage blocks, @Nonnull List<CompoundTag> blockEntityTags,
+                                     @Nullable ListTag entitiesList, @Nullable CompoundTag metadata,
+                                     @Nonnull String manifestName, boolean replaceExisting,
+                                     @Nonnull BooleanSupplier cancelled) throws IOException {
+        SectionCodec codec = new SectionCodec(width, height, length);
+        long[] hashes = new long[codec.getSectionCount() * 2];
+        int[] written = new int[1];
+        IOException[] failure = new IOException[1];
+
+        codec.encode(names, blocks, blockEntityTags, new SectionCodec.Visitor() {
+            @Override
+            public boolean wants(int index, long hashHigh, long hashLow) {
+                return failure[0] == null && !contains(SectionCodec.toHashString(hashHigh, hashLow));
+            }
+
+            @Override
+            public void accept(@Nonnull SectionCodec.Section section) {
+                hashes[section.index() * 2] = section.hashHigh();
+                hashes[section.index() * 2 + 1] = section.hashLow();
+                if (section.data() == null || failure[0] != null) {
+                    return;
+                }
+                try {
+                    writeSection(section);
+                    written[0]++;
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+
+        CompoundTag manifest = new CompoundTag();
+        manifest.putInt(VERSION_KEY, FORMAT_VERSION);
+        manifest.putInt(SchemSerializer.DATA_VERSION_KEY, SchemSerializer.DATA_VERSION);
+        manifest.putInt(SchemSerializer.WIDTH_KEY, width);
+        manifest.putInt(SchemSerializer.HEIGHT_KEY, height);
+        manifest.putInt(SchemSerializer.LENGTH_KEY, length);
+        if (metadata != null) {
+            manifest.put(SchemSerializer.METADATA_KEY, metadata);
+        }
+        manifest.put(SECTIONS_KEY, new LongArrayTag(hashes));
+        if (entitiesList != null && !entitiesList.isEmpty()) {
+            manifest.put(SchemSerializer.ENTITIES_KEY, entitiesList);
+        }
+
+        Files.createDirectories(SchemSerializer.DEFAULT_DIR);
+        Path path = SchemSerializer.DEFAULT_DIR.resolve(resolveName(manifestName));
+        Path tempPath = Files.createTempFile(SchemSerializer.DEFAULT_DIR, path.getFileName().toString(), ".tmp");
+        try {
+            NbtIo.writeCompressed(manifest, tempPath);
+            if (cancelled.getAsBoolean()) {
+                throw new CancellationException("Manifest write cancelled: " + path.getFileName());
+            }
+            if (replaceExisting) {
+                moveAtomically(tempPath, path);
+            } else {
+                Files.move(tempPath, path);
+            }
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+        LOGGER.info("Wrote manifest {}: {}/{} sections new to the store", path.getFileName(), written[0], codec.getSectionCount());
+        return path;
+    }
+
+    /**
+     * 读取清单并从仓库组装出完整的蓝图
+     */
+    @Nonnull
+    public static DecodedSchematic load(@Nonnull Path manifestPath) throws IOException {
+        CompoundTag manifest = NbtIo.readCompressed(manifestPath, NbtAccounter.unlimitedHeap());
+        final int width = manifest.getInt(SchemSerializer.WIDTH_KEY);
+        final int height = manifest.getInt(SchemSerializer.HEIGHT_KEY);
+        final int length = manifest.getInt(SchemSerializer.LENGTH_KEY);
+        final int volume;
+        try {
+            volume = SchemSerializer.checkVolume(width, height, length);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid manifest " + manifestPath.getFileName() + ": " + e.getMessage(), e);
+        }
+        SectionCodec codec = new SectionCodec(width, height, length);
+        long[] hashes = manifest.getLongArray(SECTIONS_KEY);
+        if (hashes.length != codec.getSectionCount() * 2) {
+            throw new IOException("Manifest " + manifestPath.getFileName() + " does not match its size");
+        }
+
+        PaletteUtil.PaletteMap paletteMap = new PaletteUtil.PaletteMap();
+        int[] blockData = new int[volume];
+        List<CompoundTag> blockEntityTags = new ArrayList<>();
+        for (int index = 0; index < codec.getSectionCount(); index++) {
+            StoredSection section = getSection(SectionCodec.toHashString(hashes[index * 2], hashes[index * 2 + 1]));
+            if (section.data().length != codec.sectionVolume(index)) {
+                throw new IOException("Section " + index + " of " + manifestPath.getFileName() + " has the wrong size");
+            }
+            // 局部调色板映射到清单的全局调色板，无效条目为 -1
+            int[] globalIds = new int[section.palette().length];
+            for (int i = 0; i < globalIds.length; i++) {
+                BlockState blockState = section.palette()[i];
+                globalIds[i] = blockState == null ? -1 : paletteMap.getId(blockState);
+            }
+            codec.scatter(index, globalIds, section.data(), blockData);
+            for (CompoundTag localTag : section.blockEntities()) {
+                blockEntityTags.add(codec.toRegionBlockEntity(index, localTag));
+            }
+        }
+
+        BlockState[] palette = new BlockState[paletteMap.size()];
+        paletteMap.entries().forEach(entry -> palette[entry.getValue()] = entry.getKey());
+        ListTag entitiesList = manifest.getList(SchemSerializer.ENTITIES_KEY, Tag.TAG_COMPOUND);
+        List<CompoundTag> entityTags = new ArrayList<>(entitiesList.size());
+        for (int i = 0; i < entitiesList.size(); i++) {
+            entityTags.add(entitiesList.getCompound(i));
+        }
+        return new DecodedSchematic(width, height, length, palette, blockData, blockEntityTags, entityTags);
+    }
+
+    /**
+     * 清空已解码区块段，注册表重载后方块状态可能失效
+     */
+    public static void invalidateCache() {
+        SECTION_CACHE.invalidateAll();
+    }
+
+    // === 区块段文件 ===
+
+    private static Path sectionPath(@Nonnull String hash) {
+        return STORE_DIR.resolve(hash.substring(0, 2)).resolve(hash + SECTION_SUFFIX);
+    }
+
+    private static boolean contains(@Nonnull String hash) {
+        if (KNOWN_SECTIONS.contains(hash)) {
+            return true;
+        }
+        if (Files.isRegularFile(sectionPath(hash))) {
+            KNOWN_SECTIONS.add(hash);
+            return true;
+        }
+        return false;
+    }
+
+    private static void writeSection(@Nonnull SectionCodec.Section section) throws IOException {
+        String hash = section.hashString();
+        CompoundTag sectionTag = new CompoundTag();
+        sectionTag.putIntArray(SIZE_KEY, new int[]{section.sizeX(), section.sizeY(), section.sizeZ()});
+        sectionTag.put(SchemSerializer.PALETTE_KEY, section.palette());
+        sectionTag.putByteArray(SchemSerializer.DATA_KEY, section.data());
+        if (!section.blockEntities().isEmpty()) {
+            ListTag blockEntitiesList = new ListTag();
+            blockEntitiesList.addAll(section.blockEntities());
+            sectionTag.put(SchemSerializer.BLOCK_ENTITIES_KEY, blockEntitiesList);
+        }
+
+        Path path = sectionPath(hash);
+        Files.createDirectories(path.getParent());
+        Path tempPath = Files.createTempFile(path.getParent(), hash, ".tmp");
+        try {
+            NbtIo.writeCompressed(sectionTag, tempPath);
+            // 同样内容被并发写入时直接覆盖，内容相同
+            moveAtomically(tempPath, path);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+        KNOWN_SECTIONS.add(hash);
+    }
+
+    @Nonnull
+    private static StoredSection getSection(@Nonnull String hash) throws IOException {
+        try {
+            return SECTION_CACHE.get(hash, () -> readSection(hash));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException("Failed to read section " + hash, e.getCause());
+        }
+    }
+
+    private static boolean isSectionSize(int size) {
+        return size >= 0 && size <= SectionCodec.SECTION_SIZE;
+    }
+
+    @Nonnull
+    private static StoredSection readSection(@Nonnull String hash) throws IOException {
+        Path path = sectionPath(hash);
+        if (!Files.isRegularFile(path)) {
+            throw new IOException("Missing section " + hash + " in the section store");
+        }
+        CompoundTag sectionTag = NbtIo.readCompressed(path, NbtAccounter.unlimitedHeap());
+        int[] size = sectionTag.getIntArray(SIZE_KEY);
+        if (size.length != 3 || !isSectionSize(size[0]) || !isSectionSize(size[1]) || !isSectionSize(size[2])) {
+            throw new IOException("Corrupt section " + hash);
+        }
+
+        ListTag paletteList = sectionTag.getList(SchemSerializer.PALETTE_KEY, Tag.TAG_STRING);
+        BlockState[] palette = new BlockState[paletteList.size()];
+        for (int i = 0; i < palette.length; i++) {
+            String name = paletteList.getString(i);
+            palette[i] = SectionCodec.INVALID_NAME.equals(name) ? null : BlockUtil.parseBlockState(name);
+        }
+        int[] data = new int[size[0] * size[1] * size[2]];
+        int decoded = VarIntUtil.decodeVarintArray(sectionTag.getByteArray(SchemSerializer.DATA_KEY), data);
+        if (decoded != data.length) {
+            throw new IOException("Corrupt section " + hash);
+        }
+        for (int value : data) {
+            if (value < 0 || value >= palette.length) {
+                throw new IOException("Corrupt section " + hash);
+            }
+        }
+
+        ListTag blockEntitiesList = sectionTag.getList(SchemSerializer.BLOCK_ENTITIES_KEY, Tag.TAG_COMPOUND);
+        List<CompoundTag> blockEntities = new ArrayList<>(blockEntitiesList.size());
+        for (int i = 0; i < blockEntitiesList.size(); i++) {
+            blockEntities.add(blockEntitiesList.getCompound(i));
+        }
+        KNOWN_SECTIONS.add(hash);
+        return new StoredSection(palette, data, blockEntities);
+    }
+
+    private static void moveAtomically(@Nonnull Path source, @Nonnull Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private SectionStore() {
+        // 工具类，禁止实例化
+    }
+}
@@ -0,0 +1,188 @@
+package com.dwinovo.piayn.schem.undo;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+
+import com.dwinovo.piayn.config.PIAYNConfig;
+import com.mojang.logging.LogUtils;
+
+import net.minecraft.Util;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.world.level.Level;
+
+/**
+ * 每个玩家的粘贴撤销记录
+ * 记录在粘贴结束时加入，压缩在后台线程进行；每个玩家最多保留 undoHistory 条，
+ * 压缩后的总大小超过 undoMemoryMb 时丢弃最旧的记录
+ * 控制台的粘贴记在 {@link Util#NIL_UUID} 名下；记录只保存在内存中，服务器停止时清空
+ */
+public class PasteHistory {
+
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    public static final PasteHistory INSTANCE = new PasteHistory();
+
+    private static final int DEFAULT_HISTORY = 10;
+    private static final int DEFAULT_MEMORY_MB = 64;
+
+    private final Map<UUID, Deque<Entry>> histories = new HashMap<>();
+    // 正在撤销的记录，撤销完成前仍保留在历史中
+    private final Set<Entry> undoing = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * 一次可撤销的粘贴
+     * @param data 压缩后的日志，见 {@link PasteJournal#decode(byte[])}
+     */
+    public record Entry(String name, ResourceKey<Level> dimension, int blockCount, long createdAt,
+                        CompletableFuture<byte[]> data) {
+
+        /**
+         * 压缩后的大小，压缩尚未完成时为 0
+         */
+        public long size() {
+            return data.isDone() && !data.isCompletedExceptionally() ? data.join().length : 0;
+        }
+    }
+
+    /**
+     * 加入一次粘贴的撤销记录，日志交给后台线程压缩后不得再修改
+     */
+    public void record(@Nonnull UUID owner, @Nonnull String name, @Nonnull ResourceKey<Level> dimension,
+                       @Nonnull PasteJournal journal) {
+        if (journal.isEmpty() || getMaxHistory() == 0) {
+            return;
+        }
+        CompletableFuture<byte[]> data = CompletableFuture.supplyAsync(() -> {
+            try {
+                return journal.encode();
+            } catch (Exception e) {
+                throw new IllegalStateException("Failed to encode undo journal for " + name, e);
+            }
+        }, Util.backgroundExecutor());
+        Entry entry = new Entry(name, dimension, journal.getBlockCount(), System.currentTimeMillis(), data);
+        synchronized (this) {
+            histories.computeIfAbsent(owner, key -> new ArrayDeque<>()).addLast(entry);
+            trim(owner);
+        }
+        data.whenComplete((bytes, error) -> {
+            if (error != null) {
+                LOGGER.warn("Dropping undo journal for {}", name, error);
+                remove(owner, entry);
+                return;
+            }
+            LOGGER.debug("Recorded undo journal for {}: {} blocks in {} bytes", name, entry.blockCount(), bytes.length);
+            synchronized (this) {
+                trim(owner);
+            }
+        });
+    }
+
+    /**
+     * 开始撤销最近一次粘贴：记录仍留在历史中，标记为正在撤销，结束时调用 {@link #finishUndo}
+     * @return 没有记录或最近一条正在撤销时返回 null
+     */
+    @Nullable
+    public synchronized Entry beginUndo(@Nonnull UUID owner) {
+        Deque<Entry> history = histories.get(owner);
+        if (history == null || history.isEmpty()) {
+            return null;
+        }
+        Entry entry = history.peekLast();
+        return undoing.add(entry) ? entry : null;
+    }
+
+    /**
+     * 撤销结束：成功时移除记录，失败或取消时保留，之后可以再次撤销
+     */
+    public synchronized void finishUndo(@Nonnull UUID owner, @Nonnull Entry entry, boolean undone) {
+        undoing.remove(entry);
+        if (!undone) {
+            return;
+        }
+        Deque<Entry> history = histories.get(owner);
+        if (history != null) {
+            history.remove(entry);
+            if (history.isEmpty()) {
+                histories.remove(owner);
+            }
+        }
+    }
+
+    /**
+     * 玩家是否有正在进行的撤销
+     */
+    public synchronized boolean isUndoing(@Nonnull UUID owner) {
+        Deque<Entry> history = histories.get(owner);
+        return history != null && !history.isEmpty() && undoing.contains(history.peekLast());
+    }
+
+    /**
+     * 从旧到新列出某个玩家的撤销记录
+     */
+    @Nonnull
+    public synchronized List<Entry> list(@Nonnull UUID owner) {
+        Deque<Entry> history = histories.get(owner);
+        return history == null ? List.of() : new ArrayList<>(history);
+    }
+
+    public synchronized void clear() {
+        histories.clear();
+        undoing.clear();
+    }
+
+    private synchronized void remove(@Nonnull UUID owner, @Nonnull Entry entry) {
+        Deque<Entry> history = histories.get(owner);
+        if (history != null) {
+            history.remove(entry);
+        }
+    }
+
+    /**
+     * 按条数与内存上限丢弃最旧的记录，最新的一条总是保留
+     */
+    private void trim(@Nonnull UUID owner) {
+        Deque<Entry> history = histories.get(owner);
+        if (history == null) {
+            return;
+        }
+        while (history.size() > Math.max(1, getMaxHistory())) {
+            history.pollFirst();
+        }
+        long total = 0;
+        for (Entry entry : history) {
+            total += entry.size();
+        }
+        final long maxBytes = getMaxBytes();
+        Iterator<Entry> iterator = history.iterator();
+        while (total > maxBytes && history.size() > 1 && iterator.hasNext()) {
+            total -= iterator.next().size();
+            iterator.remove();
+        }
+    }
+
+    private static int getMaxHistory() {
+        return PIAYNConfig.SPEC.isLoaded() ? PIAYNConfig.SCHEM_UNDO_HISTORY.get() : DEFAULT_HISTORY;
+    }
+
+    /**
+     * 每个玩家撤销记录的内存上限（字节），记录中的日志也不能超过它
+     */
+    public static long getMaxBytes() {
+        int maxMemoryMb = PIAYNConfig.SPEC.isLoaded() ? PIAYNConfig.SCHEM_UNDO_MEMORY_MB.get() : DEFAULT_MEMORY_MB;
+        return maxMemoryMb * 1024L * 1024L;
+    }
+}
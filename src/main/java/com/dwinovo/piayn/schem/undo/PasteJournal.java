@@ -0,0 +1,309 @@
+package com.dwinovo.piayn.schem.undo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.dwinovo.piayn.schem.SchemSerializer;
+import com.dwinovo.piayn.schem.data.DecodedSchematic;
+import com.dwinovo.piayn.schem.data.PackedBlockStorage;
+import com.dwinovo.piayn.schem.util.BlockEntityUtil;
+import com.dwinovo.piayn.schem.util.BlockUtil;
+import com.dwinovo.piayn.schem.util.PaletteUtil;
+import com.dwinovo.piayn.schem.util.VarIntUtil;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.LongArrayTag;
+import net.minecraft.nbt.NbtAccounter;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.StringTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.util.BitStorage;
+import net.minecraft.util.Mth;
+import net.minecraft.util.SimpleBitStorage;
+import net.minecraft.util.ZeroBitStorage;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.block.state.BlockState;
+
+/**
+ * 粘贴的撤销日志（被覆盖前的样子）
+ * 粘贴过程中只记录实际改变的方块与被覆盖的方块实体，按区块段分组：
+ * 每个区块段保存局部调色板、4096 位的改变位集，以及按位集顺序排列的 varint 局部索引
+ * 记录期间局部索引按局部调色板大小分配位宽，只有一种状态时不占空间；{@link #heapBytes()} 为记录期间的内存占用
+ * 记录在主线程进行，结束后 {@link #encode()} 可在任意线程压缩为 GZip NBT
+ */
+public class PasteJournal {
+
+    private static final int VERSION = 1;
+    private static final String VERSION_KEY = "Version";
+    private static final String SECTIONS_KEY = "Sections";
+    private static final String POS_KEY = "Pos";
+    private static final String MASK_KEY = "Mask";
+    private static final int SECTION_VOLUME = 16 * 16 * 16;
+    // 区块段记录本身（位集、调色板与映射）与每个调色板条目的大致内存占用
+    private static final long SECTION_BYTES = SECTION_VOLUME / 8 + 256;
+    private static final long PALETTE_ENTRY_BYTES = 32;
+
+    private final Long2ObjectMap<SectionRecord> sections = new Long2ObjectOpenHashMap<>();
+    private final List<CompoundTag> blockEntityTags = new ArrayList<>();
+    // 已处理过方块实体的位置，每个位置只记录第一次覆盖前的数据
+    private final LongSet blockEntityPositions = new LongOpenHashSet();
+    @Nullable
+    private SectionRecord lastRecord;
+    private int blockCount;
+    private long heapBytes;
+
+    /**
+     * 一个区块段内被覆盖的方块
+     */
+    private static final class SectionRecord {
+        private final long sectionKey;
+        private final BitSet mask = new BitSet(SECTION_VOLUME);
+        // 局部索引，位宽随局部调色板增长
+        private BitStorage ids = new ZeroBitStorage(SECTION_VOLUME);
+        private final Reference2IntMap<BlockState> localIds = new Reference2IntOpenHashMap<>();
+        private final List<BlockState> palette = new ArrayList<>();
+
+        private SectionRecord(long sectionKey) {
+            this.sectionKey = sectionKey;
+            localIds.defaultReturnValue(-1);
+        }
+    }
+
+    /**
+     * 记录某个位置被覆盖前的方块状态，同一位置只记录第一次
+     */
+    public void recordBlock(int x, int y, int z, @Nonnull BlockState oldState) {
+        long sectionKey = SectionPos.asLong(SectionPos.blockToSectionCoord(x), SectionPos.blockToSectionCoord(y), SectionPos.blockToSectionCoord(z));
+        SectionRecord record = lastRecord;
+        if (record == null || record.sectionKey != sectionKey) {
+            record = sections.get(sectionKey);
+            if (record == null) {
+                record = new SectionRecord(sectionKey);
+                sections.put(sectionKey, record);
+                heapBytes += SECTION_BYTES;
+            }
+            lastRecord = record;
+        }
+        int localIndex = (y & 15) << 8 | (z & 15) << 4 | (x & 15);
+        if (record.mask.get(localIndex)) {
+            return;
+        }
+        int localId = record.localIds.getInt(oldState);
+        if (localId < 0) {
+            localId = addPaletteEntry(record, oldState);
+        }
+        record.mask.set(localIndex);
+        record.ids.set(localIndex, localId);
+        blockCount++;
+    }
+
+    /**
+     * 加入局部调色板，位宽不足时把已记录的索引复制到更宽的存储
+     */
+    private int addPaletteEntry(@Nonnull SectionRecord record, @Nonnull BlockState blockState) {
+        int localId = record.palette.size();
+        record.palette.add(blockState);
+        record.localIds.put(blockState, localId);
+        heapBytes += PALETTE_ENTRY_BYTES;
+        int bits = Mth.ceillog2(record.palette.size());
+        if (bits > record.ids.getBits()) {
+            BitStorage grown = new SimpleBitStorage(bits, SECTION_VOLUME);
+            for (int i = record.mask.nextSetBit(0); i >= 0; i = record.mask.nextSetBit(i + 1)) {
+                grown.set(i, record.ids.get(i));
+            }
+            heapBytes += (long) (grown.getRaw().length - record.ids.getRaw().length) * Long.BYTES;
+            record.ids = grown;
+        }
+        return localId;
+    }
+
+    /**
+     * 记录某个位置被覆盖前的方块实体，同一位置只记录第一次
+     * @param blockEntity 覆盖前的方块实体，为 null 时只标记该位置已处理
+     */
+    public void recordBlockEntity(@Nonnull Level level, @Nonnull BlockPos pos, @Nullable BlockEntity blockEntity) {
+        if (!blockEntityPositions.add(pos.asLong()) || blockEntity == null) {
+            return;
+        }
+        CompoundTag blockEntityTag = BlockEntityUtil.createBlockEntityTag(level, blockEntity, pos.getX(), pos.getY(), pos.getZ());
+        if (blockEntityTag != null) {
+            blockEntityTags.add(blockEntityTag);
+        }
+    }
+
+    /**
+     * 该位置的方块实体是否已经处理过
+     */
+    public boolean hasBlockEntity(@Nonnull BlockPos pos) {
+        return blockEntityPositions.contains(pos.asLong());
+    }
+
+    public boolean isEmpty() {
+        return blockCount == 0 && blockEntityTags.isEmpty();
+    }
+
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * 记录期间的大致内存占用（字节），不含方块实体数据
+     */
+    public long heapBytes() {
+        return heapBytes;
+    }
+
+    // === 编码 ===
+
+    /**
+     * 压缩为 GZip NBT，记录结束后调用
+     */
+    @Nonnull
+    public byte[] encode() throws IOException {
+        ListTag sectionList = new ListTag();
+        int[] sectionIds = new int[SECTION_VOLUME];
+        for (SectionRecord record : sections.values()) {
+            ListTag palette = new ListTag();
+            for (BlockState blockState : record.palette) {
+                palette.add(StringTag.valueOf(BlockUtil.blockStateToString(blockState)));
+            }
+            int count = 0;
+            for (int i = record.mask.nextSetBit(0); i >= 0; i = record.mask.nextSetBit(i + 1)) {
+                sectionIds[count++] = record.ids.get(i);
+            }
+            CompoundTag sectionTag = new CompoundTag();
+            sectionTag.putLong(POS_KEY, record.sectionKey);
+            sectionTag.put(SchemSerializer.PALETTE_KEY, palette);
+            sectionTag.put(MASK_KEY, new LongArrayTag(record.mask.toLongArray()));
+            sectionTag.putByteArray(SchemSerializer.DATA_KEY, VarIntUtil.encodeVarints(sectionIds, 0, count));
+            sectionList.add(sectionTag);
+        }
+        ListTag blockEntityList = new ListTag();
+        blockEntityList.addAll(blockEntityTags);
+
+        CompoundTag root = new CompoundTag();
+        root.putInt(VERSION_KEY, VERSION);
+        root.putInt(SchemSerializer.DATA_VERSION_KEY, SchemSerializer.DATA_VERSION);
+        root.put(SECTIONS_KEY, sectionList);
+        root.put(SchemSerializer.BLOCK_ENTITIES_KEY, blockEntityList);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        NbtIo.writeCompressed(root, output);
+        return output.toByteArray();
+    }
+
+    /**
+     * 解码后的撤销内容：以 origin 为原点的稀疏蓝图，未记录的位置为缺失
+     */
+    public record Image(BlockPos origin, DecodedSchematic schematic) {
+    }
+
+    /**
+     * 把压缩的日志还原为可以直接走批量粘贴的蓝图
+     */
+    @Nonnull
+    public static Image decode(@Nonnull byte[] data) throws IOException {
+        CompoundTag root = NbtIo.readCompressed(new ByteArrayInputStream(data), NbtAccounter.unlimitedHeap());
+        if (root.getInt(VERSION_KEY) != VERSION) {
+            throw new IOException("Unsupported undo journal version " + root.getInt(VERSION_KEY));
+        }
+        ListTag sectionList = root.getList(SECTIONS_KEY, Tag.TAG_COMPOUND);
+        ListTag blockEntityList = root.getList(SchemSerializer.BLOCK_ENTITIES_KEY, Tag.TAG_COMPOUND);
+
+        // 先求出覆盖所有区块段与方块实体的包围盒，并合并调色板
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+        PaletteUtil.PaletteMap paletteMap = new PaletteUtil.PaletteMap();
+        int[][] globalIds = new int[sectionList.size()][];
+        for (int s = 0; s < sectionList.size(); s++) {
+            CompoundTag sectionTag = sectionList.getCompound(s);
+            long sectionKey = sectionTag.getLong(POS_KEY);
+            minX = Math.min(minX, SectionPos.sectionToBlockCoord(SectionPos.x(sectionKey)));
+            minY = Math.min(minY, SectionPos.sectionToBlockCoord(SectionPos.y(sectionKey)));
+            minZ = Math.min(minZ, SectionPos.sectionToBlockCoord(SectionPos.z(sectionKey)));
+            maxX = Math.max(maxX, SectionPos.sectionToBlockCoord(SectionPos.x(sectionKey), 15));
+            maxY = Math.max(maxY, SectionPos.sectionToBlockCoord(SectionPos.y(sectionKey), 15));
+            maxZ = Math.max(maxZ, SectionPos.sectionToBlockCoord(SectionPos.z(sectionKey), 15));
+
+            ListTag palette = sectionTag.getList(SchemSerializer.PALETTE_KEY, Tag.TAG_STRING);
+            globalIds[s] = new int[palette.size()];
+            for (int i = 0; i < palette.size(); i++) {
+                BlockState blockState = BlockUtil.parseBlockState(palette.getString(i));
+                globalIds[s][i] = blockState == null ? -1 : paletteMap.getId(blockState);
+            }
+        }
+        for (int i = 0; i < blockEntityList.size(); i++) {
+            int[] pos = blockEntityList.getCompound(i).getIntArray(POS_KEY);
+            if (pos.length == 3) {
+                minX = Math.min(minX, pos[0]);
+                minY = Math.min(minY, pos[1]);
+                minZ = Math.min(minZ, pos[2]);
+                maxX = Math.max(maxX, pos[0]);
+                maxY = Math.max(maxY, pos[1]);
+                maxZ = Math.max(maxZ, pos[2]);
+            }
+        }
+        if (minX > maxX) {
+            throw new IOException("Undo journal is empty");
+        }
+
+        final int width = maxX - minX + 1;
+        final int height = maxY - minY + 1;
+        final int length = maxZ - minZ + 1;
+        if ((long) width * height * length > Integer.MAX_VALUE) {
+            throw new IOException("Undo journal covers too large a region");
+        }
+        BlockState[] palette = new BlockState[paletteMap.size()];
+        paletteMap.entries().forEach(entry -> palette[entry.getValue()] = entry.getKey());
+        PackedBlockStorage blocks = new PackedBlockStorage(width * height * length, palette.length);
+
+        int[] sectionIds = new int[SECTION_VOLUME];
+        for (int s = 0; s < sectionList.size(); s++) {
+            CompoundTag sectionTag = sectionList.getCompound(s);
+            long sectionKey = sectionTag.getLong(POS_KEY);
+            BitSet mask = BitSet.valueOf(sectionTag.getLongArray(MASK_KEY));
+            byte[] data = sectionTag.getByteArray(SchemSerializer.DATA_KEY);
+            int count = VarIntUtil.decodeVarints(data, 0, data.length, sectionIds, 0, sectionIds.length);
+            final int baseX = SectionPos.sectionToBlockCoord(SectionPos.x(sectionKey)) - minX;
+            final int baseY = SectionPos.sectionToBlockCoord(SectionPos.y(sectionKey)) - minY;
+            final int baseZ = SectionPos.sectionToBlockCoord(SectionPos.z(sectionKey)) - minZ;
+            int cursor = 0;
+            for (int i = mask.nextSetBit(0); i >= 0 && cursor < count; i = mask.nextSetBit(i + 1)) {
+                int localId = sectionIds[cursor++];
+                if (localId >= globalIds[s].length) {
+                    continue;
+                }
+                int index = baseX + (i & 15) + (baseZ + (i >> 4 & 15) + (baseY + (i >> 8)) * length) * width;
+                blocks.set(index, globalIds[s][localId]);
+            }
+        }
+
+        List<CompoundTag> blockEntityTags = new ArrayList<>(blockEntityList.size());
+        for (int i = 0; i < blockEntityList.size(); i++) {
+            CompoundTag blockEntityTag = blockEntityList.getCompound(i);
+            int[] pos = blockEntityTag.getIntArray(POS_KEY);
+            if (pos.length == 3) {
+                blockEntityTag.putIntArray(POS_KEY, new int[]{pos[0] - minX, pos[1] - minY, pos[2] - minZ});
+                blockEntityTags.add(blockEntityTag);
+            }
+        }
+        DecodedSchematic schematic = new DecodedSchematic(width, height, length, palette, blocks, blockEntityTags, List.of());
+        return new Image(new BlockPos(minX, minY, minZ), schematic);
+    }
+}
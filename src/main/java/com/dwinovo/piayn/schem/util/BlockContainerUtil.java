@@ -1,17 +1,14 @@
 package com.dwinovo.piayn.schem.util;
 
-import java.util.ArrayList;
-import java.util.List;
 import javax.annotation.Nonnull;
 import net.minecraft.core.BlockPos;
+import net.minecraft.nbt.ByteArrayTag;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.ListTag;
 
-import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.level.Level;
-import net.minecraft.world.level.block.entity.BlockEntity;
-import net.minecraft.world.level.block.state.BlockState;
 import com.dwinovo.piayn.schem.SchemSerializer;
+import com.dwinovo.piayn.schem.capture.RegionCapture;
 
 /**
  * 方块容器构建工具类
@@ -21,48 +18,32 @@ public class BlockContainerUtil {
     
     /**
      * 构建方块容器
+     * 按区块段截取，见 {@link RegionCapture}
      */
     @Nonnull
     public static CompoundTag buildBlockContainer(@Nonnull Level level, 
                                                  @Nonnull BlockPos originPos, 
                                                  int width, int height, int length) {
         
-        // 调色板：方块状态 -> 索引
-        PaletteUtil.PaletteMap paletteMap = new PaletteUtil.PaletteMap();
-        List<Integer> blockData = new ArrayList<>();
-        List<CompoundTag> blockEntitiesList = new ArrayList<>();
-        
-        // 遍历区域内所有方块
-        for (int y = 0; y < height; y++) {
-            for (int z = 0; z < length; z++) {
-                for (int x = 0; x < width; x++) {
-                    BlockPos currentPos = originPos.offset(x, y, z);
-                    BlockState blockState = level.getBlockState(currentPos);
-                    
-                    // 获取或创建调色板索引
-                    int paletteIndex = paletteMap.getId(blockState);
-                    blockData.add(paletteIndex);
-                    
-                    // 处理方块实体
-                    BlockEntity blockEntity = level.getBlockEntity(currentPos);
-                    if (blockEntity != null) {
-                        CompoundTag blockEntityTag = BlockEntityUtil.createBlockEntityTag(level, blockEntity, x, y, z);
-                        if (blockEntityTag != null) {
-                            blockEntitiesList.add(blockEntityTag);
-                        }
-                    }
-                }
-            }
-        }
-        
-        // 构建方块容器
+        RegionCapture capture = new RegionCapture(level, originPos, width, height, length);
+        capture.captureAll();
+        return buildBlockContainer(capture);
+    }
+
+    /**
+     * 由已完成的区域截取结果构建方块容器
+     */
+    @Nonnull
+    public static CompoundTag buildBlockContainer(@Nonnull RegionCapture capture) {
         CompoundTag blocksContainer = new CompoundTag();
-        blocksContainer.put(SchemSerializer.PALETTE_KEY, paletteMap.toNbt());
-        blocksContainer.put(SchemSerializer.DATA_KEY, VarIntUtil.encodeVarintArray(blockData));
+        // 先取编码数据：快照模式下这一步会完成调色板合并
+        ByteArrayTag dataTag = new ByteArrayTag(capture.getEncodedData());
+        blocksContainer.put(SchemSerializer.PALETTE_KEY, capture.getPaletteMap().toNbt());
+        blocksContainer.put(SchemSerializer.DATA_KEY, dataTag);
         
-        if (!blockEntitiesList.isEmpty()) {
+        if (!capture.getBlockEntityTags().isEmpty()) {
             ListTag blockEntitiesListTag = new ListTag();
-            blockEntitiesList.forEach(blockEntitiesListTag::add);
+            blockEntitiesListTag.addAll(capture.getBlockEntityTags());
             blocksContainer.put(SchemSerializer.BLOCK_ENTITIES_KEY, blockEntitiesListTag);
         }
         
@@ -106,7 +106,8 @@ public class BlockEntityUtil {
         BlockEntity blockEntity = serverLevel.getBlockEntity(absolutePos);
         
         if (blockEntity != null) {
-            CompoundTag blockEntityData = blockEntityCompound.getCompound("Data");
+            // 复制一份，模板可能来自共享的蓝图缓存
+            CompoundTag blockEntityData = blockEntityCompound.getCompound("Data").copy();
             
             // 更新位置信息
             blockEntityData.putInt("x", absolutePos.getX());
@@ -0,0 +1,77 @@
+package com.dwinovo.piayn.schem.util;
+
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import net.minecraft.world.level.block.state.BlockState;
+
+/**
+ * 方块状态与调色板字符串的双向缓存
+ * 反复截取、粘贴相似建筑时跳过字符串拼接与 Brigadier 解析
+ * 注册表重载（TagsUpdatedEvent）时整体失效
+ */
+public class BlockStateCache {
+
+    private static final int MAXIMUM_SIZE = 16384;
+
+    private static final Cache<BlockState, String> STATE_TO_STRING = CacheBuilder.newBuilder()
+        .maximumSize(MAXIMUM_SIZE)
+        .build();
+
+    // 无法解析的字符串同样缓存，避免重复解析失败
+    private static final Cache<String, Optional<BlockState>> STRING_TO_STATE = CacheBuilder.newBuilder()
+        .maximumSize(MAXIMUM_SIZE)
+        .build();
+
+    /**
+     * 方块状态的规范字符串
+     */
+    @Nonnull
+    public static String toString(@Nonnull BlockState blockState) {
+        String cached = STATE_TO_STRING.getIfPresent(blockState);
+        if (cached != null) {
+            return cached;
+        }
+        String blockStateString = BlockUtil.blockStateToStringUncached(blockState);
+        STATE_TO_STRING.put(blockState, blockStateString);
+        // 规范字符串必然能解析回同一个状态
+        STRING_TO_STATE.put(blockStateString, Optional.of(blockState));
+        return blockStateString;
+    }
+
+    /**
+     * 解析方块状态字符串，无法解析时返回 null
+     */
+    @Nullable
+    public static BlockState parse(@Nonnull String blockStateString) {
+        try {
+            Optional<BlockState> blockState = STRING_TO_STATE.get(blockStateString, () -> {
+                BlockState parsed = BlockUtil.parseBlockStateUncached(blockStateString);
+                if (parsed != null) {
+                    STATE_TO_STRING.put(parsed, BlockUtil.blockStateToStringUncached(parsed));
+                }
+                return Optional.ofNullable(parsed);
+            });
+            return blockState.orElse(null);
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 清空缓存，注册表或数据包重载后调用
+     */
+    public static void invalidateAll() {
+        STATE_TO_STRING.invalidateAll();
+        STRING_TO_STATE.invalidateAll();
+    }
+
+    private BlockStateCache() {
+        // 工具类，禁止实例化
+    }
+}
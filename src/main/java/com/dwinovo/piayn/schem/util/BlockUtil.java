@@ -1,7 +1,7 @@
 package com.dwinovo.piayn.schem.util;
 
-import java.util.List;
-import java.util.Map;
+import java.io.IOException;
+import java.util.BitSet;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import net.minecraft.core.BlockPos;
@@ -14,18 +14,40 @@ import net.minecraft.world.level.block.Block;
 import net.minecraft.world.level.block.state.BlockState;
 import net.minecraft.world.level.block.state.properties.Property;
 import com.dwinovo.piayn.schem.SchemSerializer;
+import com.dwinovo.piayn.schem.data.BlockIndexStorage;
+import com.dwinovo.piayn.schem.data.DecodedSchematic;
+import com.dwinovo.piayn.schem.io.SchemStreamReader;
 
 /**
  * 方块处理工具类
  * 处理方块状态解析、转换和粘贴操作
  */
 public class BlockUtil {
+
+    // 流式粘贴时每次解码的方块数
+    private static final int PASTE_BUFFER = 65536;
     
     /**
-     * 解析方块状态字符串 - 使用 Minecraft 原生 API
+     * 解析方块状态字符串，结果经 {@link BlockStateCache} 缓存
      */
     @Nullable
     public static BlockState parseBlockState(@Nonnull String blockStateString) {
+        return BlockStateCache.parse(blockStateString);
+    }
+    
+    /**
+     * 将方块状态转换为字符串表示，结果经 {@link BlockStateCache} 缓存
+     */
+    @Nonnull
+    public static String blockStateToString(@Nonnull BlockState blockState) {
+        return BlockStateCache.toString(blockState);
+    }
+    
+    /**
+     * 解析方块状态字符串 - 使用 Minecraft 原生 API
+     */
+    @Nullable
+    public static BlockState parseBlockStateUncached(@Nonnull String blockStateString) {
         try {
             // 使用 Minecraft 原生的 BlockStateParser 来解析方块状态字符串
             // 这比手动解析字符串更可靠且兼容性更好
@@ -46,7 +68,7 @@ public class BlockUtil {
      * 将方块状态转换为字符串表示
      */
     @Nonnull
-    public static String blockStateToString(@Nonnull BlockState blockState) {
+    public static String blockStateToStringUncached(@Nonnull BlockState blockState) {
         Block block = blockState.getBlock();
         ResourceLocation blockId = BuiltInRegistries.BLOCK.getKey(block);
         
@@ -91,41 +113,24 @@ public class BlockUtil {
             return 0;
         }
         
-        // 解析调色板
-        CompoundTag paletteTag = blocksContainer.getCompound(SchemSerializer.PALETTE_KEY);
-        Map<Integer, BlockState> palette = PaletteUtil.parsePalette(paletteTag);
-        
-        // 解码方块数据
-        byte[] blockDataBytes = blocksContainer.getByteArray(SchemSerializer.DATA_KEY);
-        List<Integer> blockData = VarIntUtil.decodeVarintArray(blockDataBytes);
-        
-        // 获取尺寸
-        int width = schematicTag.getShort(SchemSerializer.WIDTH_KEY);
-        int height = schematicTag.getShort(SchemSerializer.HEIGHT_KEY);
-        int length = schematicTag.getShort(SchemSerializer.LENGTH_KEY);
+        // 解码为稠密调色板与放置位集
+        DecodedSchematic schematic = DecodedSchematic.fromTag(schematicTag);
+        BlockState[] palette = schematic.getPalette();
+        BlockIndexStorage blocks = schematic.getBlocks();
+        BitSet placeMask = schematic.getPlaceMask(false);
+        int width = schematic.getWidth();
+        int layerSize = width * schematic.getLength();
         
         int blocksPlaced = 0;
+        BlockPos.MutableBlockPos placePos = new BlockPos.MutableBlockPos();
         
-        // 放置方块
-        for (int y = 0; y < height; y++) {
-            for (int z = 0; z < length; z++) {
-                for (int x = 0; x < width; x++) {
-                    int dataIndex = x + z * width + y * width * length;
-                    if (dataIndex >= blockData.size()) {
-                        continue;
-                    }
-                    
-                    Integer paletteIndex = blockData.get(dataIndex);
-                    BlockState blockState = palette.get(paletteIndex);
-                    // 跳过空气方块
-                    if (blockState != null && !blockState.isAir()) {
-                        BlockPos placePos = targetPos.offset(x, y, z);
-                        
-                        if (serverLevel.setBlock(placePos, blockState, 3)) {
-                            blocksPlaced++;
-                        }
-                    }
-                }
+        // 只遍历非空气位置，整段空气直接跳过
+        for (int i = placeMask.nextSetBit(0); i >= 0; i = placeMask.nextSetBit(i + 1)) {
+            int rest = i % layerSize;
+            placePos.set(targetPos.getX() + rest % width, targetPos.getY() + i / layerSize, targetPos.getZ() + rest / width);
+            
+            if (serverLevel.setBlock(placePos, palette[blocks.get(i)], 3)) {
+                blocksPlaced++;
             }
         }
         
@@ -138,6 +143,61 @@ public class BlockUtil {
         return blocksPlaced;
     }
     
+    /**
+     * 从流式读取器粘贴方块，分批解码，读完方块后再逐个放置方块实体
+     * 内存占用与蓝图大小无关；尺寸已由读取器按上限检查
+     */
+    public static int pasteBlocks(@Nonnull ServerLevel serverLevel,
+                                 @Nonnull SchemStreamReader reader,
+                                 @Nonnull BlockPos targetPos) throws IOException {
+        
+        BlockState[] palette = reader.getPalette();
+        byte[] paletteFlags = DecodedSchematic.computeFlags(palette);
+        byte skipFlags = DecodedSchematic.FLAG_AIR | DecodedSchematic.FLAG_INVALID;
+        int width = reader.getWidth();
+        int height = reader.getHeight();
+        int length = reader.getLength();
+        
+        // 数据按 x -> z -> y 排列，每次解码一批
+        int layerSize = width * length;
+        int volume = layerSize * height;
+        int[] buffer = new int[Math.min(PASTE_BUFFER, volume)];
+        int blocksPlaced = 0;
+        BlockPos.MutableBlockPos placePos = new BlockPos.MutableBlockPos();
+        
+        int decoded = 0;
+        int count;
+        while (decoded < volume && (count = reader.readBlocks(buffer, 0, Math.min(buffer.length, volume - decoded))) > 0) {
+            for (int i = 0; i < count; i++) {
+                int paletteIndex = buffer[i];
+                // 跳过空气与无效条目，只查预先计算的标志
+                if (paletteIndex < 0 || paletteIndex >= palette.length || (paletteFlags[paletteIndex] & skipFlags) != 0) {
+                    continue;
+                }
+                int index = decoded + i;
+                int rest = index % layerSize;
+                placePos.set(targetPos.getX() + rest % width, targetPos.getY() + index / layerSize, targetPos.getZ() + rest / width);
+                
+                if (serverLevel.setBlock(placePos, palette[paletteIndex], 3)) {
+                    blocksPlaced++;
+                }
+            }
+            decoded += count;
+        }
+        
+        // 处理方块实体
+        CompoundTag blockEntityTag;
+        while ((blockEntityTag = reader.nextBlockEntity()) != null) {
+            try {
+                BlockEntityUtil.pasteBlockEntity(serverLevel, blockEntityTag, targetPos);
+            } catch (Exception e) {
+                System.err.println("Failed to paste block entity: " + e.getMessage());
+            }
+        }
+        
+        return blocksPlaced;
+    }
+    
     private BlockUtil() {
         // 工具类，禁止实例化
     }
@@ -1,5 +1,9 @@
 package com.dwinovo.piayn.schem.util;
 
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import net.minecraft.core.BlockPos;
@@ -13,8 +17,11 @@ import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.entity.Entity;
 import net.minecraft.world.entity.EntityType;
 import net.minecraft.world.level.Level;
-import net.minecraft.world.phys.AABB;
 import com.dwinovo.piayn.schem.SchemSerializer;
+import com.dwinovo.piayn.schem.capture.EntityCapture;
+import com.dwinovo.piayn.schem.capture.EntityFilter;
+import com.dwinovo.piayn.schem.io.SchemStreamReader;
+import com.dwinovo.piayn.schem.paste.PasteTransform;
 
 /**
  * 实体处理工具类
@@ -22,31 +29,38 @@ import com.dwinovo.piayn.schem.SchemSerializer;
  */
 public class EntityUtil {
     
+    // 实体类型 -> 注册表 ID 字符串，注册表在运行期间不会变化
+    private static final Map<EntityType<?>, String> TYPE_IDS = new ConcurrentHashMap<>();
+
     /**
-     * 构建指定区域内的实体列表
+     * 构建指定区域内的实体列表，按配置过滤实体类型
      */
     @Nonnull
     public static ListTag buildEntitiesList(@Nonnull Level level, 
                                            @Nonnull BlockPos originPos, 
                                            int width, int height, int length) {
-        
-        ListTag entitiesList = new ListTag();
-        
-        // 定义搜索区域
-        AABB searchArea = new AABB(
-            originPos.getX(), originPos.getY(), originPos.getZ(),
-            originPos.getX() + width, originPos.getY() + height, originPos.getZ() + length
-        );
-        
-        // 获取区域内的所有实体
-        for (Entity entity : level.getEntitiesOfClass(Entity.class, searchArea)) {
-            CompoundTag entityTag = createEntityTag(entity, originPos);
-            if (entityTag != null) {
-                entitiesList.add(entityTag);
-            }
-        }
-        
-        return entitiesList;
+        return buildEntitiesList(level, originPos, width, height, length, EntityFilter.fromConfig());
+    }
+
+    /**
+     * 按区块列逐个构建指定区域内的实体列表
+     */
+    @Nonnull
+    public static ListTag buildEntitiesList(@Nonnull Level level,
+                                           @Nonnull BlockPos originPos,
+                                           int width, int height, int length,
+                                           @Nonnull EntityFilter filter) {
+        EntityCapture capture = new EntityCapture(level, originPos, width, height, length, filter);
+        capture.captureAll();
+        return capture.getEntitiesList();
+    }
+
+    /**
+     * 实体类型的注册表 ID 字符串
+     */
+    @Nonnull
+    public static String getTypeId(@Nonnull EntityType<?> entityType) {
+        return TYPE_IDS.computeIfAbsent(entityType, type -> BuiltInRegistries.ENTITY_TYPE.getKey(type).toString());
     }
     
     /**
@@ -58,9 +72,7 @@ public class EntityUtil {
             CompoundTag entityTag = new CompoundTag();
             
             // 获取实体类型ID
-            ResourceLocation entityId = BuiltInRegistries.ENTITY_TYPE.getKey(entity.getType());
-            
-            entityTag.putString("Id", entityId.toString());
+            entityTag.putString("Id", getTypeId(entity.getType()));
             
             // 计算相对位置
             double relativeX = entity.getX() - originPos.getX();
@@ -122,12 +134,72 @@ public class EntityUtil {
         return entitiesPlaced;
     }
     
+    /**
+     * 粘贴已解码的实体列表
+     */
+    public static int pasteEntities(@Nonnull ServerLevel serverLevel,
+                                   @Nonnull List<CompoundTag> entityTags,
+                                   @Nonnull BlockPos targetPos) {
+        return pasteEntities(serverLevel, entityTags, targetPos, null);
+    }
+
+    /**
+     * 按旋转与镜像粘贴已解码的实体列表
+     */
+    public static int pasteEntities(@Nonnull ServerLevel serverLevel,
+                                   @Nonnull List<CompoundTag> entityTags,
+                                   @Nonnull BlockPos targetPos,
+                                   @Nullable PasteTransform transform) {
+        int entitiesPlaced = 0;
+        for (CompoundTag entityCompound : entityTags) {
+            try {
+                if (pasteEntity(serverLevel, entityCompound, targetPos, transform)) {
+                    entitiesPlaced++;
+                }
+            } catch (Exception e) {
+                System.err.println("Failed to paste entity: " + e.getMessage());
+            }
+        }
+        return entitiesPlaced;
+    }
+    
+    /**
+     * 从流式读取器逐个粘贴实体
+     */
+    public static int pasteEntities(@Nonnull ServerLevel serverLevel,
+                                   @Nonnull SchemStreamReader reader,
+                                   @Nonnull BlockPos targetPos) throws IOException {
+        int entitiesPlaced = 0;
+        CompoundTag entityCompound;
+        while ((entityCompound = reader.nextEntity()) != null) {
+            try {
+                if (pasteEntity(serverLevel, entityCompound, targetPos)) {
+                    entitiesPlaced++;
+                }
+            } catch (Exception e) {
+                System.err.println("Failed to paste entity: " + e.getMessage());
+            }
+        }
+        return entitiesPlaced;
+    }
+    
     /**
      * 粘贴单个实体
      */
     public static boolean pasteEntity(@Nonnull ServerLevel serverLevel,
                                      @Nonnull CompoundTag entityCompound,
                                      @Nonnull BlockPos targetPos) throws Exception {
+        return pasteEntity(serverLevel, entityCompound, targetPos, null);
+    }
+
+    /**
+     * 按旋转与镜像粘贴单个实体，位置与朝向一起变换
+     * @param transform 为 null 时不变换
+     */
+    public static boolean pasteEntity(@Nonnull ServerLevel serverLevel,
+                                     @Nonnull CompoundTag entityCompound,
+                                     @Nonnull BlockPos targetPos,
+                                     @Nullable PasteTransform transform) throws Exception {
         
         if (!entityCompound.contains("Pos") || !entityCompound.contains("Id")) {
             return false;
@@ -147,6 +219,11 @@ public class EntityUtil {
         double relativeX = positionList.getDouble(0);
         double relativeY = positionList.getDouble(1);
         double relativeZ = positionList.getDouble(2);
+        if (transform != null && !transform.isIdentity()) {
+            double transformedX = transform.transformX(relativeX, relativeZ);
+            relativeZ = transform.transformZ(relativeX, relativeZ);
+            relativeX = transformedX;
+        }
         
         double absoluteX = targetPos.getX() + relativeX;
         double absoluteY = targetPos.getY() + relativeY;
@@ -158,15 +235,20 @@ public class EntityUtil {
             return false;
         }
         
-        // 设置位置
-        entity.setPos(absoluteX, absoluteY, absoluteZ);
-        
         // 加载实体数据
         if (entityCompound.contains("Data")) {
             CompoundTag entityData = entityCompound.getCompound("Data");
             entity.load(entityData);
         }
         
+        // 数据中不含位置，加载之后再设置位置与朝向；朝向变换与原版结构模板一致
+        float yaw = entity.getYRot();
+        if (transform != null && !transform.isIdentity()) {
+            yaw = entity.rotate(transform.getRotation());
+            yaw += entity.mirror(transform.getMirror()) - entity.getYRot();
+        }
+        entity.moveTo(absoluteX, absoluteY, absoluteZ, yaw, entity.getXRot());
+        
         // 添加到世界
         return serverLevel.addFreshEntity(entity);
     }
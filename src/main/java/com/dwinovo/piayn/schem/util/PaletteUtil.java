@@ -1,7 +1,9 @@
 package com.dwinovo.piayn.schem.util;
 
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 import javax.annotation.Nonnull;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.world.level.block.state.BlockState;
@@ -46,6 +48,14 @@ public class PaletteUtil {
             return paletteTag;
         }
         
+        /**
+         * 按索引顺序排列的条目，只读
+         */
+        @Nonnull
+        public Set<Map.Entry<BlockState, Integer>> entries() {
+            return Collections.unmodifiableMap(blockStateToPaletteIndex).entrySet();
+        }
+        
         /**
          * 获取调色板大小
          */
@@ -72,6 +82,26 @@ public class PaletteUtil {
         return palette;
     }
     
+    /**
+     * 解析 NBT 调色板为按索引排列的方块状态数组，无法解析的条目为 null
+     * 索引必须在 [0, 条目数) 内，数组大小只取决于条目数，不受文件中的索引值影响
+     * @throws IllegalArgumentException 索引超出范围时
+     */
+    @Nonnull
+    public static BlockState[] parsePaletteArray(@Nonnull CompoundTag paletteTag) {
+        BlockState[] palette = new BlockState[paletteTag.size()];
+        for (String blockStateString : paletteTag.getAllKeys()) {
+            int paletteIndex = paletteTag.getInt(blockStateString);
+            if (paletteIndex < 0 || paletteIndex >= palette.length) {
+                throw new IllegalArgumentException("Palette index " + paletteIndex + " of " + blockStateString
+                    + " is outside [0, " + palette.length + ")");
+            }
+            palette[paletteIndex] = BlockUtil.parseBlockState(blockStateString);
+        }
+        
+        return palette;
+    }
+    
     private PaletteUtil() {
         // 工具类，禁止实例化
     }
@@ -1,40 +1,110 @@
 package com.dwinovo.piayn.schem.util;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 import javax.annotation.Nonnull;
 import net.minecraft.nbt.ByteArrayTag;
 
 /**
  * VarInt 编解码工具类
  * 处理 Sponge Schematic 格式中的 varint 数组编解码
+ * 基于 int[] / byte[] 直接读写，不产生装箱对象
  */
 public class VarIntUtil {
-    
+
+    /**
+     * 将整数数组编码为 varint 字节数组
+     */
+    @Nonnull
+    public static ByteArrayTag encodeVarintArray(@Nonnull int[] data) {
+        return new ByteArrayTag(encodeVarints(data, 0, data.length));
+    }
+
+    /**
+     * 将整数数组的一段编码为 varint 字节
+     */
+    @Nonnull
+    public static byte[] encodeVarints(@Nonnull int[] data, int offset, int length) {
+        VarIntBuffer buffer = new VarIntBuffer(length + (length >> 3));
+        buffer.writeVarints(data, offset, length);
+        return buffer.toByteArray();
+    }
+
     /**
-     * 将整数列表编码为 varint 字节数组
+     * 将 varint 字节数组解码到预先分配好的数组中
+     * @return 实际解码出的数量，最多为 out.length
+     */
+    public static int decodeVarintArray(@Nonnull byte[] data, @Nonnull int[] out) {
+        return decodeVarints(data, 0, data.length, out, 0, out.length);
+    }
+
+    /**
+     * 将 varint 字节数组解码为整数数组，数组长度即为 varint 个数
      */
     @Nonnull
-    public static ByteArrayTag encodeVarintArray(@Nonnull List<Integer> data) {
-        try (ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-             DataOutputStream dataOutputStream = new DataOutputStream(byteArrayOutputStream)) {
-            
-            for (Integer value : data) {
-                writeVarint(dataOutputStream, value);
+    public static int[] decodeVarintArray(@Nonnull byte[] data) {
+        int[] result = new int[countVarints(data, 0, data.length)];
+        decodeVarintArray(data, result);
+        return result;
+    }
+
+    /**
+     * 从 data[offset, offset + length) 解码最多 maxCount 个 varint 到 out[outOffset...]
+     * @return 实际解码出的数量
+     */
+    public static int decodeVarints(@Nonnull byte[] data, int offset, int length,
+                                    @Nonnull int[] out, int outOffset, int maxCount) {
+        final int end = offset + length;
+        int pos = offset;
+        int count = 0;
+        while (pos < end && count < maxCount) {
+            int b = data[pos++];
+            // 调色板索引绝大多数小于 128，单字节快速路径
+            if (b >= 0) {
+                out[outOffset + count++] = b;
+                continue;
             }
-            
-            return new ByteArrayTag(byteArrayOutputStream.toByteArray());
-            
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to encode varint array", e);
+            int value = b & 0x7F;
+            int shift = 7;
+            do {
+                if (pos >= end || shift > 28) {
+                    throw new IllegalArgumentException("Malformed varint array at byte " + pos);
+                }
+                b = data[pos++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            out[outOffset + count++] = value;
         }
+        return count;
     }
-    
+
+    /**
+     * 统计字节区间中的 varint 个数（即最高位为 0 的字节数）
+     */
+    public static int countVarints(@Nonnull byte[] data, int offset, int length) {
+        int count = 0;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            if (data[i] >= 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 单个值编码后的字节数
+     */
+    public static int varintSize(int value) {
+        if ((value & 0xFFFFFF80) == 0) return 1;
+        if ((value & 0xFFFFC000) == 0) return 2;
+        if ((value & 0xFFE00000) == 0) return 3;
+        if ((value & 0xF0000000) == 0) return 4;
+        return 5;
+    }
+
     /**
      * 写入单个 varint 值
      */
@@ -45,28 +115,7 @@ public class VarIntUtil {
         }
         outputStream.writeByte(value & 0x7F);
     }
-    
-    /**
-     * 解码 varint 字节数组为整数列表
-     */
-    @Nonnull
-    public static List<Integer> decodeVarintArray(@Nonnull byte[] data) {
-        List<Integer> result = new ArrayList<>();
-        
-        try (ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(data);
-             DataInputStream dataInputStream = new DataInputStream(byteArrayInputStream)) {
-            
-            while (dataInputStream.available() > 0) {
-                result.add(readVarint(dataInputStream));
-            }
-            
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to decode varint array", e);
-        }
-        
-        return result;
-    }
-    
+
     /**
      * 读取单个 varint 值
      */
@@ -74,16 +123,96 @@ public class VarIntUtil {
         int result = 0;
         int shift = 0;
         byte currentByte;
-        
+
         do {
             currentByte = inputStream.readByte();
             result |= (currentByte & 0x7F) << shift;
             shift += 7;
         } while ((currentByte & 0x80) != 0);
-        
+
         return result;
     }
-    
+
+    /**
+     * 可增长的 varint 字节缓冲区
+     * 直接写入 byte[]，避免 DataOutputStream 的逐字节虚调用
+     */
+    public static class VarIntBuffer {
+        private byte[] buffer;
+        private int size;
+
+        public VarIntBuffer() {
+            this(256);
+        }
+
+        public VarIntBuffer(int initialCapacity) {
+            this.buffer = new byte[Math.max(16, initialCapacity)];
+        }
+
+        public void writeVarint(int value) {
+            ensureCapacity(size + 5);
+            byte[] buf = buffer;
+            int pos = size;
+            while ((value & 0xFFFFFF80) != 0) {
+                buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[pos++] = (byte) value;
+            size = pos;
+        }
+
+        public void writeVarints(@Nonnull int[] data, int offset, int length) {
+            for (int i = offset, end = offset + length; i < end; i++) {
+                int value = data[i];
+                if ((value & 0xFFFFFF80) == 0) {
+                    if (size == buffer.length) {
+                        ensureCapacity(size + 1);
+                    }
+                    buffer[size++] = (byte) value;
+                } else {
+                    writeVarint(value);
+                }
+            }
+        }
+
+        public void write(@Nonnull byte[] bytes, int offset, int length) {
+            ensureCapacity(size + length);
+            System.arraycopy(bytes, offset, buffer, size, length);
+            size += length;
+        }
+
+        private void ensureCapacity(int required) {
+            if (required > buffer.length) {
+                int newCapacity = Math.max(required, buffer.length + (buffer.length >> 1));
+                if (newCapacity < 0) {
+                    newCapacity = Integer.MAX_VALUE - 8;
+                }
+                buffer = Arrays.copyOf(buffer, newCapacity);
+            }
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public void reset() {
+            size = 0;
+        }
+
+        /**
+         * 内部数组，只有 [0, size) 有效
+         */
+        @Nonnull
+        public byte[] array() {
+            return buffer;
+        }
+
+        @Nonnull
+        public byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+    }
+
     private VarIntUtil() {
         // 工具类，禁止实例化
     }
@@ -17,6 +17,8 @@ import net.minecraft.world.phys.Vec3;
 
 public class RaycastHelper {
 
+	private static final ThreadLocal<VoxelTraversal> TRAVERSAL = ThreadLocal.withInitial(VoxelTraversal::new);
+
 	public static BlockHitResult rayTraceRange(Level worldIn, Player playerIn, double range) {
 		Vec3 origin = getTraceOrigin(playerIn);
 		Vec3 target = getTraceTarget(playerIn, range, origin);
@@ -54,119 +56,206 @@ public class RaycastHelper {
 	}
 
 	public static PredicateTraceResult rayTraceUntil(Vec3 start, Vec3 end, Predicate<BlockPos> predicate) {
-		if (Double.isNaN(start.x) || Double.isNaN(start.y) || Double.isNaN(start.z))
-			return null;
-		if (Double.isNaN(end.x) || Double.isNaN(end.y) || Double.isNaN(end.z))
+		VoxelTraversal traversal = TRAVERSAL.get();
+		if (!traversal.init(start.x, start.y, start.z, end.x, end.y, end.z))
 			return null;
+		MutableBlockPos currentPos = traversal.scratchPos;
+		do {
+			if (predicate.test(currentPos.set(traversal.getX(), traversal.getY(), traversal.getZ())))
+				return new PredicateTraceResult(currentPos.immutable(), traversal.getFace());
+		} while (traversal.step());
+		return new PredicateTraceResult();
+	}
 
-		int dx = Mth.floor(end.x);
-		int dy = Mth.floor(end.y);
-		int dz = Mth.floor(end.z);
-		int x = Mth.floor(start.x);
-		int y = Mth.floor(start.y);
-		int z = Mth.floor(start.z);
-
-		MutableBlockPos currentPos = new BlockPos(x, y, z).mutable();
-
-		if (predicate.test(currentPos))
-			return new PredicateTraceResult(currentPos.immutable(), Direction.getNearest(dx - x, dy - y, dz - z));
+	/**
+	 * 沿玩家视线遍历方块，不创建任何对象
+	 * @return 是否被 visitor 停止
+	 */
+	public static boolean traverse(Player playerIn, double range, VoxelVisitor visitor) {
+		VoxelTraversal traversal = TRAVERSAL.get();
+		return traversal.initFromPlayer(playerIn, range) && traversal.run(visitor);
+	}
 
-		int remainingDistance = 200;
+	/**
+	 * 沿线段遍历方块，不创建任何对象
+	 * @return 是否被 visitor 停止
+	 */
+	public static boolean traverse(double startX, double startY, double startZ, double endX, double endY, double endZ,
+		VoxelVisitor visitor) {
+		VoxelTraversal traversal = TRAVERSAL.get();
+		return traversal.init(startX, startY, startZ, endX, endY, endZ) && traversal.run(visitor);
+	}
 
-		while (remainingDistance-- >= 0) {
-			if (Double.isNaN(start.x) || Double.isNaN(start.y) || Double.isNaN(start.z)) {
-				return null;
-			}
+	/**
+	 * 用同一个条件批量追踪多条射线
+	 * @param rays 每条射线 6 个值：起点 x、y、z，终点 x、y、z
+	 * @param hitPositions 命中位置（{@link BlockPos#asLong()}），未命中的元素不修改
+	 * @param hitFaces 命中时进入方块的面，未命中或射线无效时为 null
+	 * @return 命中的射线数
+	 */
+	public static int traceBatch(double[] rays, int rayCount, Predicate<BlockPos> predicate, long[] hitPositions,
+		Direction[] hitFaces) {
+		VoxelTraversal traversal = TRAVERSAL.get();
+		MutableBlockPos currentPos = traversal.scratchPos;
+		int hits = 0;
+		for (int i = 0; i < rayCount; i++) {
+			hitFaces[i] = null;
+			int offset = i * 6;
+			if (!traversal.init(rays[offset], rays[offset + 1], rays[offset + 2], rays[offset + 3], rays[offset + 4],
+				rays[offset + 5]))
+				continue;
+			do {
+				if (predicate.test(currentPos.set(traversal.getX(), traversal.getY(), traversal.getZ()))) {
+					hitPositions[i] = currentPos.asLong();
+					hitFaces[i] = traversal.getFace();
+					hits++;
+					break;
+				}
+			} while (traversal.step());
+		}
+		return hits;
+	}
 
-			if (x == dx && y == dy && z == dz) {
-				return new PredicateTraceResult();
-			}
+	/**
+	 * 遍历回调
+	 */
+	@FunctionalInterface
+	public interface VoxelVisitor {
+		/**
+		 * @param face 射线进入该方块的面；起点所在方块为大致的前进方向
+		 * @return true 停止遍历
+		 */
+		boolean visit(int x, int y, int z, Direction face);
+	}
 
-			boolean flag2 = true;
-			boolean flag = true;
-			boolean flag1 = true;
-			double d0 = 999.0D;
-			double d1 = 999.0D;
-			double d2 = 999.0D;
-
-			if (dx > x) {
-				d0 = (double) x + 1.0D;
-			} else if (dx < x) {
-				d0 = (double) x + 0.0D;
-			} else {
-				flag2 = false;
-			}
+	/**
+	 * Amanatides–Woo 体素遍历：按射线经过的顺序逐个访问方块，只保存基本类型状态，可重复使用
+	 * 每一步只比较三个轴到下一个边界的参数 t 并前进一格，步数等于起点与终点方块的曼哈顿距离，没有固定上限
+	 * 不是线程安全的，静态方法为每个线程保留一个实例
+	 */
+	public static final class VoxelTraversal {
+		// 当前方块与进入的面
+		private int x;
+		private int y;
+		private int z;
+		private Direction face;
+		// 每个轴的前进方向（-1、0、1）
+		private int stepX;
+		private int stepY;
+		private int stepZ;
+		// 沿射线到下一个边界的参数 t（起点为 0，终点为 1）
+		private double tMaxX;
+		private double tMaxY;
+		private double tMaxZ;
+		// 每穿过一格 t 的增量
+		private double tDeltaX;
+		private double tDeltaY;
+		private double tDeltaZ;
+		// 到终点方块还剩的步数
+		private long remaining;
+		// 供谓词接口复用的坐标
+		private final MutableBlockPos scratchPos = new MutableBlockPos();
+
+		/**
+		 * 从起点所在方块开始遍历
+		 * @return 坐标含 NaN 时返回 false
+		 */
+		public boolean init(double startX, double startY, double startZ, double endX, double endY, double endZ) {
+			if (Double.isNaN(startX) || Double.isNaN(startY) || Double.isNaN(startZ)
+				|| Double.isNaN(endX) || Double.isNaN(endY) || Double.isNaN(endZ))
+				return false;
+			x = Mth.floor(startX);
+			y = Mth.floor(startY);
+			z = Mth.floor(startZ);
+			int lastX = Mth.floor(endX);
+			int lastY = Mth.floor(endY);
+			int lastZ = Mth.floor(endZ);
+			double dirX = endX - startX;
+			double dirY = endY - startY;
+			double dirZ = endZ - startZ;
+
+			stepX = lastX > x ? 1 : lastX < x ? -1 : 0;
+			stepY = lastY > y ? 1 : lastY < y ? -1 : 0;
+			stepZ = lastZ > z ? 1 : lastZ < z ? -1 : 0;
+			tDeltaX = stepX == 0 ? Double.POSITIVE_INFINITY : stepX / dirX;
+			tDeltaY = stepY == 0 ? Double.POSITIVE_INFINITY : stepY / dirY;
+			tDeltaZ = stepZ == 0 ? Double.POSITIVE_INFINITY : stepZ / dirZ;
+			tMaxX = stepX == 0 ? Double.POSITIVE_INFINITY : ((stepX > 0 ? x + 1 : x) - startX) / dirX;
+			tMaxY = stepY == 0 ? Double.POSITIVE_INFINITY : ((stepY > 0 ? y + 1 : y) - startY) / dirY;
+			tMaxZ = stepZ == 0 ? Double.POSITIVE_INFINITY : ((stepZ > 0 ? z + 1 : z) - startZ) / dirZ;
+			remaining = Math.abs((long) lastX - x) + Math.abs((long) lastY - y) + Math.abs((long) lastZ - z);
+			face = Direction.getNearest((float) (lastX - x), (float) (lastY - y), (float) (lastZ - z));
+			return true;
+		}
 
-			if (dy > y) {
-				d1 = (double) y + 1.0D;
-			} else if (dy < y) {
-				d1 = (double) y + 0.0D;
-			} else {
-				flag = false;
-			}
+		/**
+		 * 沿玩家视线初始化，与 {@link RaycastHelper#getTraceOrigin} / {@link RaycastHelper#getTraceTarget} 相同但不创建 Vec3
+		 */
+		public boolean initFromPlayer(Player playerIn, double range) {
+			float f = playerIn.getXRot();
+			float f1 = playerIn.getYRot();
+			float f2 = Mth.cos(-f1 * 0.017453292F - (float) Math.PI);
+			float f3 = Mth.sin(-f1 * 0.017453292F - (float) Math.PI);
+			float f4 = -Mth.cos(-f * 0.017453292F);
+			float f5 = Mth.sin(-f * 0.017453292F);
+			double originX = playerIn.getX();
+			double originY = playerIn.getY() + (double) playerIn.getEyeHeight();
+			double originZ = playerIn.getZ();
+			return init(originX, originY, originZ,
+				originX + (double) (f3 * f4) * range, originY + (double) f5 * range, originZ + (double) (f2 * f4) * range);
+		}
 
-			if (dz > z) {
-				d2 = (double) z + 1.0D;
-			} else if (dz < z) {
-				d2 = (double) z + 0.0D;
+		/**
+		 * 前进到射线经过的下一个方块
+		 * @return 已经到达终点方块时返回 false
+		 */
+		public boolean step() {
+			if (remaining <= 0)
+				return false;
+			remaining--;
+			if (tMaxX < tMaxY && tMaxX < tMaxZ) {
+				x += stepX;
+				tMaxX += tDeltaX;
+				face = stepX > 0 ? Direction.WEST : Direction.EAST;
+			} else if (tMaxY < tMaxZ) {
+				y += stepY;
+				tMaxY += tDeltaY;
+				face = stepY > 0 ? Direction.DOWN : Direction.UP;
 			} else {
-				flag1 = false;
-			}
-
-			double d3 = 999.0D;
-			double d4 = 999.0D;
-			double d5 = 999.0D;
-			double d6 = end.x - start.x;
-			double d7 = end.y - start.y;
-			double d8 = end.z - start.z;
-
-			if (flag2) {
-				d3 = (d0 - start.x) / d6;
-			}
-
-			if (flag) {
-				d4 = (d1 - start.y) / d7;
-			}
-
-			if (flag1) {
-				d5 = (d2 - start.z) / d8;
-			}
-
-			if (d3 == -0.0D) {
-				d3 = -1.0E-4D;
-			}
-
-			if (d4 == -0.0D) {
-				d4 = -1.0E-4D;
-			}
-
-			if (d5 == -0.0D) {
-				d5 = -1.0E-4D;
+				z += stepZ;
+				tMaxZ += tDeltaZ;
+				face = stepZ > 0 ? Direction.NORTH : Direction.SOUTH;
 			}
+			return true;
+		}
 
-			Direction enumfacing;
+		/**
+		 * 从当前方块开始依次回调，直到 visitor 停止或到达终点
+		 * @return 是否被 visitor 停止
+		 */
+		public boolean run(VoxelVisitor visitor) {
+			do {
+				if (visitor.visit(x, y, z, face))
+					return true;
+			} while (step());
+			return false;
+		}
 
-			if (d3 < d4 && d3 < d5) {
-				enumfacing = dx > x ? Direction.WEST : Direction.EAST;
-				start = new Vec3(d0, start.y + d7 * d3, start.z + d8 * d3);
-			} else if (d4 < d5) {
-				enumfacing = dy > y ? Direction.DOWN : Direction.UP;
-				start = new Vec3(start.x + d6 * d4, d1, start.z + d8 * d4);
-			} else {
-				enumfacing = dz > z ? Direction.NORTH : Direction.SOUTH;
-				start = new Vec3(start.x + d6 * d5, start.y + d7 * d5, d2);
-			}
+		public int getX() {
+			return x;
+		}
 
-			x = Mth.floor(start.x) - (enumfacing == Direction.EAST ? 1 : 0);
-			y = Mth.floor(start.y) - (enumfacing == Direction.UP ? 1 : 0);
-			z = Mth.floor(start.z) - (enumfacing == Direction.SOUTH ? 1 : 0);
-			currentPos.set(x, y, z);
+		public int getY() {
+			return y;
+		}
 
-			if (predicate.test(currentPos))
-				return new PredicateTraceResult(currentPos.immutable(), enumfacing);
+		public int getZ() {
+			return z;
 		}
 
-		return new PredicateTraceResult();
+		public Direction getFace() {
+			return face;
+		}
 	}
 
 	public static class PredicateTraceResult {
@@ -0,0 +1,108 @@
+package com.dwinovo.piayn.schem.bench;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import javax.annotation.Nonnull;
+
+import net.minecraft.core.Direction;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.StairBlock;
+import net.minecraft.world.level.block.state.BlockState;
+
+/**
+ * 基准测试共用的数据
+ * 注册表由 FML 在测试 JVM 中引导，见 {@link BenchmarkLauncher}；所有数据由固定种子生成，多次运行结果可比较
+ */
+public final class BenchmarkFixtures {
+
+    public static final long SEED = 0x5EEDL;
+
+    /**
+     * 从所有已注册的方块状态中按固定种子抽取 count 种不同的状态
+     */
+    @Nonnull
+    public static BlockState[] sampleStates(int count) {
+        List<BlockState> states = new ArrayList<>();
+        for (BlockState blockState : Block.BLOCK_STATE_REGISTRY) {
+            states.add(blockState);
+        }
+        Collections.shuffle(states, new Random(SEED));
+        return states.subList(0, Math.min(count, states.size())).toArray(new BlockState[0]);
+    }
+
+    /**
+     * 按建筑的大致分布生成方块：约一半空气，其余是少量常见方块与带朝向的楼梯
+     */
+    @Nonnull
+    public static SectionGrid building(int width, int height, int length) {
+        SectionGrid grid = new SectionGrid(width, height, length);
+        BlockState[] common = {
+            Blocks.STONE.defaultBlockState(),
+            Blocks.STONE_BRICKS.defaultBlockState(),
+            Blocks.OAK_PLANKS.defaultBlockState(),
+            Blocks.GLASS.defaultBlockState(),
+            Blocks.DIRT.defaultBlockState(),
+            Blocks.WATER.defaultBlockState(),
+        };
+        List<BlockState> stairs = new ArrayList<>();
+        for (Block block : List.of(Blocks.OAK_STAIRS, Blocks.STONE_BRICK_STAIRS)) {
+            for (Direction facing : Direction.Plane.HORIZONTAL) {
+                stairs.add(block.defaultBlockState().setValue(StairBlock.FACING, facing));
+            }
+        }
+        Random random = new Random(SEED);
+        for (int y = 0; y < height; y++) {
+            for (int z = 0; z < length; z++) {
+                for (int x = 0; x < width; x++) {
+                    int roll = random.nextInt(100);
+                    BlockState blockState;
+                    if (roll < 50) {
+                        blockState = Blocks.AIR.defaultBlockState();
+                    } else if (roll < 90) {
+                        blockState = common[random.nextInt(common.length)];
+                    } else {
+                        blockState = stairs.get(random.nextInt(stairs.size()));
+                    }
+                    grid.setBlockState(x, y, z, blockState);
+                }
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * 只有最高一层是石头，其余全是空气：稀疏的高区域，逐行查找放置位时几乎每一行都是空行
+     */
+    @Nonnull
+    public static SectionGrid roof(int width, int height, int length) {
+        SectionGrid grid = new SectionGrid(width, height, length);
+        for (int z = 0; z < length; z++) {
+            for (int x = 0; x < width; x++) {
+                grid.setBlockState(x, height - 1, z, Blocks.STONE.defaultBlockState());
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * 调色板大小为 paletteSize 的索引序列，约 1/8 的值大于 127，覆盖多字节 varint
+     */
+    @Nonnull
+    public static int[] paletteIndices(int size, int paletteSize) {
+        Random random = new Random(SEED);
+        int[] data = new int[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = paletteSize > 128 && random.nextInt(8) == 0
+                ? 128 + random.nextInt(paletteSize - 128)
+                : random.nextInt(Math.min(paletteSize, 128));
+        }
+        return data;
+    }
+
+    private BenchmarkFixtures() {
+        // 工具类，禁止实例化
+    }
+}
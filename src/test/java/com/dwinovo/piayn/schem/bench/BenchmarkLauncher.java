@@ -0,0 +1,47 @@
+package com.dwinovo.piayn.schem.bench;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 在 FML 引导后的测试 JVM 中运行 bench 包内的全部基准，由 ./gradlew test -Pbenchmark 启动
+ * JMH 不再分叉新的 JVM：分叉出的进程没有经过 FML 引导，无法使用方块注册表与访问转换后的类
+ * 因此各基准共用一个 JVM，比较不同基准时应分别运行（-Pbenchmark=<正则>）
+ */
+public class BenchmarkLauncher {
+
+    @Test
+    public void runBenchmarks() throws RunnerException, IOException {
+        String include = System.getProperty("piayn.benchmark.include", "");
+        Path result = Path.of(System.getProperty("piayn.benchmark.result", "build/results/jmh/results.json"));
+        Files.createDirectories(result.toAbsolutePath().getParent());
+
+        // 生成的基准类必须与本类由同一个类加载器加载，否则看到的是未经 FML 引导的游戏类
+        Thread.currentThread().setContextClassLoader(BenchmarkLauncher.class.getClassLoader());
+        Options options = new OptionsBuilder()
+            .include(BenchmarkLauncher.class.getPackageName() + "\\..*" + include)
+            .forks(0)
+            .warmupIterations(3)
+            .measurementIterations(5)
+            // 每个基准都附带 GC 与分配速率统计
+            .addProfiler(GCProfiler.class)
+            .resultFormat(ResultFormatType.JSON)
+            .result(result.toString())
+            .build();
+        Collection<RunResult> results = new Runner(options).run();
+        assertFalse(results.isEmpty(), "No benchmark matched " + include);
+    }
+}
@@ -0,0 +1,70 @@
+package com.dwinovo.piayn.schem.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.dwinovo.piayn.schem.util.BlockUtil;
+
+import net.minecraft.world.level.block.state.BlockState;
+
+/**
+ * 方块状态与字符串的互相转换，对比缓存与未缓存的实现
+ * 每次调用处理一整个调色板
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BlockStateStringBenchmark {
+
+    @Param({"64", "1024"})
+    public int paletteSize;
+
+    private BlockState[] states;
+    private String[] strings;
+
+    @Setup
+    public void setup() {
+        states = BenchmarkFixtures.sampleStates(paletteSize);
+        strings = new String[states.length];
+        for (int i = 0; i < states.length; i++) {
+            strings[i] = BlockUtil.blockStateToStringUncached(states[i]);
+        }
+    }
+
+    @Benchmark
+    public void toStringCached(Blackhole blackhole) {
+        for (BlockState blockState : states) {
+            blackhole.consume(BlockUtil.blockStateToString(blockState));
+        }
+    }
+
+    @Benchmark
+    public void toStringUncached(Blackhole blackhole) {
+        for (BlockState blockState : states) {
+            blackhole.consume(BlockUtil.blockStateToStringUncached(blockState));
+        }
+    }
+
+    @Benchmark
+    public void parseCached(Blackhole blackhole) {
+        for (String string : strings) {
+            blackhole.consume(BlockUtil.parseBlockState(string));
+        }
+    }
+
+    @Benchmark
+    public void parseUncached(Blackhole blackhole) {
+        for (String string : strings) {
+            blackhole.consume(BlockUtil.parseBlockStateUncached(string));
+        }
+    }
+}
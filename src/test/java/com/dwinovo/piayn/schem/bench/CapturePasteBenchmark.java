@@ -0,0 +1,167 @@
+package com.dwinovo.piayn.schem.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import com.dwinovo.piayn.schem.capture.RegionCapture;
+import com.dwinovo.piayn.schem.data.DecodedSchematic;
+import com.dwinovo.piayn.schem.data.PackedBlockStorage;
+import com.dwinovo.piayn.schem.data.SectionCodec;
+import com.dwinovo.piayn.schem.paste.SectionPaster;
+import com.dwinovo.piayn.schem.pojo.PasteOptions;
+import com.dwinovo.piayn.schem.util.BlockUtil;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.PalettedContainer;
+
+/**
+ * 完整的截取与粘贴流程，世界由 {@link SectionGrid} 的原版区块段代替
+ * capture：{@link RegionCapture} 逐区块段截取，snapshot 为快照模式的并行解析
+ * decode：从调色板字符串与 varint 数据还原为 {@link DecodedSchematic}，与读取 .schem 相同
+ * paste：{@link SectionPaster} 逐区块段写入空区块段，与 BulkPaster 的批量路径相同，不含高度图、光照等世界部分；
+ *   空区块段在每次调用前由 {@link Target} 准备，不计入测量
+ * repaste：写入内容相同的区块段，每个方块都不改变
+ * diff：{@link SectionPaster#computeDiff} 与内容相同的区块段比较
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CapturePasteBenchmark {
+
+    @Param({"32", "128"})
+    public int size;
+
+    /** building 约一半空气；roof 只有最高一层，其余为空气 */
+    @Param({"building", "roof"})
+    public String shape;
+
+    private SectionGrid world;
+    private Captured captured;
+    private DecodedSchematic schematic;
+    private SectionPaster paster;
+
+    /**
+     * 截取结果：调色板字符串与 varint 编码的索引
+     */
+    public record Captured(String[] palette, byte[] data) {
+    }
+
+    /**
+     * 粘贴的目标：整轮测试复用同一个网格，每次调用前清空为只含空气的区块段，不计入测量
+     */
+    @State(Scope.Thread)
+    public static class Target {
+        private SectionGrid grid;
+
+        @Setup(Level.Trial)
+        public void setup(BenchmarkParams params) {
+            int size = Integer.parseInt(params.getParam("size"));
+            grid = new SectionGrid(size, size, size);
+        }
+
+        @Setup(Level.Invocation)
+        public void reset() {
+            grid.clear();
+        }
+    }
+
+    @Setup
+    public void setup() {
+        world = "roof".equals(shape)
+            ? BenchmarkFixtures.roof(size, size, size)
+            : BenchmarkFixtures.building(size, size, size);
+        captured = capture(world, size, false);
+        schematic = decode(captured, size);
+        paster = new SectionPaster(BlockPos.ZERO, schematic, new PasteOptions());
+    }
+
+    @Benchmark
+    public Captured capture() {
+        return capture(world, size, false);
+    }
+
+    @Benchmark
+    public Captured captureSnapshot() {
+        return capture(world, size, true);
+    }
+
+    @Benchmark
+    public DecodedSchematic decode() {
+        return decode(captured, size);
+    }
+
+    @Benchmark
+    public int paste(Target target) {
+        return paste(paster, target.grid);
+    }
+
+    @Benchmark
+    public int repaste() {
+        return paste(paster, world);
+    }
+
+    @Benchmark
+    public int diff() {
+        final int maxSectionY = SectionPos.blockToSectionCoord(size - 1);
+        int cardinality = 0;
+        for (int chunkZ = 0; chunkZ < world.getChunksZ(); chunkZ++) {
+            for (int chunkX = 0; chunkX < world.getChunksX(); chunkX++) {
+                List<PalettedContainer<BlockState>> column = world.getColumn(chunkX, chunkZ, 0, maxSectionY);
+                cardinality += paster.computeDiff(chunkX, chunkZ, 0, size - 1, column).cardinality();
+            }
+        }
+        return cardinality;
+    }
+
+    /**
+     * 截取、还原、粘贴连续执行，放置位集每次重新计算
+     */
+    @Benchmark
+    public int roundTrip(Target target) {
+        DecodedSchematic decoded = decode(capture(world, size, false), size);
+        return paste(new SectionPaster(BlockPos.ZERO, decoded, new PasteOptions()), target.grid);
+    }
+
+    private static Captured capture(SectionGrid world, int size, boolean snapshotMode) {
+        RegionCapture capture = new RegionCapture(world, BlockPos.ZERO, size, size, size, snapshotMode);
+        capture.captureAll();
+        return new Captured(SectionCodec.paletteNames(capture.getPaletteMap()), capture.getEncodedData());
+    }
+
+    private static DecodedSchematic decode(Captured captured, int size) {
+        String[] names = captured.palette();
+        BlockState[] palette = new BlockState[names.length];
+        for (int i = 0; i < names.length; i++) {
+            palette[i] = BlockUtil.parseBlockState(names[i]);
+        }
+        PackedBlockStorage blocks = PackedBlockStorage.fromVarints(captured.data(), size * size * size, palette.length);
+        return new DecodedSchematic(size, size, size, palette, blocks, List.of(), List.of());
+    }
+
+    private static int paste(SectionPaster paster, SectionGrid target) {
+        final int maxY = paster.getHeight() - 1;
+        int changed = 0;
+        for (int chunkZ = 0; chunkZ < target.getChunksZ(); chunkZ++) {
+            for (int chunkX = 0; chunkX < target.getChunksX(); chunkX++) {
+                for (int sectionY = 0; sectionY < target.getSectionsY(); sectionY++) {
+                    PalettedContainer<BlockState> section = target.getSection(chunkX, sectionY, chunkZ);
+                    changed += paster.pasteSection(section::getAndSet, chunkX, sectionY, chunkZ, 0, maxY, null, null);
+                }
+            }
+        }
+        return changed;
+    }
+}
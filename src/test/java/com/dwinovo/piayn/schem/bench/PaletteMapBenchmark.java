@@ -0,0 +1,68 @@
+package com.dwinovo.piayn.schem.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.dwinovo.piayn.schem.util.PaletteUtil;
+
+import net.minecraft.world.level.block.state.BlockState;
+
+/**
+ * {@link PaletteUtil.PaletteMap#getId} 在截取循环中的开销
+ * lookup 只命中已有条目，build 从空调色板开始，包含新增条目
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PaletteMapBenchmark {
+
+    private static final int SEQUENCE_LENGTH = 65536;
+
+    @Param({"16", "256"})
+    public int distinctStates;
+
+    private BlockState[] sequence;
+    private PaletteUtil.PaletteMap warmMap;
+
+    @Setup
+    public void setup() {
+        BlockState[] states = BenchmarkFixtures.sampleStates(distinctStates);
+        Random random = new Random(BenchmarkFixtures.SEED);
+        sequence = new BlockState[SEQUENCE_LENGTH];
+        for (int i = 0; i < SEQUENCE_LENGTH; i++) {
+            sequence[i] = states[random.nextInt(states.length)];
+        }
+        warmMap = new PaletteUtil.PaletteMap();
+        for (BlockState blockState : states) {
+            warmMap.getId(blockState);
+        }
+    }
+
+    @Benchmark
+    public int lookup() {
+        int sum = 0;
+        for (BlockState blockState : sequence) {
+            sum += warmMap.getId(blockState);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int build() {
+        PaletteUtil.PaletteMap paletteMap = new PaletteUtil.PaletteMap();
+        int sum = 0;
+        for (BlockState blockState : sequence) {
+            sum += paletteMap.getId(blockState);
+        }
+        return sum;
+    }
+}
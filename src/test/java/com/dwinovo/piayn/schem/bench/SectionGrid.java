@@ -0,0 +1,100 @@
+package com.dwinovo.piayn.schem.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.dwinovo.piayn.schem.capture.RegionCapture;
+
+import net.minecraft.core.SectionPos;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.PalettedContainer;
+
+/**
+ * 基准测试用的内存世界，以 (0, 0, 0) 为最小角，按区块段保存原版的 PalettedContainer
+ * 区块段与世界中的区块段使用同一种容器，只需要引导注册表，不需要启动服务器
+ * 作为 {@link RegionCapture.ColumnSource} 时，y 低于 0 或超出高度的区块段视为超出建筑高度
+ */
+public class SectionGrid implements RegionCapture.ColumnSource {
+
+    private final int chunksX;
+    private final int sectionsY;
+    private final int chunksZ;
+    private final PalettedContainer<BlockState>[] sections;
+
+    @SuppressWarnings("unchecked")
+    public SectionGrid(int width, int height, int length) {
+        this.chunksX = SectionPos.blockToSectionCoord(width - 1) + 1;
+        this.sectionsY = SectionPos.blockToSectionCoord(height - 1) + 1;
+        this.chunksZ = SectionPos.blockToSectionCoord(length - 1) + 1;
+        this.sections = new PalettedContainer[chunksX * sectionsY * chunksZ];
+        clear();
+    }
+
+    /**
+     * 只含空气的区块段，与新生成区块中的空区块段相同
+     */
+    @Nonnull
+    public static PalettedContainer<BlockState> emptySection() {
+        return new PalettedContainer<>(Block.BLOCK_STATE_REGISTRY, Blocks.AIR.defaultBlockState(), PalettedContainer.Strategy.SECTION_STATES);
+    }
+
+    /**
+     * 把所有区块段换成空区块段，网格本身可以重复使用
+     */
+    public void clear() {
+        for (int i = 0; i < sections.length; i++) {
+            sections[i] = emptySection();
+        }
+    }
+
+    public void setBlockState(int x, int y, int z, @Nonnull BlockState blockState) {
+        getSection(SectionPos.blockToSectionCoord(x), SectionPos.blockToSectionCoord(y), SectionPos.blockToSectionCoord(z))
+            .set(x & 15, y & 15, z & 15, blockState);
+    }
+
+    /**
+     * @return 区块段，超出范围时返回 null
+     */
+    @Nullable
+    public PalettedContainer<BlockState> getSection(int chunkX, int sectionY, int chunkZ) {
+        if (chunkX < 0 || sectionY < 0 || chunkZ < 0 || chunkX >= chunksX || sectionY >= sectionsY || chunkZ >= chunksZ) {
+            return null;
+        }
+        return sections[(chunkZ * chunksX + chunkX) * sectionsY + sectionY];
+    }
+
+    /**
+     * 区块列中从 minSectionY 到 maxSectionY 的区块段，用于差异计算
+     */
+    @Nonnull
+    public List<PalettedContainer<BlockState>> getColumn(int chunkX, int chunkZ, int minSectionY, int maxSectionY) {
+        List<PalettedContainer<BlockState>> column = new ArrayList<>(maxSectionY - minSectionY + 1);
+        for (int sectionY = minSectionY; sectionY <= maxSectionY; sectionY++) {
+            column.add(getSection(chunkX, sectionY, chunkZ));
+        }
+        return column;
+    }
+
+    @Nonnull
+    @Override
+    public IntFunction<PalettedContainer<BlockState>> openColumn(int chunkX, int chunkZ) {
+        return sectionY -> getSection(chunkX, sectionY, chunkZ);
+    }
+
+    public int getChunksX() {
+        return chunksX;
+    }
+
+    public int getSectionsY() {
+        return sectionsY;
+    }
+
+    public int getChunksZ() {
+        return chunksZ;
+    }
+}
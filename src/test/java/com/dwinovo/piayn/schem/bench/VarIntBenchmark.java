@@ -0,0 +1,56 @@
+package com.dwinovo.piayn.schem.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.dwinovo.piayn.schem.util.VarIntUtil;
+
+/**
+ * {@link VarIntUtil} 编码与解码，每次处理一个蓝图规模的索引数组
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class VarIntBenchmark {
+
+    @Param({"65536", "1048576"})
+    public int size;
+
+    /** 调色板大于 128 时出现两字节 varint */
+    @Param({"64", "1024"})
+    public int paletteSize;
+
+    private int[] data;
+    private byte[] encoded;
+    private int[] decoded;
+
+    @Setup
+    public void setup() {
+        data = BenchmarkFixtures.paletteIndices(size, paletteSize);
+        encoded = VarIntUtil.encodeVarints(data, 0, data.length);
+        decoded = new int[size];
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return VarIntUtil.encodeVarints(data, 0, data.length);
+    }
+
+    @Benchmark
+    public int decodeInto() {
+        return VarIntUtil.decodeVarints(encoded, 0, encoded.length, decoded, 0, decoded.length);
+    }
+
+    @Benchmark
+    public int[] decodeArray() {
+        return VarIntUtil.decodeVarintArray(encoded);
+    }
+}